@@ -0,0 +1,117 @@
+import java.util.*;
+
+/**
+ * The items a member is buying in the current transaction. Scanning the same item twice adds to the quantity of its
+ * line instead of adding another line, and the total is kept up to date as items are scanned so big orders do not get
+ * slower as they grow
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCBasket {
+    // The lines of the basket in the order they were first scanned
+    private LinkedHashMap<String,TOCBasketLine> lines;
+    private long total;
+    private int itemCount;
+
+    /**
+     * The constructor. Starts with an empty basket
+     */
+    public TOCBasket() {
+        lines = new LinkedHashMap<String,TOCBasketLine>();
+        total = 0;
+        itemCount = 0;
+    }
+
+    /**
+     * Adds one of an item to the basket. The item's name and cost are copied the first time it is scanned
+     *
+     * @param   item            the item that was scanned
+     */
+    public void add(TOCItem item) {
+        add(item, 1);
+    }
+
+    /**
+     * Adds several of an item to the basket. The item's name and cost are copied the first time it is scanned
+     *
+     * @param   item            the item that was scanned
+     * @param   quantity        how many of the item to add
+     */
+    public void add(TOCItem item, int quantity) {
+        TOCBasketLine line = lines.get(item.getBarcode());
+        if(line == null) {
+            line = new TOCBasketLine(item.getBarcode(), item.getName(), item.getCost(), 0);
+            lines.put(item.getBarcode(), line);
+        }
+        line.addQuantity(quantity);
+        total = TOCMoney.add(total, TOCMoney.times(line.getCost(), quantity));
+        itemCount = itemCount + quantity;
+    }
+
+    /**
+     * Takes one of an item out of the basket. The line is removed when there are none of the item left
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  a boolean representing if the item was in the basket
+     */
+    public boolean remove(String barcode) {
+        TOCBasketLine line = lines.get(barcode);
+        if(line == null) {
+            return false;
+        }
+        line.addQuantity(-1);
+        if(line.getQuantity() == 0) {
+            lines.remove(barcode);
+        }
+        total = total - line.getCost();
+        itemCount--;
+
+        return true;
+    }
+
+    /**
+     * Voids the basket by taking every item out of it
+     */
+    public void clear() {
+        lines.clear();
+        total = 0;
+        itemCount = 0;
+    }
+
+    /**
+     * Get the lines of the basket in the order they were scanned
+     *
+     * @return                  the lines of the basket (can not be modified)
+     */
+    public Collection<TOCBasketLine> getLines() {
+        return Collections.unmodifiableCollection(lines.values());
+    }
+
+    /**
+     * Get the cost of everything in the basket
+     *
+     * @return                  the total of the basket in cents
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Get how many items are in the basket
+     *
+     * @return                  the number of items counting each one of a line
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Checks if anything has been scanned into the basket
+     *
+     * @return                  a boolean representing if the basket is empty
+     */
+    public boolean isEmpty() {
+        return itemCount == 0;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * One line of a basket. Holds an item's details as they were when it was first scanned and how many of it are being
+ * bought
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCBasketLine {
+    private String barcode;
+    private String name;
+    private long cost;
+    private int quantity;
+
+    /**
+     * The constructor. Takes a copy of the item's details so later price changes do not change the basket
+     *
+     * @param   lineBarcode     the item's barcode
+     * @param   lineName        the item's name
+     * @param   lineCost        the cost of one of the item in cents when it was scanned
+     * @param   lineQuantity    how many of the item are being bought
+     */
+    public TOCBasketLine(String lineBarcode, String lineName, long lineCost, int lineQuantity) {
+        barcode = lineBarcode;
+        name = lineName;
+        cost = lineCost;
+        quantity = lineQuantity;
+    }
+
+    // ------------------------------------------- Getters and Setters -------------------------------------------
+    /**
+     * Changes how many of the item are being bought
+     *
+     * @param   change          how many to add (negative to take some away)
+     */
+    public void addQuantity(int change) {
+        quantity = quantity + change;
+    }
+
+    /**
+     * Get the item's barcode
+     *
+     * @return                  the item's barcode
+     */
+    public String getBarcode() {
+        return barcode;
+    }
+
+    /**
+     * Get the item's name
+     *
+     * @return                  the item's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the cost of one of the item
+     *
+     * @return                  the item's cost in cents when it was scanned
+     */
+    public long getCost() {
+        return cost;
+    }
+
+    /**
+     * Get how many of the item are being bought
+     *
+     * @return                  the quantity of the item
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Get the cost of the whole line
+     *
+     * @return                  the cost of one item times the quantity in cents
+     */
+    public long getTotal() {
+        return TOCMoney.times(cost, quantity);
+    }
+}
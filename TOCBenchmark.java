@@ -0,0 +1,266 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Measures how long the main paths of the TOC take so we can tell if a change made them slower. Builds a new
+ * database in a temporary folder, fills it with items, members and bills of different lengths, then times scanning
+ * an item, logging in, checking out baskets of different sizes and reading bills. The results are printed and
+ * written as JSON so the results of two versions can be compared
+ *
+ * Run with: java -cp .:sqlite-jdbc.jar TOCBenchmark [results file] [sqlite|memory]
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCBenchmark {
+    // The admin that runs the benchmarks
+    private static final int ADMIN_PMKEYS = 1;
+    // How many different items are in the benchmark database
+    private static final int ITEM_COUNT = 200;
+    // Plenty of stock so checkouts never run out
+    private static final int ITEM_STOCK = 100000000;
+    // The basket sizes that are checked out
+    private static final int[] BASKET_SIZES = {1, 5, 20, 50};
+    // The number of bill entries of each member whose bill is read
+    private static final int[] HISTORY_SIZES = {10, 100, 1000, 10000, 100000};
+    // How many bill entries are read from the database at a time
+    private static final int BILL_PAGE_SIZE = 500;
+
+    private TOCStorage db;
+    private TOCManager manager;
+    private List<String> results;
+
+    /**
+     * Runs every benchmark
+     *
+     * @param   args            the file to write the results to (Default: benchmark-results.json) and the storage
+     *                          to measure (Default: sqlite)
+     */
+    public static void main(String[] args) throws IOException {
+        String output = args.length > 0 ? args[0] : "benchmark-results.json";
+        boolean memory = args.length > 1 && args[1].equalsIgnoreCase("memory");
+
+        Path folder = Files.createTempDirectory("tocbench");
+        TOCStorage storage;
+        if(memory) {
+            storage = new TOCMemoryStorage(folder.resolve("tocMemory.snapshot").toString(), 0);
+        }else {
+            storage = new TOCDatabase(folder.resolve("tocDatabase.db").toString());
+        }
+        TOCBenchmark benchmark = new TOCBenchmark(storage);
+        benchmark.run();
+        benchmark.write(output);
+        benchmark.shutdown();
+
+        System.out.println("Results written to " + output);
+    }
+
+    /**
+     * The constructor. Fills the benchmark storage and logs in the admin
+     *
+     * @param   storage         the empty storage to measure
+     */
+    public TOCBenchmark(TOCStorage storage) {
+        db = storage;
+        db.addMember(ADMIN_PMKEYS, "Benchmark Admin", true);
+        manager = new TOCManager(db);
+        manager.changeMember(ADMIN_PMKEYS);
+        results = new ArrayList<String>();
+
+        for(int i=0; i<ITEM_COUNT; i++) {
+            manager.newItem(barcode(i), "Item " + i, 100 + (i % 20) * 25, ITEM_STOCK);
+        }
+        for(int size : HISTORY_SIZES) {
+            fillHistory(historyMember(size), size);
+        }
+    }
+
+    // ------------------------------------------------- Helper Functions -------------------------------------------------
+    /**
+     * Get the barcode of a benchmark item
+     *
+     * @param   index           the number of the item
+     * @return                  the item's barcode
+     */
+    private static String barcode(int index) {
+        return "BENCH" + index;
+    }
+
+    /**
+     * Get the pmkeys of the member whose bill has a certain number of entries
+     *
+     * @param   size            the number of bill entries
+     * @return                  the member's pmkeys
+     */
+    private static int historyMember(int size) {
+        return 1000000 + size;
+    }
+
+    /**
+     * Adds a member and gives them a bill with the number of entries asked for
+     *
+     * @param   pmkeys          the pmkeys of the new member
+     * @param   size            how many bill entries to create
+     */
+    private void fillHistory(int pmkeys, int size) {
+        db.addMember(pmkeys, "History " + size, false);
+        TOCBasket basket = new TOCBasket();
+        for(int i=0; i<size; i++) {
+            basket.add(db.getItem(barcode(i % ITEM_COUNT)));
+        }
+        db.addTransactions(pmkeys, basket);
+    }
+
+    // ------------------------------------------------ Benchmark Functions ------------------------------------------------
+    /**
+     * Runs every benchmark and keeps the results
+     */
+    public void run() {
+        final int[] next = {0};
+
+        measure("changeItem", "", 2000, 20000, new Runnable() {
+            public void run() {
+                manager.changeItem(barcode(next[0] % ITEM_COUNT));
+                next[0]++;
+            }
+        });
+
+        measure("changeMember", "", 2000, 20000, new Runnable() {
+            public void run() {
+                manager.changeMember(historyMember(HISTORY_SIZES[next[0] % HISTORY_SIZES.length]));
+                next[0]++;
+            }
+        });
+        manager.changeMember(ADMIN_PMKEYS);
+
+        for(final int size : BASKET_SIZES) {
+            // Only the checkout is timed, so the basket is scanned before the timer starts
+            Runnable scan = new Runnable() {
+                public void run() {
+                    for(int i=0; i<size; i++) {
+                        manager.changeItem(barcode((next[0] + i) % ITEM_COUNT));
+                        manager.addItemToTransaction();
+                    }
+                    next[0]++;
+                }
+            };
+            measure("finaliseTransaction", "basketSize=" + size, 20, 200, scan, new Runnable() {
+                public void run() {
+                    manager.finaliseTransaction();
+                }
+            });
+        }
+
+        for(final int size : HISTORY_SIZES) {
+            final int[] rows = {0};
+            final Consumer<TOCBillRow> counter = new Consumer<TOCBillRow>() {
+                public void accept(TOCBillRow row) {
+                    rows[0]++;
+                }
+            };
+            manager.changeMember(historyMember(size));
+            // Long bills take longer so fewer of them are read
+            int iterations = Math.max(5, Math.min(500, 200000 / size));
+            measure("getBill", "historyRows=" + size, Math.max(2, iterations / 10), iterations, new Runnable() {
+                public void run() {
+                    manager.getBill(null, null, BILL_PAGE_SIZE, counter);
+                }
+            });
+        }
+        manager.changeMember(ADMIN_PMKEYS);
+    }
+
+    /**
+     * Times an operation and keeps the result
+     *
+     * @param   name            the name of the benchmark
+     * @param   params          the settings of the benchmark (ie. basketSize=5)
+     * @param   warmup          how many times to run the operation before timing it
+     * @param   iterations      how many times to time the operation
+     * @param   operation       the operation to time
+     */
+    private void measure(String name, String params, int warmup, int iterations, Runnable operation) {
+        measure(name, params, warmup, iterations, null, operation);
+    }
+
+    /**
+     * Times an operation and keeps the result
+     *
+     * @param   name            the name of the benchmark
+     * @param   params          the settings of the benchmark (ie. basketSize=5)
+     * @param   warmup          how many times to run the operation before timing it
+     * @param   iterations      how many times to time the operation
+     * @param   setup           run before every operation without being timed (can be null)
+     * @param   operation       the operation to time
+     */
+    private void measure(String name, String params, int warmup, int iterations, Runnable setup, Runnable operation) {
+        for(int i=0; i<warmup; i++) {
+            if(setup != null) {
+                setup.run();
+            }
+            operation.run();
+        }
+
+        long[] times = new long[iterations];
+        for(int i=0; i<iterations; i++) {
+            if(setup != null) {
+                setup.run();
+            }
+            long start = System.nanoTime();
+            operation.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+
+        long total = 0;
+        for(long time : times) {
+            total = total + time;
+        }
+        long mean = total / iterations;
+
+        System.out.println(String.format("%-20s %-20s n=%-6d mean=%10.1fus p50=%10.1fus p99=%10.1fus max=%10.1fus",
+                                         name, params, iterations, mean / 1000.0, percentile(times, 0.50) / 1000.0,
+                                         percentile(times, 0.99) / 1000.0, times[iterations - 1] / 1000.0));
+
+        results.add("{\"benchmark\":\"" + name + "\",\"params\":\"" + params + "\",\"iterations\":" + iterations +
+                    ",\"unit\":\"ns\",\"mean\":" + mean + ",\"min\":" + times[0] +
+                    ",\"p50\":" + percentile(times, 0.50) + ",\"p90\":" + percentile(times, 0.90) +
+                    ",\"p99\":" + percentile(times, 0.99) + ",\"max\":" + times[iterations - 1] + "}");
+    }
+
+    /**
+     * Gets a percentile out of a sorted list of times
+     *
+     * @param   sorted          the times in order from fastest to slowest
+     * @param   fraction        the percentile wanted (ie. 0.99)
+     * @return                  the time at that percentile
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Writes the results as a JSON list with one benchmark per line so two result files can be compared with diff
+     *
+     * @param   file            the file to write to
+     */
+    public void write(String file) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        writer.println("[");
+        for(int i=0; i<results.size(); i++) {
+            writer.println("  " + results.get(i) + (i < results.size() - 1 ? "," : ""));
+        }
+        writer.println("]");
+        writer.close();
+    }
+
+    /**
+     * Closes the benchmark database
+     */
+    public void shutdown() {
+        manager.shutdown();
+    }
+}
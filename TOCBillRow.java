@@ -0,0 +1,109 @@
+import java.time.*;
+
+/**
+ * One entry of a member's bill as it is stored in the TRANSACTIONS table
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCBillRow {
+    private final long num;
+    private final int pmKeys;
+    private final String barcode;
+    private final String name;
+    private final long cost;
+    private final long time;
+
+    /**
+     * The constructor. Bill rows do not change once they are read
+     *
+     * @param   rowNum          the number of the entry in the TRANSACTIONS table
+     * @param   rowPmKeys       the pmkeys of the member that bought the item
+     * @param   rowBarcode      the barcode of the item
+     * @param   rowName         the name of the item when it was bought
+     * @param   rowCost         the cost of the item in cents when it was bought
+     * @param   rowTime         when the item was bought (milliseconds since 1970, see TOCTime)
+     */
+    public TOCBillRow(long rowNum, int rowPmKeys, String rowBarcode, String rowName, long rowCost, long rowTime) {
+        num = rowNum;
+        pmKeys = rowPmKeys;
+        barcode = rowBarcode;
+        name = rowName;
+        cost = rowCost;
+        time = rowTime;
+    }
+
+    // ------------------------------------------------- Getters -------------------------------------------------
+    /**
+     * Get the number of the entry. Used to carry on reading a bill from where the last page stopped
+     *
+     * @return                  the entry's number
+     */
+    public long getNum() {
+        return num;
+    }
+
+    /**
+     * Get the pmkeys of the member that bought the item
+     *
+     * @return                  the member's pmkeys
+     */
+    public int getPmKeys() {
+        return pmKeys;
+    }
+
+    /**
+     * Get the barcode of the item
+     *
+     * @return                  the item's barcode
+     */
+    public String getBarcode() {
+        return barcode;
+    }
+
+    /**
+     * Get the name of the item when it was bought
+     *
+     * @return                  the item's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the cost of the item when it was bought
+     *
+     * @return                  the item's cost in cents
+     */
+    public long getCost() {
+        return cost;
+    }
+
+    /**
+     * Get when the item was bought as it is stored
+     *
+     * @return                  the milliseconds since 1970
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Get the date and time the item was bought
+     *
+     * @return                  the date of the purchase on this computer's clock
+     */
+    public LocalDateTime getDate() {
+        return TOCTime.toDateTime(time);
+    }
+
+    /**
+     * Shows the entry the way it is printed on a bill
+     *
+     * @return                  the entry as date - name - $cost
+     */
+    @Override
+    public String toString() {
+        return getDate() + " - " + name + " - " + TOCMoney.format(cost);
+    }
+}
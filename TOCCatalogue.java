@@ -0,0 +1,346 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Loads and saves the whole item catalogue and member list as comma separated files, so a supplier's price list or
+ * the unit's nominal roll can be loaded in one go instead of one item at a time. Files are read one record at a time
+ * and written to the storage in groups, so each group costs one commit. Records that can not be loaded are written to
+ * a reject report with the line they were on and why, and the rest of the file is still loaded
+ *
+ * Item files have the columns BARCODE,NAME,COST,STOCK and member files PMKEYS,NAME,ADMIN. The first line may be a
+ * header with those names.
+ *
+ * Run with: java -cp .:sqlite-jdbc.jar TOCCatalogue import|export items|members [file] [reject file]
+ * (use - or leave the file out for stdin or stdout)
+ *
+ * Do not run this while the TOC is running. Load files from the TOC's (F)ile import option instead, which updates the
+ * items and members the TOC keeps in memory as it loads. A TOC that is running only notices changes made by another
+ * program when it next checks the database (about twice a second), and baskets already scanned keep the old prices.
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCCatalogue {
+    // How many records are written to the storage in one commit
+    public static final int BATCH_SIZE = 500;
+    // The longest names and barcodes the tables allow
+    private static final int MAX_BARCODE = 30;
+    private static final int MAX_NAME = 25;
+
+    private final TOCStorage storage;
+    private final TOCMetrics metrics;
+
+    /**
+     * How many records of a file were loaded and how many were rejected
+     */
+    public static class Result {
+        private int loaded = 0;
+        private int duplicates = 0;
+        private int rejected = 0;
+
+        /**
+         * Get how many records were loaded
+         *
+         * @return              the number of records added or updated
+         */
+        public int getLoaded() {
+            return loaded;
+        }
+
+        /**
+         * Get how many records repeated a barcode or pmkeys from earlier in the file. The later record is the one
+         * kept, and each is listed in the reject report
+         *
+         * @return              the number of records that replaced an earlier one
+         */
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * Get how many records were rejected
+         *
+         * @return              the number of records written to the reject report
+         */
+        public int getRejected() {
+            return rejected;
+        }
+
+        public String toString() {
+            return loaded + " loaded, " + duplicates + " duplicates, " + rejected + " rejected";
+        }
+    }
+
+    /**
+     * Imports or exports a file
+     *
+     * @param   args            import or export, items or members, the file (Default: stdin/stdout) and the reject
+     *                          report (Default: stderr)
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("Usage: TOCCatalogue import|export items|members [file] [reject file]");
+            System.exit(1);
+        }
+        boolean items = args[1].equalsIgnoreCase("items");
+        String file = args.length > 2 ? args[2] : "-";
+
+        TOCDatabase db = new TOCDatabase();
+        TOCCatalogue catalogue = new TOCCatalogue(db);
+        if(args[0].equalsIgnoreCase("import")) {
+            Reader in = file.equals("-") ? new InputStreamReader(System.in, "UTF-8") : new InputStreamReader(new FileInputStream(file), "UTF-8");
+            Writer rejects = args.length > 3 ? new OutputStreamWriter(new FileOutputStream(args[3]), "UTF-8") : new OutputStreamWriter(System.err);
+            Result result = items ? catalogue.importItems(in, rejects) : catalogue.importMembers(in, rejects);
+            in.close();
+            rejects.close();
+            System.out.println((items ? "Items: " : "Members: ") + result);
+        }else {
+            Writer out = file.equals("-") ? new OutputStreamWriter(System.out, "UTF-8") : new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            int count = items ? catalogue.exportItems(out) : catalogue.exportMembers(out);
+            out.close();
+            System.err.println((items ? "Items" : "Members") + " exported: " + count);
+        }
+        db.close();
+    }
+
+    /**
+     * The constructor
+     *
+     * @param   toc             the storage the files are loaded into and saved from
+     */
+    public TOCCatalogue(TOCStorage toc) {
+        storage = toc;
+        metrics = TOCMetrics.getInstance();
+    }
+
+    // -------------------------------------------------- Item Functions --------------------------------------------------
+    /**
+     * Loads items from a comma separated file. Items that already exist get the new name, cost and stock. If a barcode
+     * is in the file more than once the last line wins and the earlier ones are counted as duplicates
+     *
+     * @param   in              the file to read
+     * @param   rejects         where records that can not be loaded are reported (LINE,REASON,RECORD)
+     * @return                  how many items were loaded and rejected
+     */
+    public Result importItems(Reader in, Writer rejects) throws IOException {
+        long timer = metrics.start();
+        Result result = new Result();
+        TOCCsv csv = new TOCCsv(in);
+        PrintWriter report = new PrintWriter(rejects);
+        List<TOCItem> batch = new ArrayList<TOCItem>();
+        // The same barcode twice in one group would be updated twice in one commit, so the later one replaces it
+        Map<String,Integer> inBatch = new HashMap<String,Integer>();
+        // The line every barcode was last seen on. A barcode from an earlier group is simply written again, so the
+        // later line wins there too, but either way it is a duplicate rather than another item loaded
+        Map<String,Integer> seen = new HashMap<String,Integer>();
+
+        List<String> record = csv.next();
+        if(record != null && record.size() > 0 && record.get(0).trim().equalsIgnoreCase("BARCODE")) {
+            record = csv.next();
+        }
+        while(record != null) {
+            String reason = null;
+            TOCItem item = null;
+            if(record.size() != 4) {
+                reason = "expected 4 fields but found " + record.size();
+            }else {
+                String barcode = record.get(0).trim();
+                String name = record.get(1).trim();
+                if(barcode.isEmpty() || barcode.length() > MAX_BARCODE) {
+                    reason = "barcode must be 1 to " + MAX_BARCODE + " characters";
+                }else if(name.isEmpty() || name.length() > MAX_NAME) {
+                    reason = "name must be 1 to " + MAX_NAME + " characters";
+                }else {
+                    try {
+                        long cost = TOCMoney.parse(record.get(2));
+                        int stock = Integer.parseInt(record.get(3).trim());
+                        if(cost < 0) {
+                            reason = "cost must be a positive number";
+                        }else if(stock < 0) {
+                            reason = "stock can not be negative";
+                        }else {
+                            item = new TOCItem(barcode, name, cost, stock);
+                        }
+                    }catch(NumberFormatException e) {
+                        reason = "cost (dollars and cents) or stock is not a number";
+                    }
+                }
+            }
+
+            if(item == null) {
+                reject(report, csv.getRecordLine(), reason, record);
+                result.rejected++;
+            }else {
+                Integer earlier = inBatch.get(item.getBarcode());
+                if(earlier != null) {
+                    batch.set(earlier, item);
+                }else {
+                    inBatch.put(item.getBarcode(), batch.size());
+                    batch.add(item);
+                }
+                Integer earlierLine = seen.put(item.getBarcode(), csv.getRecordLine());
+                if(earlierLine != null) {
+                    reject(report, csv.getRecordLine(), "duplicate barcode of line " + earlierLine + ", later line kept", record);
+                    result.duplicates++;
+                }else {
+                    result.loaded++;
+                }
+                if(batch.size() >= BATCH_SIZE) {
+                    storage.upsertItems(batch);
+                    batch.clear();
+                    inBatch.clear();
+                }
+            }
+            record = csv.next();
+        }
+        if(!batch.isEmpty()) {
+            storage.upsertItems(batch);
+        }
+        report.flush();
+
+        metrics.add("catalogue.items.loaded", result.loaded);
+        metrics.add("catalogue.items.duplicates", result.duplicates);
+        metrics.add("catalogue.items.rejected", result.rejected);
+        metrics.stop("catalogue.importItems", timer);
+        return result;
+    }
+
+    /**
+     * Saves every item to a comma separated file with a header line
+     *
+     * @param   out             where the file is written
+     * @return                  how many items were written
+     */
+    public int exportItems(Writer out) {
+        long timer = metrics.start();
+        final PrintWriter writer = new PrintWriter(out);
+        final int[] count = {0};
+        writer.println(TOCCsv.format("BARCODE", "NAME", "COST", "STOCK"));
+        storage.forEachItem(new Consumer<TOCItem>() {
+            public void accept(TOCItem item) {
+                writer.println(TOCCsv.format(item.getBarcode(), item.getName(), TOCMoney.toDecimal(item.getCost()), item.getStock()));
+                count[0]++;
+            }
+        });
+        writer.flush();
+
+        metrics.stop("catalogue.exportItems", timer);
+        return count[0];
+    }
+
+    // ------------------------------------------------- Member Functions -------------------------------------------------
+    /**
+     * Loads members from a comma separated file. Members that already exist get the new name and admin status. ADMIN
+     * can be 1/0, true/false or yes/no. If a pmkeys is in the file more than once the last line wins and the earlier
+     * ones are counted as duplicates
+     *
+     * @param   in              the file to read
+     * @param   rejects         where records that can not be loaded are reported (LINE,REASON,RECORD)
+     * @return                  how many members were loaded and rejected
+     */
+    public Result importMembers(Reader in, Writer rejects) throws IOException {
+        long timer = metrics.start();
+        Result result = new Result();
+        TOCCsv csv = new TOCCsv(in);
+        PrintWriter report = new PrintWriter(rejects);
+        List<TOCMember> batch = new ArrayList<TOCMember>();
+        // The line every pmkeys was last seen on. The later line wins as it is written last
+        TOCIntMap<Integer> seen = new TOCIntMap<Integer>();
+
+        List<String> record = csv.next();
+        if(record != null && record.size() > 0 && record.get(0).trim().equalsIgnoreCase("PMKEYS")) {
+            record = csv.next();
+        }
+        while(record != null) {
+            String reason = null;
+            TOCMember member = null;
+            if(record.size() != 3) {
+                reason = "expected 3 fields but found " + record.size();
+            }else {
+                String name = record.get(1).trim();
+                Boolean admin = TOCCsv.parseFlag(record.get(2));
+                int pmkeys = 0;
+                try {
+                    pmkeys = Integer.parseInt(record.get(0).trim());
+                }catch(NumberFormatException e) {
+                    pmkeys = 0;
+                }
+                if(pmkeys <= 0) {
+                    reason = "pmkeys must be a positive number";
+                }else if(name.isEmpty() || name.length() > MAX_NAME) {
+                    reason = "name must be 1 to " + MAX_NAME + " characters";
+                }else if(admin == null) {
+                    reason = "admin must be 1/0, true/false or yes/no";
+                }else {
+                    member = new TOCMember(pmkeys, name, admin);
+                }
+            }
+
+            if(member == null) {
+                reject(report, csv.getRecordLine(), reason, record);
+                result.rejected++;
+            }else {
+                batch.add(member);
+                Integer earlierLine = seen.put(member.getPmKeys(), csv.getRecordLine());
+                if(earlierLine != null) {
+                    reject(report, csv.getRecordLine(), "duplicate pmkeys of line " + earlierLine + ", later line kept", record);
+                    result.duplicates++;
+                }else {
+                    result.loaded++;
+                }
+                if(batch.size() >= BATCH_SIZE) {
+                    storage.upsertMembers(batch);
+                    batch.clear();
+                }
+            }
+            record = csv.next();
+        }
+        if(!batch.isEmpty()) {
+            storage.upsertMembers(batch);
+        }
+        report.flush();
+
+        metrics.add("catalogue.members.loaded", result.loaded);
+        metrics.add("catalogue.members.duplicates", result.duplicates);
+        metrics.add("catalogue.members.rejected", result.rejected);
+        metrics.stop("catalogue.importMembers", timer);
+        return result;
+    }
+
+    /**
+     * Saves every member to a comma separated file with a header line
+     *
+     * @param   out             where the file is written
+     * @return                  how many members were written
+     */
+    public int exportMembers(Writer out) {
+        long timer = metrics.start();
+        final PrintWriter writer = new PrintWriter(out);
+        final int[] count = {0};
+        writer.println(TOCCsv.format("PMKEYS", "NAME", "ADMIN"));
+        storage.forEachMember(new Consumer<TOCMember>() {
+            public void accept(TOCMember member) {
+                writer.println(TOCCsv.format(member.getPmKeys(), member.getName(), member.isAdmin() ? 1 : 0));
+                count[0]++;
+            }
+        });
+        writer.flush();
+
+        metrics.stop("catalogue.exportMembers", timer);
+        return count[0];
+    }
+
+    // ------------------------------------------------- Helper Functions -------------------------------------------------
+    /**
+     * Writes a record that could not be loaded to the reject report
+     *
+     * @param   report          the reject report
+     * @param   line            the line of the file the record started on
+     * @param   reason          why it was rejected
+     * @param   record          the fields of the record
+     */
+    private static void reject(PrintWriter report, int line, String reason, List<String> record) {
+        report.println(TOCCsv.format(line, reason, TOCCsv.join(record)));
+    }
+}
@@ -0,0 +1,24 @@
+import java.util.concurrent.*;
+
+/**
+ * Something that finalised baskets are handed to instead of writing them to the storage straight away (ie. the
+ * TOCWriteQueue or the TOCJournal)
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public interface TOCCheckout {
+    /**
+     * Hands over a basket to be recorded
+     *
+     * @param   pmkeys          the pmkeys of the member buying the basket
+     * @param   basket          the items being bought. A copy is taken so the basket can be cleared straight away
+     * @return                  completes with how many of each line of the basket were sold once the sale is safe
+     */
+    public CompletableFuture<int[]> submit(int pmkeys, TOCBasket basket);
+
+    /**
+     * Records every basket that was handed over and stops
+     */
+    public void shutdown();
+}
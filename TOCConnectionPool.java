@@ -0,0 +1,271 @@
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps a bounded number of connections to the SQL database open so the TOCDatabase does not have to open and close
+ * the database file for every query. A thread that already holds a connection gets the same one back when it asks
+ * again, so functions in TOCDatabase can call each other without needing a second connection. Every connection is
+ * opened with the settings of a TOCStorageProfile and keeps its own prepared statements so the same SQL is only
+ * parsed once per connection.
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCConnectionPool {
+    // How long to wait for a connection to be handed back before giving up
+    private static final long BORROW_TIMEOUT_SECONDS = 30;
+    // How long a connection gets to answer the health check
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    // The most prepared statements each connection keeps
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    // Set once the sqlite driver has been registered with the DriverManager
+    private static boolean driverLoaded = false;
+
+    private final String url;
+    private final int maxSize;
+    private final TOCStorageProfile profile;
+    private final BlockingQueue<Connection> idle;
+    private final List<Connection> all;
+    private final ThreadLocal<Lease> leases;
+    private final Map<Connection,Map<String,PreparedStatement>> statements;
+    private boolean closed = false;
+
+    /**
+     * Remembers which connection a thread is holding and how many times it asked for it
+     */
+    private static class Lease {
+        private final Connection conn;
+        private int depth = 1;
+
+        private Lease(Connection leased) {
+            conn = leased;
+        }
+    }
+
+    /**
+     * The constructor. Connections are only opened when they are first needed and use the standard storage profile
+     *
+     * @param   jdbcUrl     the url of the database (ie. jdbc:sqlite:tocDatabase.db)
+     * @param   size        the most connections that can be open at the same time
+     */
+    public TOCConnectionPool(String jdbcUrl, int size) {
+        this(jdbcUrl, size, TOCStorageProfile.standard());
+    }
+
+    /**
+     * The constructor. Connections are only opened when they are first needed
+     *
+     * @param   jdbcUrl     the url of the database (ie. jdbc:sqlite:tocDatabase.db)
+     * @param   size        the most connections that can be open at the same time
+     * @param   settings    the settings every connection is opened with
+     */
+    public TOCConnectionPool(String jdbcUrl, int size, TOCStorageProfile settings) {
+        url = jdbcUrl;
+        maxSize = size;
+        profile = settings;
+        idle = new ArrayBlockingQueue<Connection>(size);
+        all = new ArrayList<Connection>();
+        leases = new ThreadLocal<Lease>();
+        statements = new ConcurrentHashMap<Connection,Map<String,PreparedStatement>>();
+    }
+
+    /**
+     * Registers the sqlite driver. Only does the work the first time it is called
+     */
+    private static synchronized void loadDriver() throws ClassNotFoundException {
+        if(!driverLoaded) {
+            Class.forName("org.sqlite.JDBC");
+            driverLoaded = true;
+        }
+    }
+
+    /**
+     * Gets a connection for the calling thread. If the thread already holds one it gets the same connection again.
+     * Every call to this function must be matched by a call to release(Connection conn)
+     *
+     * @return                  an open connection to the database
+     */
+    public Connection borrow() throws SQLException {
+        Lease lease = leases.get();
+        if(lease != null) {
+            lease.depth++;
+            return lease.conn;
+        }
+
+        Connection conn = idle.poll();
+        if(conn == null) {
+            conn = open();
+        }
+        if(conn == null) {
+            try {
+                conn = idle.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if(conn == null) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        }
+
+        // Replace connections that have gone bad while they were sitting in the pool
+        if(!conn.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+            discard(conn);
+            conn = open();
+            if(conn == null) {
+                throw new SQLException("Could not reopen a database connection");
+            }
+        }
+
+        leases.set(new Lease(conn));
+        TOCMetrics.getInstance().increment("db.connections.borrowed");
+        return conn;
+    }
+
+    /**
+     * Hands a connection back to the pool once the thread's outermost borrow is finished with it. Any transaction
+     * that was left open is rolled back
+     *
+     * @param   conn            the connection returned by borrow()
+     */
+    public void release(Connection conn) throws SQLException {
+        Lease lease = leases.get();
+        if(lease == null || lease.conn != conn) {
+            throw new SQLException("Connection was not borrowed by this thread");
+        }
+        lease.depth--;
+        if(lease.depth > 0) {
+            return;
+        }
+        leases.remove();
+
+        if(!conn.getAutoCommit()) {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        }
+
+        synchronized(this) {
+            if(closed) {
+                discard(conn);
+                return;
+            }
+        }
+        idle.offer(conn);
+    }
+
+    /**
+     * Opens a new connection if the pool has not reached its limit
+     *
+     * @return                  a new connection or null if the pool is full
+     */
+    private Connection open() throws SQLException {
+        synchronized(this) {
+            if(closed) {
+                throw new SQLException("The connection pool has been shut down");
+            }
+            if(all.size() >= maxSize) {
+                return null;
+            }
+            try {
+                loadDriver();
+            }catch(ClassNotFoundException e) {
+                throw new SQLException("The sqlite driver is not available", e);
+            }
+            Connection conn = DriverManager.getConnection(url);
+            try {
+                profile.apply(conn);
+            }catch(SQLException e) {
+                conn.close();
+                throw e;
+            }
+            all.add(conn);
+            statements.put(conn, newStatementCache());
+            TOCMetrics.getInstance().increment("db.connections.opened");
+            return conn;
+        }
+    }
+
+    /**
+     * Gets a prepared statement for some SQL on a connection borrowed from this pool. The statement is kept and handed
+     * out again the next time the same SQL is asked for on the same connection, so it must not be closed. Close its
+     * results instead when you are finished with them
+     *
+     * @param   conn            the connection returned by borrow()
+     * @param   sql             the SQL of the statement
+     * @return                  a prepared statement for the SQL
+     */
+    public PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        // Only the thread holding the connection uses its statements so they do not need a lock
+        Map<String,PreparedStatement> cached = statements.get(conn);
+        if(cached == null) {
+            throw new SQLException("Connection was not opened by this pool");
+        }
+        PreparedStatement stmt = cached.get(sql);
+        if(stmt == null || stmt.isClosed()) {
+            stmt = conn.prepareStatement(sql);
+            cached.put(sql, stmt);
+            TOCMetrics.getInstance().increment("db.statements.prepared");
+        }else {
+            stmt.clearParameters();
+            TOCMetrics.getInstance().increment("db.statements.reused");
+        }
+        return stmt;
+    }
+
+    /**
+     * Makes the statement cache of a new connection. The statement that was used longest ago is closed when it is full
+     *
+     * @return                  an empty statement cache
+     */
+    private static Map<String,PreparedStatement> newStatementCache() {
+        return new LinkedHashMap<String,PreparedStatement>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String,PreparedStatement> eldest) {
+                if(size() <= STATEMENT_CACHE_SIZE) {
+                    return false;
+                }
+                try {
+                    eldest.getValue().close();
+                }catch(SQLException e) {
+                    // The statement is being thrown away so there is nothing else to do with it
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Closes a connection and forgets about it so a new one can take its place
+     *
+     * @param   conn            the connection to throw away
+     */
+    private synchronized void discard(Connection conn) {
+        all.remove(conn);
+        Map<String,PreparedStatement> cached = statements.remove(conn);
+        try {
+            if(cached != null) {
+                for(PreparedStatement stmt : cached.values()) {
+                    stmt.close();
+                }
+            }
+            conn.close();
+        }catch(SQLException e) {
+            // The connection is being thrown away so there is nothing else to do with it
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops handing out new ones. Connections that are still borrowed are closed
+     * when they are released
+     */
+    public void shutdown() {
+        synchronized(this) {
+            closed = true;
+        }
+        Connection conn = idle.poll();
+        while(conn != null) {
+            discard(conn);
+            conn = idle.poll();
+        }
+    }
+}
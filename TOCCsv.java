@@ -0,0 +1,167 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads comma separated files one record at a time so a file of any length can be read without holding it in
+ * memory. Fields can be wrapped in double quotes to hold commas, new lines or quotes (written as two quotes), the
+ * same as a spreadsheet saves them
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCCsv {
+    private final Reader in;
+    private int line = 1;
+    private int recordLine = 0;
+    private int pushedBack = -2;
+
+    /**
+     * The constructor
+     *
+     * @param   reader          where the file is read from. It is buffered if it is not already
+     */
+    public TOCCsv(Reader reader) {
+        in = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+    }
+
+    /**
+     * Reads the next character, or the one that was put back
+     *
+     * @return                  the character or -1 at the end of the file
+     */
+    private int read() throws IOException {
+        if(pushedBack != -2) {
+            int c = pushedBack;
+            pushedBack = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    /**
+     * Reads the next record
+     *
+     * @return                  the fields of the record or null at the end of the file. Blank lines are skipped
+     */
+    public List<String> next() throws IOException {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        recordLine = line;
+
+        int c = read();
+        while(c != -1) {
+            any = true;
+            if(quoted) {
+                if(c == '"') {
+                    int following = read();
+                    if(following == '"') {
+                        field.append('"');
+                    }else {
+                        quoted = false;
+                        pushedBack = following;
+                    }
+                }else {
+                    if(c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            }else if(c == '"') {
+                quoted = true;
+            }else if(c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }else if(c == '\n' || c == '\r') {
+                if(c == '\r') {
+                    int following = read();
+                    if(following != '\n') {
+                        pushedBack = following;
+                    }
+                }
+                line++;
+                if(fields.isEmpty() && field.length() == 0) {
+                    // A blank line
+                    recordLine = line;
+                    any = false;
+                    c = read();
+                    continue;
+                }
+                break;
+            }else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+
+        if(!any) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Get the line of the file the last record started on
+     *
+     * @return                  the line number (the first line is 1)
+     */
+    public int getRecordLine() {
+        return recordLine;
+    }
+
+    /**
+     * Turns fields into one line of a comma separated file. Fields with commas, quotes or new lines are quoted
+     *
+     * @param   fields          the fields of the record
+     * @return                  the record without a new line at the end
+     */
+    public static String format(Object... fields) {
+        StringBuilder record = new StringBuilder();
+        for(int i=0; i<fields.length; i++) {
+            if(i > 0) {
+                record.append(',');
+            }
+            String field = String.valueOf(fields[i]);
+            if(field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                record.append('"').append(field.replace("\"", "\"\"")).append('"');
+            }else {
+                record.append(field);
+            }
+        }
+        return record.toString();
+    }
+
+    /**
+     * Puts the fields of a record back together as they were read, for reporting a record that could not be loaded.
+     * The fields are not quoted, so pass the result to format(Object...) as one field to write it out
+     *
+     * @param   record          the fields of the record
+     * @return                  the fields separated by commas
+     */
+    public static String join(List<String> record) {
+        StringBuilder original = new StringBuilder();
+        for(int i=0; i<record.size(); i++) {
+            original.append(i == 0 ? "" : ",").append(record.get(i));
+        }
+        return original.toString();
+    }
+
+    /**
+     * Reads a yes or no field such as a member's admin status
+     *
+     * @param   text            the field
+     * @return                  the flag or null if it is not 1/0, true/false, yes/no or y/n
+     */
+    public static Boolean parseFlag(String text) {
+        String flag = text.trim().toLowerCase();
+        if(flag.equals("1") || flag.equals("true") || flag.equals("yes") || flag.equals("y")) {
+            return Boolean.TRUE;
+        }
+        if(flag.equals("0") || flag.equals("false") || flag.equals("no") || flag.equals("n")) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+}
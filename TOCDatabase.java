@@ -1,102 +1,489 @@
 import java.sql.*;
 import java.time.*;
+import java.time.temporal.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
 
 /**
- * This object will provide the communication with the SQL database
+ * This object will provide the communication with the SQL database. It is the TOCStorage the TOC normally uses
  * 
  * @author  Pedro Alves
  * @version 23 August 2016
  */
-public class TOCDatabase {
-    // The connection to the SQL database
-    Connection conn = null;
+public class TOCDatabase implements TOCStorage {
+    // The most connections to the SQL database that can be open at the same time
+    private static final int POOL_SIZE = 4;
+    
+    // The most items that are kept in memory by the item cache
+    private static final int CACHE_SIZE = 2000;
+    // How often the CHANGES table is checked for items or members changed by another program. See checkForChanges()
+    private static final long CHANGE_CHECK_MILLIS = 500;
+    // How many bill entries are read from the database at a time when a whole bill is wanted
+    private static final int BILL_PAGE_SIZE = 500;
+    // The barcode payments are recorded under in the TRANSACTIONS table
+    public static final String PAYMENT_BARCODE = "PAYMENT";
+    // Add a sale to the totals the reports read. See addToSales
+    private static final String ADD_ITEM_SALES = "INSERT INTO ITEM_SALES (DAY,BARCODE,QUANTITY,REVENUE) VALUES(?,?,?,?) " +
+                                                 "ON CONFLICT(DAY,BARCODE) DO UPDATE SET QUANTITY = QUANTITY + excluded.QUANTITY, " +
+                                                 "REVENUE = REVENUE + excluded.REVENUE";
+    private static final String ADD_MEMBER_SALES = "INSERT INTO MEMBER_SALES (PMKEYS,MONTH,QUANTITY,SPENT) VALUES(?,?,?,?) " +
+                                                   "ON CONFLICT(PMKEYS,MONTH) DO UPDATE SET QUANTITY = QUANTITY + excluded.QUANTITY, " +
+                                                   "SPENT = SPENT + excluded.SPENT";
+    
+    // Keeps the connections to the SQL database open between calls
+    private TOCConnectionPool pool;
+    // Keeps the items that were scanned recently in memory
+    private TOCItemCache cache;
+    // Keeps every member in memory for logging in and admin checks
+    private TOCMemberDirectory directory;
+    // Lets checkouts reserve stock in memory before they write to the database
+    private TOCStockCounter stockCounter;
+    // Times every call and counts the queries and rows read
+    private TOCMetrics metrics;
+    // Only one thread writes to the database at a time. See beginWrite()
+    private final ReentrantLock writer = new ReentrantLock(true);
+    // Stock counts are only read from the database, reserved and brought in line with a commit under this. See beginStock()
+    private final ReentrantLock stock = new ReentrantLock();
+    // The change counts of the CHANGES table this TOC has caught up with, and if another program's changes were seen
+    // while writing so the items or members must be read again. Guarded by changes
+    private final Object changes = new Object();
+    private long itemChanges = 0;
+    private long memberChanges = 0;
+    private boolean itemsChanged = false;
+    private boolean membersChanged = false;
+    // When the CHANGES table is next read
+    private final AtomicLong nextChangeCheck = new AtomicLong();
+    
+    /**
+     * The constructor. Uses the tocDatabase.db file in the folder the TOC was started from
+     */
+    public TOCDatabase() {
+        this("tocDatabase.db");
+    }
+    
+    /**
+     * The constructor. Sets up the pool of connections to the database file, brings the tables up to date and loads
+     * the items into the cache and the members into the directory
+     * 
+     * @param   file    the path of the database file. It is created if it does not exist
+     */
+    public TOCDatabase(String file) {
+        this(file, TOCStorageProfile.standard());
+    }
+    
+    /**
+     * The constructor. Sets up the pool of connections to the database file with the given SQLite settings, brings
+     * the tables up to date and loads the items into the cache and the members into the directory
+     * 
+     * @param   file    the path of the database file. It is created if it does not exist
+     * @param   profile the settings every connection is opened with
+     */
+    public TOCDatabase(String file, TOCStorageProfile profile) {
+        pool = new TOCConnectionPool("jdbc:sqlite:" + file, POOL_SIZE, profile);
+        cache = new TOCItemCache(CACHE_SIZE);
+        directory = new TOCMemberDirectory();
+        stockCounter = new TOCStockCounter();
+        metrics = TOCMetrics.getInstance();
+        addCacheGauges();
+        upgrade();
+        // Everything changed so far is read in by warmCache() and loadDirectory()
+        long[] counts = readChanges();
+        itemChanges = counts[0];
+        memberChanges = counts[1];
+        nextChangeCheck.set(System.currentTimeMillis() + CHANGE_CHECK_MILLIS);
+        warmCache();
+        loadDirectory();
+    }
     
     // -------------------------------------- Functions that communicate directly with DB --------------------------------------
     /**
-     * Opens a connection to the database which is represented by the conn variable in this class' parameters. 
-     * Remember to call the close function of the connection when you want to save the changes
+     * Borrows a connection to the database from the pool. Remember to call release(Connection conn) when you are
+     * finished with it so other calls can use it
+     * 
+     * @return          an open connection to the database
      */
-    private void connect() {
+    private Connection connect() {
+        Connection conn = null;
         try {
-            Class.forName("org.sqlite.JDBC");
-            conn = DriverManager.getConnection("jdbc:sqlite:tocDatabase.db");
+            conn = pool.borrow();
         }catch(Exception e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
             System.err.println("Error at TOCDatabase connect()");
             System.err.println("Something went wrong, please contact one of the TOC's admins");
             System.exit(0);
         }
+        
+        return conn;
     }
     
-    // -------------------------------------------------- Called by the TOCManager --------------------------------------------------
     /**
-     * Get a member's name from the databse that matches the given pmkeys
+     * Hands a connection borrowed with connect() back to the pool
      * 
-     * @param   pmkeys  the member's pmkeys
-     * @return          the member's name (Default: "Member Not Found"
+     * @param   conn    the connection to hand back
      */
-    public String getMemberName(int pmkeys) {
-        // Initialise the value of name to its default value
-        String name = "Member Not Found";
-        
-        // Initialise connection to the database
-        connect();
-        // Check if we can find the member's name by searching their pmkeys
-        ResultSet results = null;
+    private void release(Connection conn) throws SQLException {
+        pool.release(conn);
+    }
+    
+    /**
+     * Gets a prepared statement for some SQL. Statements are kept by the connection they were prepared on so the SQL
+     * is only parsed the first time. Do not close the statement, close its results when you are finished with them
+     * 
+     * @param   conn    the connection returned by connect()
+     * @param   sql     the SQL of the statement
+     * @return          a prepared statement for the SQL
+     */
+    private PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        return pool.prepare(conn, sql);
+    }
+    
+    /**
+     * Runs a query and counts it in the metrics
+     * 
+     * @param   stmt    the query to run
+     * @return          the results of the query
+     */
+    private ResultSet query(PreparedStatement stmt) throws SQLException {
+        metrics.increment("db.queries");
+        return stmt.executeQuery();
+    }
+    
+    /**
+     * Runs a query and counts it in the metrics
+     * 
+     * @param   stmt    the statement to run the query with
+     * @param   sql     the query to run
+     * @return          the results of the query
+     */
+    private ResultSet query(Statement stmt, String sql) throws SQLException {
+        metrics.increment("db.queries");
+        return stmt.executeQuery(sql);
+    }
+    
+    /**
+     * Runs an insert, update or delete and counts it in the metrics
+     * 
+     * @param   stmt    the change to run
+     * @return          how many rows were changed
+     */
+    private int update(PreparedStatement stmt) throws SQLException {
+        metrics.increment("db.updates");
+        return stmt.executeUpdate();
+    }
+    
+    /**
+     * Runs an insert, update or delete and counts it in the metrics
+     * 
+     * @param   stmt    the statement to run the change with
+     * @param   sql     the change to run
+     * @return          how many rows were changed
+     */
+    private int update(Statement stmt, String sql) throws SQLException {
+        metrics.increment("db.updates");
+        return stmt.executeUpdate(sql);
+    }
+    
+    /**
+     * Runs a batch of changes and counts every change in the metrics
+     * 
+     * @param   stmt    the statement the changes were added to
+     * @return          how many rows each change changed
+     */
+    private int[] batch(PreparedStatement stmt) throws SQLException {
+        int[] counts = stmt.executeBatch();
+        metrics.increment("db.batches");
+        metrics.add("db.updates", counts.length);
+        return counts;
+    }
+    
+    /**
+     * Moves to the next row of some results and counts it in the metrics
+     * 
+     * @param   results the results of a query
+     * @return          a boolean representing if there was another row
+     */
+    private boolean next(ResultSet results) throws SQLException {
+        if(results.next()) {
+            metrics.increment("db.rows.read");
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Lets the metrics report show how well the item cache is doing and how many members are in the directory
+     */
+    private void addCacheGauges() {
+        metrics.addGauge("cache.items.hits", new Supplier<Long>() {
+            public Long get() {
+                return cache.getHits();
+            }
+        });
+        metrics.addGauge("cache.items.misses", new Supplier<Long>() {
+            public Long get() {
+                return cache.getMisses();
+            }
+        });
+        metrics.addGauge("cache.items.evictions", new Supplier<Long>() {
+            public Long get() {
+                return cache.getEvictions();
+            }
+        });
+        metrics.addGauge("cache.items.size", new Supplier<Long>() {
+            public Long get() {
+                return (long) cache.getSize();
+            }
+        });
+        metrics.addGauge("directory.members.size", new Supplier<Long>() {
+            public Long get() {
+                return (long) directory.getSize();
+            }
+        });
+    }
+    
+    /**
+     * Applies any changes to the tables that this database file has not had yet. See TOCSchema
+     */
+    private void upgrade() {
+        Connection conn = connect();
+        try{
+            int applied = TOCSchema.migrate(conn);
+            if(applied > 0) {
+                System.out.println("Database upgraded to version " + TOCSchema.getLatestVersion());
+            }
+            release(conn);
+        }catch(Exception e) {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+            System.err.println("Error at TOCDatabase upgrade()");
+            System.err.println("Something went wrong, please contact one of the TOC's admins");
+            System.exit(0);
+        }
+    }
+    
+    /**
+     * Loads the ITEMS table into the item cache so the first scans do not have to go to the database
+     */
+    private void warmCache() {
+        Connection conn = connect();
         try{
-            PreparedStatement stmt = conn.prepareStatement("SELECT * FROM MEMBERS WHERE ID = ?");
-            stmt.setInt(1,pmkeys);
-            results = stmt.executeQuery();
-            while(results.next()) {
-                name = results.getString("NAME");
+            Statement stmt = conn.createStatement();
+            ResultSet results = query(stmt, "SELECT BARCODE, NAME, COST, STOCK FROM ITEMS LIMIT " + CACHE_SIZE);
+            while(next(results)) {
+                cache.put(new TOCItem(results.getString("BARCODE"), results.getString("NAME"), results.getLong("COST"),
+                                      results.getInt("STOCK")));
             }
             stmt.close();
-            conn.close(); 
+            release(conn);
         }catch(Exception e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.err.println("Error at TOCDatabase getMemberName(int pmkeys)");
+            System.err.println("Error at TOCDatabase warmCache()");
+            System.err.println("Something went wrong, please contact one of the TOC's admins");
+            System.exit(0);
+        }
+    }
+    
+    /**
+     * Loads the whole MEMBERS table into the member directory so logging in and admin checks do not have to go to
+     * the database
+     */
+    private void loadDirectory() {
+        Connection conn = connect();
+        try{
+            Statement stmt = conn.createStatement();
+            ResultSet results = query(stmt, "SELECT ID, NAME, ADMIN FROM MEMBERS");
+            List<TOCMember> members = new ArrayList<TOCMember>();
+            while(next(results)) {
+                members.add(new TOCMember(results.getInt("ID"), results.getString("NAME"), results.getInt("ADMIN") != 0));
+            }
+            stmt.close();
+            directory.replaceAll(members);
+            release(conn);
+        }catch(Exception e) {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+            System.err.println("Error at TOCDatabase loadDirectory()");
             System.err.println("Something went wrong, please contact one of the TOC's admins");
             System.exit(0);
         }
-        
-        return name;
     }
     
     /**
-     * Check if a member is an admin in the database
+     * Counts a change to the items or the members in the CHANGES table, so other programs using the database file
+     * know to read them again. Must be called inside the database transaction that makes the change, after the change.
+     * If the count has moved on by more than this change then another program changed them since this TOC last
+     * looked, and they are read again at the next checkForChanges()
      * 
-     * @param   pmkeys  the member's pmkeys
-     * @return          a boolean representing if the member is an admin
+     * @param   conn    the connection the change is being made on
+     * @param   items   if items (or their stock) were changed
+     * @param   members if members were changed
      */
-    public boolean memberIsAdmin(int pmkeys) {
-        // Initialise the value of admin to its default value
-        int admin = 0;
+    private void stampChanges(Connection conn, boolean items, boolean members) throws SQLException {
+        PreparedStatement stmt = prepare(conn, "UPDATE CHANGES SET ITEMS = ITEMS + ?, MEMBERS = MEMBERS + ? WHERE ID = 1");
+        stmt.setInt(1,items ? 1 : 0);
+        stmt.setInt(2,members ? 1 : 0);
+        update(stmt);
         
-        // Initialise connection to the database
-        connect();
-        // Check if we can find the member's admin flag by searching their pmkeys
-        ResultSet results = null;
+        stmt = prepare(conn, "SELECT ITEMS, MEMBERS FROM CHANGES WHERE ID = 1");
+        ResultSet results = query(stmt);
+        if(next(results)) {
+            long itemCount = results.getLong("ITEMS");
+            long memberCount = results.getLong("MEMBERS");
+            synchronized(changes) {
+                if(itemCount - (items ? 1 : 0) > itemChanges) {
+                    itemsChanged = true;
+                }
+                if(memberCount - (members ? 1 : 0) > memberChanges) {
+                    membersChanged = true;
+                }
+                itemChanges = Math.max(itemChanges, itemCount);
+                memberChanges = Math.max(memberChanges, memberCount);
+            }
+            if(itemsChanged || membersChanged) {
+                nextChangeCheck.set(0);
+            }
+        }
+        results.close();
+    }
+    
+    /**
+     * Reads the change counts of the CHANGES table
+     * 
+     * @return          how many times the items and the members have been changed, in that order
+     */
+    private long[] readChanges() {
+        long[] counts = new long[2];
+        Connection conn = connect();
         try{
-            PreparedStatement stmt = conn.prepareStatement("SELECT * FROM MEMBERS WHERE ID = ?");
-            stmt.setInt(1,pmkeys);
-            results = stmt.executeQuery();
-            while(results.next()) {
-                admin = results.getInt("ADMIN");
+            PreparedStatement stmt = prepare(conn, "SELECT ITEMS, MEMBERS FROM CHANGES WHERE ID = 1");
+            ResultSet results = query(stmt);
+            if(next(results)) {
+                counts[0] = results.getLong("ITEMS");
+                counts[1] = results.getLong("MEMBERS");
             }
-            stmt.close();
-            conn.close(); 
+            results.close();
+            release(conn);
         }catch(Exception e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.err.println("Error at TOCDatabase memberIsAdmin(int pmkeys)");
+            System.err.println("Error at TOCDatabase readChanges()");
             System.err.println("Something went wrong, please contact one of the TOC's admins");
             System.exit(0);
         }
+        return counts;
+    }
+    
+    /**
+     * Reads the items and members again if another program (eg. TOCCatalogue or another TOC) changed them, so the
+     * item cache, the stock counts and the member directory never stay out of date. The CHANGES table is read at most
+     * every CHANGE_CHECK_MILLIS, by one thread at a time, so lookups only pay for it a couple of times a second
+     */
+    private void checkForChanges() {
+        long now = System.currentTimeMillis();
+        long next = nextChangeCheck.get();
+        if(now < next || !nextChangeCheck.compareAndSet(next, now + CHANGE_CHECK_MILLIS)) {
+            return;
+        }
         
-        if(admin == 0) {
-            return false;
-        }else {
-            return true;
+        long[] counts = readChanges();
+        boolean items;
+        boolean members;
+        synchronized(changes) {
+            // The counts only go up. A count below the one seen is from before this TOC's own last change
+            items = itemsChanged || counts[0] > itemChanges;
+            members = membersChanged || counts[1] > memberChanges;
+            itemChanges = Math.max(itemChanges, counts[0]);
+            memberChanges = Math.max(memberChanges, counts[1]);
+            itemsChanged = false;
+            membersChanged = false;
+        }
+        
+        if(items) {
+            // Counts are worked out again from the database and what is pending, so nothing reserved is lost
+            beginStock();
+            cache.clear();
+            stockCounter.forgetAll();
+            endStock();
+            metrics.increment("db.changes.items");
         }
+        if(members) {
+            loadDirectory();
+            metrics.increment("db.changes.members");
+        }
+    }
+    
+    /**
+     * Waits until no other thread is writing to the database. SQLite only lets one connection write at a time, so
+     * writers queue up here in the order they arrived instead of failing because the database is busy. Must be
+     * called before connect() and matched by a call to endWrite()
+     */
+    private void beginWrite() {
+        long start = metrics.start();
+        writer.lock();
+        metrics.stop("db.writer.wait", start);
+    }
+    
+    /**
+     * Lets the next thread that is waiting in beginWrite() write to the database
+     */
+    private void endWrite() {
+        writer.unlock();
+    }
+    
+    /**
+     * Stops stock counts changing under anyone else. A count is worked out from the stock the database has and the
+     * stock that is pending, so reading the database and setting the count must not be split by a reservation or by
+     * a commit that changes the stock. Writers that change stock take this just before they commit and keep it until
+     * the cache and the counts match the commit. Always taken after beginWrite() if both are needed, never before
+     */
+    private void beginStock() {
+        stock.lock();
+    }
+    
+    /**
+     * Lets other threads reserve or count stock again
+     */
+    private void endStock() {
+        stock.unlock();
+    }
+    
+    /**
+     * Closes every connection to the database. Call this when the TOC is shutting down
+     */
+    public void close() {
+        pool.shutdown();
+    }
+    
+    // -------------------------------------------------- Called by the TOCManager --------------------------------------------------
+    /**
+     * Get a member's name from the member directory that matches the given pmkeys
+     * 
+     * @param   pmkeys  the member's pmkeys
+     * @return          the member's name (Default: "Member Not Found"
+     */
+    public String getMemberName(int pmkeys) {
+        long timer = metrics.start();
+        TOCMember member = getMember(pmkeys);
+        
+        String name = member == null ? "Member Not Found" : member.getName();
+        
+        metrics.stop("db.getMemberName", timer);
+        return name;
+    }
+    
+    /**
+     * Check if a member is an admin. Read from the member directory so it can be checked before every admin action.
+     * A member that is not in the directory is not a member, so nothing here goes to the database
+     * 
+     * @param   pmkeys  the member's pmkeys
+     * @return          a boolean representing if the member is an admin
+     */
+    public boolean memberIsAdmin(int pmkeys) {
+        long timer = metrics.start();
+        checkForChanges();
+        boolean admin = directory.isAdmin(pmkeys);
+        
+        metrics.stop("db.memberIsAdmin", timer);
+        return admin;
     }
     
     /**
@@ -105,22 +492,28 @@ public class TOCDatabase {
     * @param pmKeys the members pmKeys to be updated
     */
    public void updateAdmin (int pmKeys) {
+       long timer = metrics.start();
+       beginWrite();
        // First check if the member exists and then remove them from the database
-       if(memberExists(pmKeys)) {
+       TOCMember member = getMember(pmKeys);
+       if(member != null) {
            //Checks to see if the member is an admin 
-           int admin = memberIsAdmin(pmKeys) ? 0 : 1;
+           int admin = member.isAdmin() ? 0 : 1;
            
            // Establish a connection to the database
-           connect();
+           Connection conn = connect();
           
            try {
-               PreparedStatement stmt = conn.prepareStatement("UPDATE members SET admin = ? WHERE ID = ?");
+               conn.setAutoCommit(false);
+               PreparedStatement stmt = prepare(conn, "UPDATE members SET admin = ? WHERE ID = ?");
                stmt.setInt(1,admin);
                stmt.setInt(2,pmKeys);
-               stmt.executeUpdate();
-               System.out.println("TEST");
-               stmt.close();
-               conn.close();
+               update(stmt);
+               stampChanges(conn, false, true);
+               conn.commit();
+               conn.setAutoCommit(true);
+               directory.put(new TOCMember(pmKeys, member.getName(), admin == 1));
+               release(conn);
            }catch(Exception e) {
                 System.err.println(e.getClass().getName() + ": " + e.getMessage());
                 System.err.println("Error at TOCDatabase updateAdmin(int pmKeys)");
@@ -128,43 +521,41 @@ public class TOCDatabase {
                 System.exit(0);
            }
        }
+       endWrite();
+       metrics.stop("db.updateAdmin", timer);
    }
     
     /**
-     * Check if a member exists in the database
+     * Check if a member exists. Read from the member directory, so a pmkeys that is scanned over and over without
+     * being a member never goes to the database
      * 
      * @param   pmkeys  the member's pmkeys
      * @return          a boolean representing if the member was found
      */
     public boolean memberExists(int pmkeys) {
-        // Initialise the value of the pmkeys (id) to its default value
-        int id = 0;
+        long timer = metrics.start();
+        checkForChanges();
+        boolean found = directory.contains(pmkeys);
         
-        // Initialise connection to the database
-        connect();
-        // Check if we can find the member's pmkeys by searching their pmkeys
-        ResultSet results = null;
-        try{
-            PreparedStatement stmt = conn.prepareStatement("SELECT * FROM MEMBERS WHERE ID = ?");
-            stmt.setInt(1,pmkeys);
-            results = stmt.executeQuery();
-            while(results.next()) {
-                id = results.getInt("ID");
-            }
-            stmt.close();
-            conn.close(); 
-        }catch(Exception e) {
-            System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.err.println("Error at TOCDatabase memberExists(int pmkeys)");
-            System.err.println("Something went wrong, please contact one of the TOC's admins");
-            System.exit(0);
-        }
-
-        if(id == 0) {
-            return false;
-        }else {
-            return true;
-        }
+        metrics.stop("db.memberExists", timer);
+        return found;
+    }
+    
+    /**
+     * Gets every detail of a member from the member directory. The directory holds the whole MEMBERS table and is read
+     * again whenever another program (eg. TOCRoster) changes the members, so a pmkeys that is not in it is not a
+     * member and the database is not asked
+     * 
+     * @param   pmkeys  the member's pmkeys
+     * @return          the member that matches the pmkeys or null if the member was not found
+     */
+    public TOCMember getMember(int pmkeys) {
+        long timer = metrics.start();
+        checkForChanges();
+        TOCMember member = directory.get(pmkeys);
+        
+        metrics.stop("db.getMember", timer);
+        return member;
     }
     
     /**
@@ -176,21 +567,31 @@ public class TOCDatabase {
      * @param   admin   if the new member is an admin
      */
     public void addMember(int pmKeys, String name, boolean isAdmin) {
+        long timer = metrics.start();
+        beginWrite();
         // Change the isAdmin to a format that fits the MEMBERS table
         int admin = isAdmin ? 1 : 0;
         
         if(!memberExists(pmKeys)) {
             // Establish a connection to the database
-            connect();
+            Connection conn = connect();
             
             try{
-                PreparedStatement stmt = conn.prepareStatement("INSERT INTO MEMBERS VALUES(?,?,?)");
+                conn.setAutoCommit(false);
+                // Another program may have added the member since the directory was last read, so an existing row is
+                // left alone and the directory picks it up with the next check for changes
+                PreparedStatement stmt = prepare(conn, "INSERT OR IGNORE INTO MEMBERS VALUES(?,?,?)");
                 stmt.setInt(1,pmKeys);
                 stmt.setString(2,name);
                 stmt.setInt(3,admin);
-                stmt.executeUpdate();
-                stmt.close();
-                conn.close();
+                int added = update(stmt);
+                stampChanges(conn, false, true);
+                conn.commit();
+                conn.setAutoCommit(true);
+                if(added > 0) {
+                    directory.put(new TOCMember(pmKeys, name, isAdmin));
+                }
+                release(conn);
             }catch(Exception e) {
                 System.err.println(e.getClass().getName() + ": " + e.getMessage());
                 System.err.println("Error at TOCDatabase addMember(int pmKeys, String name, boolean isAdmin)");
@@ -198,6 +599,8 @@ public class TOCDatabase {
                 System.exit(0);
             }
         }
+        endWrite();
+        metrics.stop("db.addMember", timer);
    }
    
    /**
@@ -208,17 +611,23 @@ public class TOCDatabase {
     * @param    pmKeys      the member's pmKeys
     */
    public void removeMember(int pmKeys) {
+       long timer = metrics.start();
+       beginWrite();
        // First check if the member exists and then remove them from the database
        if(memberExists(pmKeys)) {
            // Establish a connection to the database
-           connect();
+           Connection conn = connect();
            
            try {
-               PreparedStatement stmt = conn.prepareStatement("DELETE FROM MEMBERS WHERE ID = ?");
+               conn.setAutoCommit(false);
+               PreparedStatement stmt = prepare(conn, "DELETE FROM MEMBERS WHERE ID = ?");
                stmt.setInt(1,pmKeys);
-               stmt.executeUpdate();
-               stmt.close();
-               conn.close();
+               update(stmt);
+               stampChanges(conn, false, true);
+               conn.commit();
+               conn.setAutoCommit(true);
+               directory.remove(pmKeys);
+               release(conn);
            }catch(Exception e) {
                 System.err.println(e.getClass().getName() + ": " + e.getMessage());
                 System.err.println("Error at TOCDatabase removeMember(int pmKeys)");
@@ -226,6 +635,132 @@ public class TOCDatabase {
                 System.exit(0);
            }
        }
+       endWrite();
+       metrics.stop("db.removeMember", timer);
+   }
+   
+   /**
+    * Adds a group of members to the MEMBERS table in a single database transaction. Members that already exist get
+    * the new name and admin status. The statements are sent as one batch
+    * 
+    * @param    members     the members to add or update
+    */
+   public void upsertMembers(List<TOCMember> members) {
+       long timer = metrics.start();
+       beginWrite();
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           conn.setAutoCommit(false);
+           PreparedStatement stmt = prepare(conn, "INSERT INTO MEMBERS (ID,NAME,ADMIN) VALUES(?,?,?) " +
+                                                  "ON CONFLICT(ID) DO UPDATE SET NAME = excluded.NAME, ADMIN = excluded.ADMIN");
+           for(TOCMember member : members) {
+               stmt.setInt(1,member.getPmKeys());
+               stmt.setString(2,member.getName());
+               stmt.setInt(3,member.isAdmin() ? 1 : 0);
+               stmt.addBatch();
+           }
+           batch(stmt);
+           
+           stampChanges(conn, false, true);
+           conn.commit();
+           conn.setAutoCommit(true);
+           for(TOCMember member : members) {
+               directory.put(member);
+           }
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase upsertMembers(List<TOCMember> members)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       endWrite();
+       metrics.stop("db.upsertMembers", timer);
+   }
+   
+   /**
+    * Applies a roster change to the MEMBERS table in a single database transaction. Members in changed are added or
+    * get the new name and admin status, and members in removed are deleted. Like removeMember their transactions are
+    * left in the TRANSACTIONS table
+    * 
+    * @param    changed     the members to add or update
+    * @param    removed     the pmKeys of the members to remove
+    */
+   public void syncMembers(List<TOCMember> changed, List<Integer> removed) {
+       long timer = metrics.start();
+       beginWrite();
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           conn.setAutoCommit(false);
+           if(!changed.isEmpty()) {
+               PreparedStatement stmt = prepare(conn, "INSERT INTO MEMBERS (ID,NAME,ADMIN) VALUES(?,?,?) " +
+                                                      "ON CONFLICT(ID) DO UPDATE SET NAME = excluded.NAME, ADMIN = excluded.ADMIN");
+               for(TOCMember member : changed) {
+                   stmt.setInt(1,member.getPmKeys());
+                   stmt.setString(2,member.getName());
+                   stmt.setInt(3,member.isAdmin() ? 1 : 0);
+                   stmt.addBatch();
+               }
+               batch(stmt);
+           }
+           if(!removed.isEmpty()) {
+               PreparedStatement stmt = prepare(conn, "DELETE FROM MEMBERS WHERE ID = ?");
+               for(int pmkeys : removed) {
+                   stmt.setInt(1,pmkeys);
+                   stmt.addBatch();
+               }
+               batch(stmt);
+           }
+           
+           stampChanges(conn, false, true);
+           conn.commit();
+           conn.setAutoCommit(true);
+           for(TOCMember member : changed) {
+               directory.put(member);
+           }
+           for(int pmkeys : removed) {
+               directory.remove(pmkeys);
+           }
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase syncMembers(List<TOCMember> changed, List<Integer> removed)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       endWrite();
+       metrics.stop("db.syncMembers", timer);
+   }
+   
+   /**
+    * Reads every member in pmKeys order and hands them to the visitor as they are read
+    * 
+    * @param    visitor     called with every member
+    */
+   public void forEachMember(Consumer<TOCMember> visitor) {
+       long timer = metrics.start();
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           PreparedStatement stmt = prepare(conn, "SELECT ID, NAME, ADMIN FROM MEMBERS ORDER BY ID");
+           ResultSet results = query(stmt);
+           while(next(results)) {
+               visitor.accept(new TOCMember(results.getInt("ID"), results.getString("NAME"), results.getInt("ADMIN") != 0));
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase forEachMember(Consumer<TOCMember> visitor)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       metrics.stop("db.forEachMember", timer);
    }
    
    /**
@@ -235,60 +770,45 @@ public class TOCDatabase {
     * @return               a boolean representing if the item exists
     */
    public boolean itemExists(String barcode) {
-       // Initialise the value of the barcode to its default value
-       String code = "NO_BARCODE_FOUND";
+       long timer = metrics.start();
+       boolean exists = getItem(barcode) != null;
        
-       // Initialise connection to the database
-       connect();
-       // Check if we can find the member's pmkeys by searching their pmkeys
-       ResultSet results = null;
-       try {
-           PreparedStatement stmt = conn.prepareStatement("SELECT * FROM ITEMS WHERE BARCODE = ?");
-           stmt.setString(1,barcode);
-           results = stmt.executeQuery();
-           while(results.next()) {
-               code = results.getString("BARCODE");
-            }
-            stmt.close();
-            conn.close();
-        }catch(Exception e) {
-            System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.err.println("Error at TOCDatabase itemExists(int barcode)");
-            System.err.println("Something went wrong, please contact one of the TOC's admins");
-            System.exit(0);
-        }
-
-        if(code.equals("NO_BARCODE_FOUND")) {
-            return false;
-        }else {
-            return true;
-        }
+       metrics.stop("db.itemExists", timer);
+       return exists;
    }
    
    /**
     * Updates the cost of an item in the database
     * 
-    * @param cost the updated cost of the item
+    * @param cost the updated cost of the item in cents
     * @param barcode the barcode of the updated item
     */
-   public void updateCost (double cost, String barcode) {
+   public void updateCost (long cost, String barcode) {
+           long timer = metrics.start();
+           beginWrite();
            // Establish a connection to the database
-           connect();
+           Connection conn = connect();
           
-           double Cost = cost; 
+           long Cost = cost; 
            try {
-               PreparedStatement stmt = conn.prepareStatement("UPDATE items SET cost = ? WHERE barcode = ?");
-               stmt.setDouble(1,Cost);
+               conn.setAutoCommit(false);
+               PreparedStatement stmt = prepare(conn, "UPDATE items SET cost = ? WHERE barcode = ?");
+               stmt.setLong(1,Cost);
                stmt.setString(2,barcode);
-               stmt.executeUpdate();
-               stmt.close();
-               conn.close();
+               update(stmt);
+               stampChanges(conn, true, false);
+               conn.commit();
+               conn.setAutoCommit(true);
+               cache.invalidate(barcode);
+               release(conn);
            }catch(Exception e) {
                 System.err.println(e.getClass().getName() + ": " + e.getMessage());
                 System.err.println("Error at TOCDatabase updateAdmin(int pmKeys)");
                 System.err.println("Something went wrong, please contact one of the TOC's admins");
                 System.exit(0);
            }
+           endWrite();
+           metrics.stop("db.updateCost", timer);
     }
    
     /**
@@ -297,23 +817,34 @@ public class TOCDatabase {
     * @param barcode the barcode of the item to be removed
     */
    public void removeItem(String barcode) {
+           long timer = metrics.start();
+           beginWrite();
            // Establish a connection to the database
-           connect();
+           Connection conn = connect();
            
            String Barcode = barcode;
            
            try {
-               PreparedStatement stmt = conn.prepareStatement("DELETE FROM items WHERE barcode = ?");
+               conn.setAutoCommit(false);
+               PreparedStatement stmt = prepare(conn, "DELETE FROM items WHERE barcode = ?");
                stmt.setString(1,Barcode);
-               stmt.executeUpdate();
-               stmt.close();
-               conn.close();
+               beginStock();
+               update(stmt);
+               stampChanges(conn, true, false);
+               conn.commit();
+               conn.setAutoCommit(true);
+               cache.invalidate(Barcode);
+               stockCounter.forget(Barcode);
+               endStock();
+               release(conn);
            }catch(Exception e) {
                 System.err.println(e.getClass().getName() + ": " + e.getMessage());
                 System.err.println("Error at TOCDatabase removeMember(int pmKeys)");
                 System.err.println("Something went wrong, please contact one of the TOC's admins");
                 System.exit(0);
            }
+           endWrite();
+           metrics.stop("db.removeItem", timer);
    }
     
    /**
@@ -323,63 +854,29 @@ public class TOCDatabase {
     * @return               the name of the item
     */
    public String getItemName(String barcode) {
-       // Initialise the value of name to its default value
-        String name = "Item Not Found";
-        
-        // Initialise connection to the database
-        connect();
-        // Check if we can find the member's name by searching their pmkeys
-        ResultSet results = null;
-        try{
-            PreparedStatement stmt = conn.prepareStatement("SELECT * FROM ITEMS WHERE BARCODE = ?");
-            stmt.setString(1,barcode);
-            results = stmt.executeQuery();
-            while(results.next()) {
-                name = results.getString("NAME");
-            }
-            stmt.close();
-            conn.close(); 
-        }catch(Exception e) {
-            System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.err.println("Error at TOCDatabase getItemName(int barcode)");
-            System.err.println("Something went wrong, please contact one of the TOC's admins");
-            System.exit(0);
-        }
-        
-        return name;
+       long timer = metrics.start();
+       TOCItem item = getItem(barcode);
+       
+       String value = item == null ? "Item Not Found" : item.getName();
+       
+       metrics.stop("db.getItemName", timer);
+       return value;
    }
    
    /**
     * Gets the cost of the item that matches the barcode
     * 
     * @param    barcode     the barcode of the item
-    * @return               the cost of the item
+    * @return               the cost of the item in cents
     */
-   public double getItemCost(String barcode) {
-       // Initialise the value of name to its default value
-       double cost = 0.0;
-        
-       // Initialise connection to the database
-       connect();
-       // Check if we can find the member's name by searching their pmkeys
-       ResultSet results = null;
-       try{
-           PreparedStatement stmt = conn.prepareStatement("SELECT * FROM ITEMS WHERE BARCODE = ?");
-           stmt.setString(1,barcode);
-           results = stmt.executeQuery();
-           while(results.next()) {                
-               cost = results.getDouble("COST");
-           }
-           stmt.close();
-           conn.close(); 
-       }catch(Exception e) {
-           System.err.println(e.getClass().getName() + ": " + e.getMessage());
-           System.err.println("Error at TOCDatabase getItemCost(int barcode)");
-           System.err.println("Something went wrong, please contact one of the TOC's admins");
-           System.exit(0);
-       }
-        
-       return cost;
+   public long getItemCost(String barcode) {
+       long timer = metrics.start();
+       TOCItem item = getItem(barcode);
+       
+       long value = item == null ? 0 : item.getCost();
+       
+       metrics.stop("db.getItemCost", timer);
+       return value;
    }
    
    /**
@@ -389,30 +886,54 @@ public class TOCDatabase {
     * @return               the cost of the item
     */
    public int getItemStock(String barcode) {
-       // Initialise the value of name to its default value
-       int stock = 0;
-        
+       long timer = metrics.start();
+       TOCItem item = getItem(barcode);
+       
+       int value = item == null ? 0 : item.getStock();
+       
+       metrics.stop("db.getItemStock", timer);
+       return value;
+   }
+   
+   /**
+    * Gets every detail of an item in a single query. Items that were looked up recently are answered from the item
+    * cache without going to the database
+    * 
+    * @param    barcode     the barcode of the item
+    * @return               the item that matches the barcode or null if the item was not found
+    */
+   public TOCItem getItem(String barcode) {
+       long timer = metrics.start();
+       checkForChanges();
+       TOCItem item = cache.get(barcode);
+       if(item != null) {
+           metrics.stop("db.getItem", timer);
+           return item;
+       }
+       
        // Initialise connection to the database
-       connect();
-       // Check if we can find the member's name by searching their pmkeys
+       Connection conn = connect();
        ResultSet results = null;
        try{
-           PreparedStatement stmt = conn.prepareStatement("SELECT * FROM ITEMS WHERE BARCODE = ?");
+           PreparedStatement stmt = prepare(conn, "SELECT BARCODE, NAME, COST, STOCK FROM ITEMS WHERE BARCODE = ?");
            stmt.setString(1,barcode);
-           results = stmt.executeQuery();
-           while(results.next()) {                
-               stock = results.getInt("STOCK");
+           results = query(stmt);
+           if(next(results)) {
+               item = new TOCItem(results.getString("BARCODE"), results.getString("NAME"), results.getLong("COST"),
+                                  results.getInt("STOCK"));
+               cache.put(item);
            }
-           stmt.close();
-           conn.close(); 
+           results.close();
+           release(conn);
        }catch(Exception e) {
            System.err.println(e.getClass().getName() + ": " + e.getMessage());
-           System.err.println("Error at TOCDatabase getItemStock(int barcode)");
+           System.err.println("Error at TOCDatabase getItem(String barcode)");
            System.err.println("Something went wrong, please contact one of the TOC's admins");
            System.exit(0);
        }
-        
-       return stock;
+       
+       metrics.stop("db.getItem", timer);
+       return item;
    }
    
    /**
@@ -421,30 +942,237 @@ public class TOCDatabase {
      * 
      * @param   barcode     the item's barcode
      * @param   name        the item's name
-     * @param   cost        the item's cost
+     * @param   cost        the item's cost in cents
      * @param   stock       the item's stock
      */
-    public void addItem(String barcode, String name, double cost, int stock) {       
+    public void addItem(String barcode, String name, long cost, int stock) {       
+        long timer = metrics.start();
+        beginWrite();
         if(!itemExists(barcode)) {
             // Establish a connection to the database
-            connect();
+            Connection conn = connect();
             
             try{
-                PreparedStatement stmt = conn.prepareStatement("INSERT INTO ITEMS VALUES(NULL,?,?,?,?)");
+                conn.setAutoCommit(false);
+                PreparedStatement stmt = prepare(conn, "INSERT INTO ITEMS VALUES(NULL,?,?,?,?)");
                 stmt.setString(1,barcode);
                 stmt.setString(2,name);
-                stmt.setDouble(3,cost);
+                stmt.setLong(3,cost);
                 stmt.setInt(4,stock);
-                stmt.executeUpdate();
-                stmt.close();
-                conn.close();
+                beginStock();
+                update(stmt);
+                stampChanges(conn, true, false);
+                conn.commit();
+                conn.setAutoCommit(true);
+                cache.put(new TOCItem(barcode,name,cost,stock));
+                stockCounter.forget(barcode);
+                endStock();
+                release(conn);
             }catch(Exception e) {
                 System.err.println(e.getClass().getName() + ": " + e.getMessage());
-                System.err.println("Error at TOCDatabase addItem(int barcode, String name, double cost, int stock)");
+                System.err.println("Error at TOCDatabase addItem(int barcode, String name, long cost, int stock)");
                 System.err.println("Something went wrong, please contact one of the TOC's admins");
                 System.exit(0);
             }
         }
+        endWrite();
+        metrics.stop("db.addItem", timer);
+   }
+   
+   /**
+    * Adds a group of items to the ITEMS table in a single database transaction. Items that already exist get the new
+    * name, cost and stock. The statements are sent as one batch so a whole price list costs one commit
+    * 
+    * @param    items       the items to add or update
+    */
+   public void upsertItems(List<TOCItem> items) {
+       long timer = metrics.start();
+       beginWrite();
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           conn.setAutoCommit(false);
+           PreparedStatement stmt = prepare(conn, "INSERT INTO ITEMS (BARCODE,NAME,COST,STOCK) VALUES(?,?,?,?) " +
+                                                  "ON CONFLICT(BARCODE) DO UPDATE SET NAME = excluded.NAME, COST = excluded.COST, STOCK = excluded.STOCK");
+           for(TOCItem item : items) {
+               stmt.setString(1,item.getBarcode());
+               stmt.setString(2,item.getName());
+               stmt.setLong(3,item.getCost());
+               stmt.setInt(4,item.getStock());
+               stmt.addBatch();
+           }
+           batch(stmt);
+           
+           stampChanges(conn, true, false);
+           beginStock();
+           conn.commit();
+           conn.setAutoCommit(true);
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase upsertItems(List<TOCItem> items)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       // The cache and the stock counts may hold the old details
+       for(TOCItem item : items) {
+           cache.invalidate(item.getBarcode());
+           stockCounter.forget(item.getBarcode());
+       }
+       endStock();
+       endWrite();
+       metrics.stop("db.upsertItems", timer);
+   }
+   
+   /**
+    * Changes the cost of a group of items in a single database transaction, such as on a price rise day. Each new cost
+    * is worked out with TOCMoney from the stored one read in the same transaction, so the rounding is exact and the
+    * same as everywhere else in the TOC, and the updates are sent as one batch. The percentage is rounded to the cent
+    * before the amount is added and the cost never goes below 0
+    * 
+    * @param    barcodes    the barcodes of the items to change
+    * @param    percent     the percentage to change the cost by (eg. 10 for 10% dearer, 0 for none)
+    * @param    amount      the cents to add to the cost
+    * @return               the barcodes that were not found in the database
+    */
+   public List<String> changeCosts(List<String> barcodes, double percent, long amount) {
+       long timer = metrics.start();
+       List<String> missing = new ArrayList<String>();
+       beginWrite();
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           conn.setAutoCommit(false);
+           PreparedStatement read = prepare(conn, "SELECT COST FROM ITEMS WHERE BARCODE = ?");
+           PreparedStatement stmt = prepare(conn, "UPDATE ITEMS SET COST = ? WHERE BARCODE = ?");
+           for(String barcode : barcodes) {
+               read.setString(1,barcode);
+               ResultSet results = query(read);
+               if(!next(results)) {
+                   results.close();
+                   missing.add(barcode);
+                   continue;
+               }
+               long cost = Math.max(0, TOCMoney.add(TOCMoney.percent(results.getLong("COST"), percent), amount));
+               results.close();
+               
+               stmt.setLong(1,cost);
+               stmt.setString(2,barcode);
+               stmt.addBatch();
+           }
+           if(missing.size() < barcodes.size()) {
+               batch(stmt);
+           }
+           
+           stampChanges(conn, true, false);
+           conn.commit();
+           conn.setAutoCommit(true);
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase changeCosts(List<String> barcodes, double percent, long amount)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       for(String barcode : barcodes) {
+           cache.invalidate(barcode);
+       }
+       endWrite();
+       metrics.add("db.changeCosts.items", barcodes.size() - missing.size());
+       metrics.stop("db.changeCosts", timer);
+       return missing;
+   }
+   
+   /**
+    * Adds stock to a group of items in a single database transaction, such as when a delivery arrives. Negative
+    * quantities take stock away but the stock never goes below 0
+    * 
+    * @param    delivery    how many of each barcode to add
+    * @return               the barcodes that were not found in the database
+    */
+   public List<String> adjustStock(Map<String,Integer> delivery) {
+       long timer = metrics.start();
+       List<String> missing = new ArrayList<String>();
+       List<String> barcodes = new ArrayList<String>(delivery.keySet());
+       beginWrite();
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           conn.setAutoCommit(false);
+           PreparedStatement stmt = prepare(conn, "UPDATE ITEMS SET STOCK = MAX(0, STOCK + ?) WHERE BARCODE = ?");
+           for(String barcode : barcodes) {
+               stmt.setInt(1,delivery.get(barcode));
+               stmt.setString(2,barcode);
+               stmt.addBatch();
+           }
+           int[] changed = batch(stmt);
+           for(int i=0; i<changed.length; i++) {
+               if(changed[i] == 0) {
+                   missing.add(barcodes.get(i));
+               }
+           }
+           
+           stampChanges(conn, true, false);
+           beginStock();
+           conn.commit();
+           conn.setAutoCommit(true);
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase adjustStock(Map<String,Integer> delivery)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       // Added stock can go straight into the counts. Stock taken away may have been capped at 0 so those counts are
+       // read from the database again
+       for(String barcode : barcodes) {
+           cache.invalidate(barcode);
+           int quantity = delivery.get(barcode);
+           if(quantity > 0) {
+               stockCounter.release(barcode, quantity);
+           }else {
+               stockCounter.forget(barcode);
+           }
+       }
+       endStock();
+       endWrite();
+       metrics.add("db.adjustStock.items", barcodes.size() - missing.size());
+       metrics.stop("db.adjustStock", timer);
+       return missing;
+   }
+   
+   /**
+    * Reads every item in barcode order and hands them to the visitor as they are read
+    * 
+    * @param    visitor     called with every item
+    */
+   public void forEachItem(Consumer<TOCItem> visitor) {
+       long timer = metrics.start();
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           PreparedStatement stmt = prepare(conn, "SELECT BARCODE, NAME, COST, STOCK FROM ITEMS ORDER BY BARCODE");
+           ResultSet results = query(stmt);
+           while(next(results)) {
+               visitor.accept(new TOCItem(results.getString("BARCODE"), results.getString("NAME"), results.getLong("COST"),
+                                          results.getInt("STOCK")));
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase forEachItem(Consumer<TOCItem> visitor)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       metrics.stop("db.forEachItem", timer);
    }
    
    /**
@@ -456,39 +1184,707 @@ public class TOCDatabase {
     * @return               a boolean indicating if the transaction was successful 
     */
    public boolean addTransaction(int pmkeys, String barcode) {
-       // A checker if the transaction was successful (ie. there is stock available)
-       boolean transactionAdded = false;
+       long timer = metrics.start();
+       TOCItem item = getItem(barcode);
+       if(item == null) {
+           metrics.stop("db.addTransaction", timer);
+           return false;
+       }
+       
+       TOCBasket basket = new TOCBasket();
+       basket.add(item);
+       boolean added = addTransactions(pmkeys, basket)[0] == 1;
+       
+       metrics.stop("db.addTransaction", timer);
+       return added;
+   }
+   
+   /**
+    * Adds every item of a basket to the TRANSACTIONS database in a single database transaction. Stock is reserved in
+    * memory first and then taken out of the ITEMS table with an update that only succeeds if there is enough stock
+    * left, so two terminals selling the same item can never sell more than there is. Each item is recorded with the
+    * name and cost it had when it was scanned. The inserts are sent as one batch so the whole basket costs one commit
+    * 
+    * @param    pmkeys      the pmkeys of the member making the transaction
+    * @param    basket      the items the member is buying
+    * 
+    * @return               how many of each line of the basket were sold, in the same order as the basket's lines
+    */
+   public int[] addTransactions(int pmkeys, TOCBasket basket) {
+       long timer = metrics.start();
+       List<TOCPurchase> purchases = new ArrayList<TOCPurchase>();
+       purchases.add(new TOCPurchase(pmkeys, basket));
+       int[] sold = addTransactions(purchases).get(0);
+       
+       metrics.stop("db.addTransactions", timer);
+       return sold;
+   }
+   
+   /**
+    * Adds several baskets to the TRANSACTIONS database in a single database transaction, so a group of checkouts
+    * costs one commit instead of one each. Each basket is checked and charged the same way as
+    * addTransactions(int pmkeys, TOCBasket basket), in the order they are given
+    * 
+    * @param    purchases   the baskets to record
+    * 
+    * @return               how many of each line of each basket were sold, in the same order as the purchases
+    */
+   public List<int[]> addTransactions(List<TOCPurchase> purchases) {
+       long timer = metrics.start();
+       List<int[]> sold = new ArrayList<int[]>();
+       List<int[]> reserved = new ArrayList<int[]>();
+       boolean anyReserved = false;
+       
+       // Reserve the stock in memory so items that are clearly sold out never reach the database. The reservations are
+       // pending until they are committed so a count read from the database in the meantime does not lose them
+       beginStock();
+       for(TOCPurchase purchase : purchases) {
+           List<TOCBasketLine> lines = purchase.getLines();
+           int[] lineReserved = new int[lines.size()];
+           for(int i=0; i<lines.size(); i++) {
+               lineReserved[i] = reserveStock(lines.get(i).getBarcode(), lines.get(i).getQuantity());
+               if(lineReserved[i] > 0) {
+                   stockCounter.addPending(lines.get(i).getBarcode(), lineReserved[i]);
+                   anyReserved = true;
+               }
+           }
+           reserved.add(lineReserved);
+           sold.add(new int[lines.size()]);
+       }
+       endStock();
+       
+       if(anyReserved) {
+           beginWrite();
+           // Establish a connection to the database
+           Connection conn = connect();
+           
+           try{
+               conn.setAutoCommit(false);
+               // Every item in the group shares the time the group was written
+               long time = TOCTime.now();
+               for(int i=0; i<purchases.size(); i++) {
+                   writePurchase(conn, purchases.get(i), reserved.get(i), sold.get(i), time);
+               }
+               
+               stampChanges(conn, true, false);
+               beginStock();
+               conn.commit();
+               conn.setAutoCommit(true);
+               release(conn);
+           }catch(Exception e) {
+                    System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                    System.err.println("Error at TOCDatabase addTransactions(List<TOCPurchase> purchases)");
+                    System.err.println("Something went wrong, please contact one of the TOC's admins");
+                    System.exit(0);
+           }
+           
+           // Bring the cache and the stock counts in line with what the database sold before anyone reads the stock
+           for(int p=0; p<purchases.size(); p++) {
+               List<TOCBasketLine> lines = purchases.get(p).getLines();
+               for(int i=0; i<lines.size(); i++) {
+                   if(reserved.get(p)[i] > 0) {
+                       cache.adjustStock(lines.get(i).getBarcode(), -sold.get(p)[i]);
+                       stockCounter.addPending(lines.get(i).getBarcode(), -reserved.get(p)[i]);
+                       if(sold.get(p)[i] < reserved.get(p)[i]) {
+                           // The database had less stock than the count thought so the count is out of date
+                           stockCounter.forget(lines.get(i).getBarcode());
+                       }
+                   }
+               }
+           }
+           endStock();
+           endWrite();
+       }
+       
+       metrics.add("db.purchases", purchases.size());
+       metrics.stop("db.addTransactionGroup", timer);
+       return sold;
+   }
+   
+   /**
+    * Takes one basket's stock out of the ITEMS table and records what was sold. Must be called inside the database
+    * transaction that records the group of baskets
+    * 
+    * @param    conn        the connection the group is being recorded on
+    * @param    purchase    the basket to record
+    * @param    reserved    how many of each line were reserved in memory
+    * @param    sold        filled in with how many of each line were sold
+    * @param    time        the time to record the purchase at (milliseconds since 1970)
+    */
+   private void writePurchase(Connection conn, TOCPurchase purchase, int[] reserved, int[] sold, long time) throws SQLException {
+       List<TOCBasketLine> lines = purchase.getLines();
+       Set<String> barcodes = new LinkedHashSet<String>();
+       for(int i=0; i<lines.size(); i++) {
+           if(reserved[i] > 0) {
+               barcodes.add(lines.get(i).getBarcode());
+           }
+       }
+       if(barcodes.isEmpty()) {
+           return;
+       }
+       Map<String,TOCItem> items = findItems(conn, barcodes);
+       
+       // Take the stock out of the ITEMS table. The update does nothing if another sale got there first
+       PreparedStatement take = prepare(conn, "UPDATE ITEMS SET STOCK = STOCK - ? WHERE BARCODE = ? AND STOCK >= ?");
+       for(int i=0; i<lines.size(); i++) {
+           TOCItem item = items.get(lines.get(i).getBarcode());
+           int quantity = item == null ? 0 : Math.min(reserved[i], item.getStock());
+           if(quantity > 0) {
+               take.setInt(1,quantity);
+               take.setString(2,item.getBarcode());
+               take.setInt(3,quantity);
+               if(update(take) == 1) {
+                   sold[i] = quantity;
+               }
+           }
+       }
+       
+       long total = 0;
+       PreparedStatement stmt = prepare(conn, "INSERT INTO TRANSACTIONS VALUES(NULL,?,?,?,?,?)");
+       for(int i=0; i<lines.size(); i++) {
+           long cost = TOCMoney.times(lines.get(i).getCost(), sold[i]);
+           total = TOCMoney.add(total, cost);
+           // The TRANSACTIONS table has one row for each item bought
+           for(int j=0; j<sold[i]; j++) {
+               stmt.setInt(1,purchase.getPmKeys());
+               stmt.setString(2,lines.get(i).getBarcode());
+               stmt.setString(3,lines.get(i).getName());
+               stmt.setLong(4,lines.get(i).getCost());
+               stmt.setLong(5,time);
+               stmt.addBatch();
+           }
+           if(sold[i] > 0) {
+               addToSales(conn, purchase.getPmKeys(), lines.get(i).getBarcode(), time, sold[i], cost);
+           }
+       }
+       batch(stmt);
+       writeSales(conn);
+       
+       addToBalance(conn, purchase.getPmKeys(), total);
+   }
+   
+   /**
+    * Reserves the stock of a basket in memory without writing anything to the database. Used by the TOCJournal,
+    * which records the sale itself and copies it into the database later with applyJournal(List<TOCJournalEntry>).
+    * The reserved stock is counted as pending until then so the stock count never forgets about it
+    * 
+    * @param    purchase    the basket being bought
+    * @return               how many of each line were reserved, in the same order as the basket's lines
+    */
+   public int[] reserveBasket(TOCPurchase purchase) {
+       long timer = metrics.start();
+       List<TOCBasketLine> lines = purchase.getLines();
+       int[] reserved = new int[lines.size()];
+       beginStock();
+       for(int i=0; i<lines.size(); i++) {
+           reserved[i] = reserveStock(lines.get(i).getBarcode(), lines.get(i).getQuantity());
+           if(reserved[i] > 0) {
+               stockCounter.addPending(lines.get(i).getBarcode(), reserved[i]);
+           }
+       }
+       endStock();
+       
+       metrics.stop("db.reserveBasket", timer);
+       return reserved;
+   }
+   
+   /**
+    * Puts back the stock that reserveBasket(TOCPurchase purchase) took for a basket that was not recorded after all,
+    * such as when the journal could not write it
+    * 
+    * @param    purchase    the basket that was reserved
+    * @param    reserved    how many of each line of the basket were reserved
+    */
+   public void releaseBasket(TOCPurchase purchase, int[] reserved) {
+       long timer = metrics.start();
+       List<TOCBasketLine> lines = purchase.getLines();
+       beginStock();
+       for(int i=0; i<lines.size(); i++) {
+           if(reserved[i] > 0) {
+               stockCounter.release(lines.get(i).getBarcode(), reserved[i]);
+               stockCounter.addPending(lines.get(i).getBarcode(), -reserved[i]);
+           }
+       }
+       endStock();
+       
+       metrics.stop("db.releaseBasket", timer);
+   }
+   
+   /**
+    * Counts the stock of journal entries as pending. Used for entries that were found in the journal when the TOC
+    * started, as their stock was reserved before the TOC stopped
+    * 
+    * @param    entries     the entries that have not been copied into the database yet
+    */
+   public void holdJournalStock(List<TOCJournalEntry> entries) {
+       beginStock();
+       for(TOCJournalEntry entry : entries) {
+           for(TOCBasketLine line : entry.getLines()) {
+               stockCounter.addPending(line.getBarcode(), line.getQuantity());
+           }
+       }
+       endStock();
+   }
+   
+   /**
+    * Get the number of the last journal entry that was copied into the database
+    * 
+    * @return               the number of the entry (0 if none have been copied)
+    */
+   public long getLastJournalSeq() {
+       long timer = metrics.start();
+       long seq = 0;
        
        // Establish a connection to the database
-       connect();
+       Connection conn = connect();
        
        try{
-           // Check if there is recorded stock of the item
-           if(getItemStock(barcode) > 0) {
-               PreparedStatement stmt = conn.prepareStatement("INSERT INTO TRANSACTIONS VALUES(NULL,?,?,?,?,?)");
-               stmt.setInt(1,pmkeys);
-               stmt.setString(2,barcode);
-               stmt.setString(3,getItemName(barcode));
-               stmt.setDouble(4,getItemCost(barcode));
-               
-               // Add the date and time. Maybe think of a better way to solve this
-               String dateTime = "" + LocalDateTime.now();
-               stmt.setString(5,dateTime);
+           PreparedStatement stmt = prepare(conn, "SELECT LAST_SEQ FROM JOURNAL WHERE ID = 1");
+           ResultSet results = query(stmt);
+           if(next(results)) {
+               seq = results.getLong("LAST_SEQ");
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase getLastJournalSeq()");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       metrics.stop("db.getLastJournalSeq", timer);
+       return seq;
+   }
+   
+   /**
+    * Copies journal entries into the TRANSACTIONS table in a single database transaction. The stock was reserved
+    * when the entries were journaled, but the sale has already happened so it is recorded even if the database has
+    * less stock than that (eg. another program changed it). The stock then stops at 0 and the shortfall is reported
+    * rather than the stock going negative. The number of the last entry is saved in the same commit and entries at
+    * or below the saved number are skipped, so an entry is never copied twice even if the TOC crashes part way through
+    * 
+    * @param    entries     the entries to copy in the order they were journaled
+    */
+   public void applyJournal(List<TOCJournalEntry> entries) {
+       long timer = metrics.start();
+       beginWrite();
+       // Establish a connection to the database
+       Connection conn = connect();
+       List<TOCJournalEntry> applied = new ArrayList<TOCJournalEntry>();
+       Set<String> ranShort = new HashSet<String>();
+       
+       try{
+           conn.setAutoCommit(false);
+           
+           long lastSeq = 0;
+           PreparedStatement stmt = prepare(conn, "SELECT LAST_SEQ FROM JOURNAL WHERE ID = 1");
+           ResultSet results = query(stmt);
+           if(next(results)) {
+               lastSeq = results.getLong("LAST_SEQ");
+           }
+           results.close();
+           
+           // The same guard as writePurchase. Lines it turns down had more sold than the database has
+           PreparedStatement take = prepare(conn, "UPDATE ITEMS SET STOCK = STOCK - ? WHERE BARCODE = ? AND STOCK >= ?");
+           PreparedStatement count = prepare(conn, "SELECT STOCK FROM ITEMS WHERE BARCODE = ?");
+           PreparedStatement empty = prepare(conn, "UPDATE ITEMS SET STOCK = 0 WHERE BARCODE = ?");
+           PreparedStatement insert = prepare(conn, "INSERT INTO TRANSACTIONS VALUES(NULL,?,?,?,?,?)");
+           for(TOCJournalEntry entry : entries) {
+               if(entry.getSeq() <= lastSeq) {
+                   continue;
+               }
                
-               stmt.executeUpdate();
-               stmt.close();
+               long total = 0;
+               for(TOCBasketLine line : entry.getLines()) {
+                   take.setInt(1,line.getQuantity());
+                   take.setString(2,line.getBarcode());
+                   take.setInt(3,line.getQuantity());
+                   if(update(take) == 0) {
+                       takeShort(count, empty, entry, line);
+                       ranShort.add(line.getBarcode());
+                   }
+                   
+                   // The TRANSACTIONS table has one row for each item bought
+                   for(int j=0; j<line.getQuantity(); j++) {
+                       insert.setInt(1,entry.getPmKeys());
+                       insert.setString(2,line.getBarcode());
+                       insert.setString(3,line.getName());
+                       insert.setLong(4,line.getCost());
+                       insert.setLong(5,entry.getTime());
+                       insert.addBatch();
+                   }
+                   total = TOCMoney.add(total, line.getTotal());
+                   addToSales(conn, entry.getPmKeys(), line.getBarcode(), entry.getTime(), line.getQuantity(), line.getTotal());
+               }
+               addToBalance(conn, entry.getPmKeys(), total);
                
-               transactionAdded = true;
+               lastSeq = entry.getSeq();
+               applied.add(entry);
            }
-           conn.close();
-        }catch(Exception e) {
+           batch(insert);
+           writeSales(conn);
+           
+           stmt = prepare(conn, "UPDATE JOURNAL SET LAST_SEQ = ? WHERE ID = 1");
+           stmt.setLong(1,lastSeq);
+           update(stmt);
+           
+           stampChanges(conn, true, false);
+           beginStock();
+           conn.commit();
+           conn.setAutoCommit(true);
+           release(conn);
+       }catch(Exception e) {
                 System.err.println(e.getClass().getName() + ": " + e.getMessage());
-                System.err.println("Error at TOCDatabase addTransaction(int pmkeys, String barcode)");
+                System.err.println("Error at TOCDatabase applyJournal(List<TOCJournalEntry> entries)");
                 System.err.println("Something went wrong, please contact one of the TOC's admins");
                 System.exit(0);
        }
        
-       return transactionAdded;
+       // The stock is in the database now so it is no longer pending. Items that ran short are read again
+       for(TOCJournalEntry entry : applied) {
+           for(TOCBasketLine line : entry.getLines()) {
+               cache.adjustStock(line.getBarcode(), -line.getQuantity());
+               stockCounter.addPending(line.getBarcode(), -line.getQuantity());
+           }
+       }
+       for(String barcode : ranShort) {
+           cache.invalidate(barcode);
+           stockCounter.forget(barcode);
+       }
+       endStock();
+       endWrite();
+       
+       metrics.add("db.journal.applied", applied.size());
+       metrics.stop("db.applyJournal", timer);
+   }
+   
+   /**
+    * Takes what stock is left of a journal line that sold more than the database has, and reports the shortfall.
+    * Must be called inside applyJournal's database transaction
+    * 
+    * @param    count       the statement that reads an item's stock
+    * @param    empty       the statement that sets an item's stock to 0
+    * @param    entry       the journal entry the line is from
+    * @param    line        the line that was short
+    */
+   private void takeShort(PreparedStatement count, PreparedStatement empty, TOCJournalEntry entry, TOCBasketLine line) throws SQLException {
+       int stock = 0;
+       count.setString(1,line.getBarcode());
+       ResultSet results = query(count);
+       if(next(results)) {
+           stock = results.getInt("STOCK");
+       }
+       results.close();
+       
+       empty.setString(1,line.getBarcode());
+       update(empty);
+       int shortfall = line.getQuantity() - Math.max(0, stock);
+       metrics.add("db.journal.shortfall", shortfall);
+       System.err.println("Journal entry " + entry.getSeq() + " sold " + line.getQuantity() + " of " + line.getBarcode() +
+                          " but the database only had " + Math.max(0, stock) + ". The stock was set to 0");
+   }
+   
+   /**
+    * Reserves stock of an item in memory. If the stock count does not have enough the database is checked in case
+    * the item was restocked somewhere else. The database is read and the count set while holding beginStock() so no
+    * reservation or stock commit can land in between
+    * 
+    * @param    barcode     the barcode of the item
+    * @param    quantity    how many of the item the basket wants
+    * @return               how many of the item were reserved
+    */
+   private int reserveStock(String barcode, int quantity) {
+       beginStock();
+       try {
+           return countAndReserve(barcode, quantity);
+       }finally {
+           endStock();
+       }
+   }
+   
+   /**
+    * Does the work of reserveStock(String barcode, int quantity). Must be called while holding beginStock()
+    * 
+    * @param    barcode     the barcode of the item
+    * @param    quantity    how many of the item the basket wants
+    * @return               how many of the item were reserved
+    */
+   private int countAndReserve(String barcode, int quantity) {
+       if(!stockCounter.isCounted(barcode)) {
+           // Read from the database. A lookup that does not hold the stock lock may have cached the stock from before
+           // the last commit
+           cache.invalidate(barcode);
+           TOCItem item = getItem(barcode);
+           if(item == null) {
+               return 0;
+           }
+           stockCounter.set(barcode, item.getStock() - stockCounter.getPending(barcode));
+       }
+       
+       int taken = stockCounter.reserve(barcode, quantity);
+       if(taken < quantity) {
+           stockCounter.release(barcode, taken);
+           cache.invalidate(barcode);
+           TOCItem item = getItem(barcode);
+           if(item == null) {
+               stockCounter.forget(barcode);
+               return 0;
+           }
+           stockCounter.set(barcode, item.getStock() - stockCounter.getPending(barcode));
+           taken = stockCounter.reserve(barcode, quantity);
+       }
+       
+       return taken;
+   }
+   
+   /**
+    * Reads the details of several items with one query
+    * 
+    * @param    conn        the connection to run the query on
+    * @param    barcodes    the barcodes of the items to read. Each barcode should only appear once
+    * @return               the items that were found, stored by their barcode
+    */
+   private Map<String,TOCItem> findItems(Connection conn, Collection<String> barcodes) throws SQLException {
+       Map<String,TOCItem> items = new HashMap<String,TOCItem>();
+       
+       // Build one placeholder for each barcode
+       StringBuilder sql = new StringBuilder("SELECT BARCODE, NAME, COST, STOCK FROM ITEMS WHERE BARCODE IN (");
+       for(int i=0; i<barcodes.size(); i++) {
+           sql.append(i == 0 ? "?" : ",?");
+       }
+       sql.append(")");
+       
+       PreparedStatement stmt = prepare(conn, sql.toString());
+       int index = 1;
+       for(String barcode : barcodes) {
+           stmt.setString(index,barcode);
+           index++;
+       }
+       ResultSet results = query(stmt);
+       while(next(results)) {
+           TOCItem item = new TOCItem(results.getString("BARCODE"), results.getString("NAME"), results.getLong("COST"),
+                                      results.getInt("STOCK"));
+           items.put(item.getBarcode(), item);
+       }
+       results.close();
+       
+       return items;
+   }
+   
+   /**
+    * Records a payment towards a member's tab. The payment is stored in the TRANSACTIONS table as an entry with a
+    * negative cost so it shows up on the member's bill, and the member's balance goes down in the same commit
+    * 
+    * @param    pmkeys      the pmkeys of the member paying
+    * @param    amount      how much the member paid in cents
+    */
+   public void settleBalance(int pmkeys, long amount) {
+       long timer = metrics.start();
+       beginWrite();
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           conn.setAutoCommit(false);
+           
+           PreparedStatement stmt = prepare(conn, "INSERT INTO TRANSACTIONS VALUES(NULL,?,?,?,?,?)");
+           stmt.setInt(1,pmkeys);
+           stmt.setString(2,PAYMENT_BARCODE);
+           stmt.setString(3,"Payment");
+           stmt.setLong(4,-amount);
+           stmt.setLong(5,TOCTime.now());
+           update(stmt);
+           
+           addToBalance(conn, pmkeys, -amount);
+           
+           conn.commit();
+           conn.setAutoCommit(true);
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase settleBalance(int pmkeys, long amount)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       endWrite();
+       metrics.stop("db.settleBalance", timer);
+   }
+   
+   /**
+    * Adds an amount to what a member owes. Must be called inside the database transaction that records the purchase
+    * or payment so the balance can never disagree with the TRANSACTIONS table
+    * 
+    * @param    conn        the connection the purchase or payment is being recorded on
+    * @param    pmkeys      the pmkeys of the member
+    * @param    amount      how many cents to add (negative for payments)
+    */
+   private void addToBalance(Connection conn, int pmkeys, long amount) throws SQLException {
+       PreparedStatement stmt = prepare(conn, "INSERT OR IGNORE INTO BALANCES VALUES(?,0)");
+       stmt.setInt(1,pmkeys);
+       update(stmt);
+       
+       stmt = prepare(conn, "UPDATE BALANCES SET OWED = OWED + ? WHERE PMKEYS = ?");
+       stmt.setLong(1,amount);
+       stmt.setInt(2,pmkeys);
+       update(stmt);
+   }
+   
+   /**
+    * Adds a sale to the ITEM_SALES and MEMBER_SALES totals. The statements are only added to their batches, so
+    * writeSales must be called before the database transaction is committed
+    * 
+    * @param    conn        the connection the sale is being recorded on
+    * @param    pmkeys      the pmkeys of the member that bought the items
+    * @param    barcode     the barcode of the items
+    * @param    time        when the sale was made (milliseconds since 1970)
+    * @param    quantity    how many were sold
+    * @param    revenue     what they sold for altogether in cents
+    */
+   private void addToSales(Connection conn, int pmkeys, String barcode, long time, int quantity, long revenue) throws SQLException {
+       PreparedStatement item = prepare(conn, ADD_ITEM_SALES);
+       item.setString(1,TOCTime.day(time));
+       item.setString(2,barcode);
+       item.setInt(3,quantity);
+       item.setLong(4,revenue);
+       item.addBatch();
+       
+       PreparedStatement member = prepare(conn, ADD_MEMBER_SALES);
+       member.setInt(1,pmkeys);
+       member.setString(2,TOCTime.month(time));
+       member.setInt(3,quantity);
+       member.setLong(4,revenue);
+       member.addBatch();
+   }
+   
+   /**
+    * Runs the sales totals added by addToSales
+    * 
+    * @param    conn        the connection the sales are being recorded on
+    */
+   private void writeSales(Connection conn) throws SQLException {
+       batch(prepare(conn, ADD_ITEM_SALES));
+       batch(prepare(conn, ADD_MEMBER_SALES));
+   }
+   
+   /**
+    * Gets how much a member owes without reading their bill
+    * 
+    * @param    pmkeys      the pmkeys of the member
+    * @return               the member's balance in cents (0 if they have never bought anything)
+    */
+   public long getBalance(int pmkeys) {
+       long timer = metrics.start();
+       long owed = 0;
+       
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           PreparedStatement stmt = prepare(conn, "SELECT OWED FROM BALANCES WHERE PMKEYS = ?");
+           stmt.setInt(1,pmkeys);
+           ResultSet results = query(stmt);
+           if(next(results)) {
+               owed = results.getLong("OWED");
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase getBalance(int pmkeys)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       metrics.stop("db.getBalance", timer);
+       return owed;
+   }
+   
+   /**
+    * Gets the balance of every member that owes money or is in credit, for the end of month settlement
+    * 
+    * @return               every balance in cents that is not zero, stored by pmkeys in pmkeys order
+    */
+   public Map<Integer,Long> getBalances() {
+       long timer = metrics.start();
+       Map<Integer,Long> balances = new LinkedHashMap<Integer,Long>();
+       
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           Statement stmt = conn.createStatement();
+           ResultSet results = query(stmt, "SELECT PMKEYS, OWED FROM BALANCES WHERE OWED <> 0 ORDER BY PMKEYS");
+           while(next(results)) {
+               balances.put(results.getInt("PMKEYS"), results.getLong("OWED"));
+           }
+           stmt.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase getBalances()");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       metrics.stop("db.getBalances", timer);
+       return balances;
+   }
+   
+   /**
+    * Works every balance out again from the TRANSACTIONS table and compares it with the stored balance. If fix is
+    * true the stored balances are replaced with the worked out ones
+    * 
+    * @param    fix         a boolean representing if wrong balances should be corrected
+    * @return               the pmkeys of every member whose stored balance was wrong
+    */
+   public List<Integer> verifyBalances(boolean fix) {
+       long timer = metrics.start();
+       beginWrite();
+       List<Integer> wrong = new ArrayList<Integer>();
+       
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           conn.setAutoCommit(false);
+           
+           // Members are in one table or the other if they have no purchases or no stored balance
+           Statement stmt = conn.createStatement();
+           ResultSet results = query(stmt, "SELECT T.PMKEYS AS PMKEYS, T.TOTAL AS TOTAL, B.OWED AS OWED "               +
+                                           "FROM (SELECT PMKEYS, SUM(COST) AS TOTAL FROM TRANSACTIONS GROUP BY PMKEYS) T " +
+                                           "LEFT JOIN BALANCES B ON B.PMKEYS = T.PMKEYS "                                  +
+                                           "UNION ALL "                                                                     +
+                                           "SELECT B.PMKEYS, 0, B.OWED FROM BALANCES B "                                    +
+                                           "WHERE B.PMKEYS NOT IN (SELECT PMKEYS FROM TRANSACTIONS)");
+           while(next(results)) {
+               long owed = results.getLong("OWED");
+               boolean missing = results.wasNull();
+               // Costs are whole cents so the totals must match exactly
+               if(missing || results.getLong("TOTAL") != owed) {
+                   wrong.add(results.getInt("PMKEYS"));
+               }
+           }
+           
+           if(fix && !wrong.isEmpty()) {
+               update(stmt, "DELETE FROM BALANCES");
+               update(stmt, "INSERT INTO BALANCES (PMKEYS,OWED) SELECT PMKEYS, SUM(COST) FROM TRANSACTIONS GROUP BY PMKEYS");
+           }
+           stmt.close();
+           
+           conn.commit();
+           conn.setAutoCommit(true);
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase verifyBalances(boolean fix)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       endWrite();
+       metrics.stop("db.verifyBalances", timer);
+       return wrong;
    }
    
    /**
@@ -499,89 +1895,518 @@ public class TOCDatabase {
     * @return               a String representing the entries
     */
    public String findTransactions(int pmkeys) {
+       long timer = metrics.start();
+       final StringBuilder transactions = new StringBuilder();
+       forEachTransaction(pmkeys, null, null, BILL_PAGE_SIZE, new Consumer<TOCBillRow>() {
+           public void accept(TOCBillRow row) {
+               transactions.append(row).append("\n");
+           }
+       });
+       
+       metrics.stop("db.findTransactions", timer);
+       return transactions.toString();
+    }
+    
+   /**
+    * Reads a member's bill one page at a time and hands every entry to the visitor as it is read, so a long bill
+    * never has to be held in memory. Entries are given in the order they were bought
+    * 
+    * @param    pmkeys      the pmkeys of the member
+    * @param    from        the earliest purchase to include (null for no limit)
+    * @param    to          the purchase time to stop before (null for no limit)
+    * @param    pageSize    how many entries to read from the database at a time
+    * @param    visitor     called with every entry of the bill
+    */
+   public void forEachTransaction(int pmkeys, LocalDateTime from, LocalDateTime to, int pageSize, Consumer<TOCBillRow> visitor) {
+       long timer = metrics.start();
+       TOCBillRow last = null;
+       List<TOCBillRow> page = findTransactions(pmkeys, from, to, last, pageSize);
+       while(!page.isEmpty()) {
+           for(TOCBillRow row : page) {
+               visitor.accept(row);
+           }
+           
+           // A short page means there is nothing left to read
+           if(page.size() < pageSize) {
+               break;
+           }
+           last = page.get(page.size() - 1);
+           page = findTransactions(pmkeys, from, to, last, pageSize);
+       }
+       metrics.stop("db.forEachTransaction", timer);
+   }
+   
+   /**
+    * Reads one page of a member's bill. The next page starts after the last entry of the previous one, so reading a
+    * page costs the same no matter how far into the bill it is
+    * 
+    * @param    pmkeys      the pmkeys of the member
+    * @param    from        the earliest purchase to include (null for no limit)
+    * @param    to          the purchase time to stop before (null for no limit)
+    * @param    after       the last entry of the previous page (null for the first page)
+    * @param    pageSize    the most entries to return
+    * @return               the entries of the page in the order they were bought
+    */
+   public List<TOCBillRow> findTransactions(int pmkeys, LocalDateTime from, LocalDateTime to, TOCBillRow after, int pageSize) {
+       long timer = metrics.start();
+       List<TOCBillRow> page = new ArrayList<TOCBillRow>();
+       
+       // Dates are stored as milliseconds since 1970 so the limits are as well
+       long start = from == null ? Long.MIN_VALUE : TOCTime.toMillis(from);
+       long end = to == null ? Long.MAX_VALUE : TOCTime.toMillis(to);
+       long afterTime = after == null ? start : after.getTime();
+       long afterNum = after == null ? 0 : after.getNum();
+       
        // Establish a connection to the database
-       connect();
+       Connection conn = connect();
        
-       ResultSet results;
-       String transactions = "";
        try{
-           PreparedStatement stmt = conn.prepareStatement("SELECT * FROM TRANSACTIONS WHERE PMKEYS = ?");
+           // The rest of the entries with the same date as the last one are read separately from the entries after
+           // that date, so both halves can jump straight to where they start in the PMKEYS/DATE index. Whole baskets
+           // share a date so a single query with an OR would have to skip over them on every page
+           PreparedStatement stmt = prepare(conn, "SELECT * FROM (SELECT NUM, PMKEYS, BARCODE, NAME, COST, DATE FROM TRANSACTIONS "  +
+                                                          "WHERE PMKEYS = ? AND DATE = ? AND DATE < ? AND NUM > ? ORDER BY NUM LIMIT ?) " +
+                                                          "UNION ALL "                                                                      +
+                                                          "SELECT * FROM (SELECT NUM, PMKEYS, BARCODE, NAME, COST, DATE FROM TRANSACTIONS " +
+                                                          "WHERE PMKEYS = ? AND DATE > ? AND DATE < ? ORDER BY DATE, NUM LIMIT ?) "        +
+                                                          "LIMIT ?");
            stmt.setInt(1,pmkeys);
-           results = stmt.executeQuery();
-           while(results.next()) {                
-               String itemCode = results.getString("BARCODE");
-               String itemName = results.getString("NAME");
-               double itemCost = results.getDouble("COST");
-               String purchaseDate = results.getString("DATE");
-               
-               transactions = transactions + purchaseDate + " - " + itemName + " - $" + itemCost + "\n";
+           stmt.setLong(2,afterTime);
+           stmt.setLong(3,end);
+           stmt.setLong(4,afterNum);
+           stmt.setInt(5,pageSize);
+           stmt.setInt(6,pmkeys);
+           stmt.setLong(7,afterTime);
+           stmt.setLong(8,end);
+           stmt.setInt(9,pageSize);
+           stmt.setInt(10,pageSize);
+           ResultSet results = query(stmt);
+           while(next(results)) {
+               page.add(new TOCBillRow(results.getLong("NUM"), results.getInt("PMKEYS"), results.getString("BARCODE"),
+                                       results.getString("NAME"), results.getLong("COST"), results.getLong("DATE")));
            }
-           stmt.close();
-           conn.close();
+           results.close();
+           release(conn);
        }catch(Exception e) {
                 System.err.println(e.getClass().getName() + ": " + e.getMessage());
-                System.err.println("Error at TOCDatabase findTransactions(int pmkeys)");
+                System.err.println("Error at TOCDatabase findTransactions(int pmkeys, LocalDateTime from, LocalDateTime to, TOCBillRow after, int pageSize)");
                 System.err.println("Something went wrong, please contact one of the TOC's admins");
                 System.exit(0);
        }
        
-       return transactions;
-    }
-    
+       metrics.stop("db.findTransactionsPage", timer);
+       return page;
+   }
+   
+   /**
+    * Reads one page of a member's bill from the latest entry back. Works the same way as findTransactions, only
+    * walking the PMKEYS/DATE index backwards, so the latest page costs the same however long the bill is
+    * 
+    * @param    pmkeys      the pmkeys of the member
+    * @param    before      the last entry of the previous page (null for the first page, which ends with the latest
+    *                       entry)
+    * @param    pageSize    the most entries to return
+    * @return               the entries of the page, newest first
+    */
+   public List<TOCBillRow> findLatestTransactions(int pmkeys, TOCBillRow before, int pageSize) {
+       long timer = metrics.start();
+       List<TOCBillRow> page = new ArrayList<TOCBillRow>();
+       long beforeTime = before == null ? Long.MAX_VALUE : before.getTime();
+       long beforeNum = before == null ? Long.MAX_VALUE : before.getNum();
+       
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           // The rest of the entries with the same date as the last one, then the entries before that date
+           PreparedStatement stmt = prepare(conn, "SELECT * FROM (SELECT NUM, PMKEYS, BARCODE, NAME, COST, DATE FROM TRANSACTIONS "  +
+                                                          "WHERE PMKEYS = ? AND DATE = ? AND NUM < ? ORDER BY NUM DESC LIMIT ?) "         +
+                                                          "UNION ALL "                                                                      +
+                                                          "SELECT * FROM (SELECT NUM, PMKEYS, BARCODE, NAME, COST, DATE FROM TRANSACTIONS " +
+                                                          "WHERE PMKEYS = ? AND DATE < ? ORDER BY DATE DESC, NUM DESC LIMIT ?) "           +
+                                                          "LIMIT ?");
+           stmt.setInt(1,pmkeys);
+           stmt.setLong(2,beforeTime);
+           stmt.setLong(3,beforeNum);
+           stmt.setInt(4,pageSize);
+           stmt.setInt(5,pmkeys);
+           stmt.setLong(6,beforeTime);
+           stmt.setInt(7,pageSize);
+           stmt.setInt(8,pageSize);
+           ResultSet results = query(stmt);
+           while(next(results)) {
+               page.add(new TOCBillRow(results.getLong("NUM"), results.getInt("PMKEYS"), results.getString("BARCODE"),
+                                       results.getString("NAME"), results.getLong("COST"), results.getLong("DATE")));
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase findLatestTransactions(int pmkeys, TOCBillRow before, int pageSize)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       metrics.stop("db.findLatestTransactions", timer);
+       return page;
+   }
+   
+   /**
+    * Reads every sale and payment made between two times one page at a time and hands them to the visitor as they
+    * are read, such as for a day end report. Entries are given in the order they were made
+    * 
+    * @param    from        the earliest entry to include (null for no limit)
+    * @param    to          the time to stop before (null for no limit)
+    * @param    pageSize    how many entries to read from the database at a time
+    * @param    visitor     called with every entry
+    */
+   public void forEachSale(LocalDateTime from, LocalDateTime to, int pageSize, Consumer<TOCBillRow> visitor) {
+       long timer = metrics.start();
+       TOCBillRow last = null;
+       List<TOCBillRow> page = findSales(from, to, last, pageSize);
+       while(!page.isEmpty()) {
+           for(TOCBillRow row : page) {
+               visitor.accept(row);
+           }
+           
+           // A short page means there is nothing left to read
+           if(page.size() < pageSize) {
+               break;
+           }
+           last = page.get(page.size() - 1);
+           page = findSales(from, to, last, pageSize);
+       }
+       metrics.stop("db.forEachSale", timer);
+   }
+   
+   /**
+    * Reads one page of every sale and payment made between two times. Works the same way as reading a page of a
+    * bill but on the TRANSACTIONS_DATE index, so the page is a range of the index whoever made the purchases
+    * 
+    * @param    from        the earliest entry to include (null for no limit)
+    * @param    to          the time to stop before (null for no limit)
+    * @param    after       the last entry of the previous page (null for the first page)
+    * @param    pageSize    the most entries to return
+    * @return               the entries of the page in the order they were made
+    */
+   public List<TOCBillRow> findSales(LocalDateTime from, LocalDateTime to, TOCBillRow after, int pageSize) {
+       long timer = metrics.start();
+       List<TOCBillRow> page = new ArrayList<TOCBillRow>();
+       
+       long start = from == null ? Long.MIN_VALUE : TOCTime.toMillis(from);
+       long end = to == null ? Long.MAX_VALUE : TOCTime.toMillis(to);
+       long afterTime = after == null ? start : after.getTime();
+       long afterNum = after == null ? 0 : after.getNum();
+       
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           PreparedStatement stmt = prepare(conn, "SELECT * FROM (SELECT NUM, PMKEYS, BARCODE, NAME, COST, DATE FROM TRANSACTIONS "  +
+                                                          "WHERE DATE = ? AND DATE < ? AND NUM > ? ORDER BY NUM LIMIT ?) "               +
+                                                          "UNION ALL "                                                                      +
+                                                          "SELECT * FROM (SELECT NUM, PMKEYS, BARCODE, NAME, COST, DATE FROM TRANSACTIONS " +
+                                                          "WHERE DATE > ? AND DATE < ? ORDER BY DATE, NUM LIMIT ?) "                       +
+                                                          "LIMIT ?");
+           stmt.setLong(1,afterTime);
+           stmt.setLong(2,end);
+           stmt.setLong(3,afterNum);
+           stmt.setInt(4,pageSize);
+           stmt.setLong(5,afterTime);
+           stmt.setLong(6,end);
+           stmt.setInt(7,pageSize);
+           stmt.setInt(8,pageSize);
+           ResultSet results = query(stmt);
+           while(next(results)) {
+               page.add(new TOCBillRow(results.getLong("NUM"), results.getInt("PMKEYS"), results.getString("BARCODE"),
+                                       results.getString("NAME"), results.getLong("COST"), results.getLong("DATE")));
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase findSales(LocalDateTime from, LocalDateTime to, TOCBillRow after, int pageSize)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       metrics.stop("db.findSalesPage", timer);
+       return page;
+   }
+   
+   /**
+    * Adds up what every member bought and paid between two times, such as for the monthly bill run. Reads one range
+    * of the TRANSACTIONS_DATE index instead of every member's whole bill
+    * 
+    * @param    from        the earliest entry to include
+    * @param    to          the time to stop before
+    * @return               the total in cents of every member with entries in the period by pmkeys. Payments take away
+    */
+   public Map<Integer,Long> getBillTotals(LocalDateTime from, LocalDateTime to) {
+       long timer = metrics.start();
+       Map<Integer,Long> totals = new LinkedHashMap<Integer,Long>();
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           PreparedStatement stmt = prepare(conn, "SELECT PMKEYS, SUM(COST) AS TOTAL FROM TRANSACTIONS WHERE DATE >= ? AND DATE < ? " +
+                                                  "GROUP BY PMKEYS ORDER BY PMKEYS");
+           stmt.setLong(1,TOCTime.toMillis(from));
+           stmt.setLong(2,TOCTime.toMillis(to));
+           ResultSet results = query(stmt);
+           while(next(results)) {
+               totals.put(results.getInt("PMKEYS"), results.getLong("TOTAL"));
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase getBillTotals(LocalDateTime from, LocalDateTime to)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       metrics.stop("db.getBillTotals", timer);
+       return totals;
+   }
+   
+   /**
+    * Gets the items that sold the most between two days from the ITEM_SALES totals. Items that have been removed since
+    * are shown by their barcode
+    * 
+    * @param    from        the first day (inclusive)
+    * @param    to          the last day (inclusive)
+    * @param    limit       the most items to return
+    * @return               the items by barcode with the best seller first
+    */
+   public List<TOCSalesRow> getTopSellers(LocalDate from, LocalDate to, int limit) {
+       long timer = metrics.start();
+       List<TOCSalesRow> rows = new ArrayList<TOCSalesRow>();
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           PreparedStatement stmt = prepare(conn, "SELECT S.BARCODE, COALESCE(I.NAME, S.BARCODE) AS NAME, SUM(S.QUANTITY) AS QUANTITY, " +
+                                                  "SUM(S.REVENUE) AS REVENUE FROM ITEM_SALES S LEFT JOIN ITEMS I ON I.BARCODE = S.BARCODE " +
+                                                  "WHERE S.DAY BETWEEN ? AND ? GROUP BY S.BARCODE ORDER BY QUANTITY DESC, REVENUE DESC LIMIT ?");
+           stmt.setString(1,"" + from);
+           stmt.setString(2,"" + to);
+           stmt.setInt(3,limit);
+           ResultSet results = query(stmt);
+           while(next(results)) {
+               rows.add(new TOCSalesRow(results.getString("BARCODE"), results.getString("NAME"), results.getInt("QUANTITY"),
+                                        results.getLong("REVENUE")));
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase getTopSellers(LocalDate from, LocalDate to, int limit)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       metrics.stop("db.getTopSellers", timer);
+       return rows;
+   }
+   
+   /**
+    * Gets how much was sold in every day, month or year between two days from the ITEM_SALES totals. Days are stored
+    * as yyyy-MM-dd so a month or a year is the start of the day
+    * 
+    * @param    from        the first day (inclusive)
+    * @param    to          the last day (inclusive)
+    * @param    period      DAYS, MONTHS or YEARS
+    * @return               one row for every period that had sales, oldest first
+    */
+   public List<TOCSalesRow> getRevenue(LocalDate from, LocalDate to, ChronoUnit period) {
+       long timer = metrics.start();
+       List<TOCSalesRow> rows = new ArrayList<TOCSalesRow>();
+       int length = period == ChronoUnit.YEARS ? 4 : period == ChronoUnit.MONTHS ? 7 : 10;
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           PreparedStatement stmt = prepare(conn, "SELECT SUBSTR(DAY,1,?) AS PERIOD, SUM(QUANTITY) AS QUANTITY, SUM(REVENUE) AS REVENUE " +
+                                                  "FROM ITEM_SALES WHERE DAY BETWEEN ? AND ? GROUP BY PERIOD ORDER BY PERIOD");
+           stmt.setInt(1,length);
+           stmt.setString(2,"" + from);
+           stmt.setString(3,"" + to);
+           ResultSet results = query(stmt);
+           while(next(results)) {
+               rows.add(new TOCSalesRow(results.getString("PERIOD"), results.getString("PERIOD"), results.getInt("QUANTITY"),
+                                        results.getLong("REVENUE")));
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase getRevenue(LocalDate from, LocalDate to, ChronoUnit period)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       metrics.stop("db.getRevenue", timer);
+       return rows;
+   }
+   
+   /**
+    * Gets how much a member spent in every month between two days from the MEMBER_SALES totals
+    * 
+    * @param    pmkeys      the member's pmkeys
+    * @param    from        the first day (only its month is used)
+    * @param    to          the last day (only its month is used)
+    * @return               one row for every month the member bought something, oldest first
+    */
+   public List<TOCSalesRow> getMemberSpending(int pmkeys, LocalDate from, LocalDate to) {
+       long timer = metrics.start();
+       List<TOCSalesRow> rows = new ArrayList<TOCSalesRow>();
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           PreparedStatement stmt = prepare(conn, "SELECT MONTH, QUANTITY, SPENT FROM MEMBER_SALES " +
+                                                  "WHERE PMKEYS = ? AND MONTH BETWEEN ? AND ? ORDER BY MONTH");
+           stmt.setInt(1,pmkeys);
+           stmt.setString(2,("" + from).substring(0,7));
+           stmt.setString(3,("" + to).substring(0,7));
+           ResultSet results = query(stmt);
+           while(next(results)) {
+               rows.add(new TOCSalesRow(results.getString("MONTH"), results.getString("MONTH"), results.getInt("QUANTITY"),
+                                        results.getLong("SPENT")));
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase getMemberSpending(int pmkeys, LocalDate from, LocalDate to)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       metrics.stop("db.getMemberSpending", timer);
+       return rows;
+   }
+   
+   /**
+    * Gets the items in stock that sold the least between two days, including ones that did not sell at all
+    * 
+    * @param    from        the first day (inclusive)
+    * @param    to          the last day (inclusive)
+    * @param    limit       the most items to return
+    * @return               the items with the slowest first
+    */
+   public List<TOCStockRow> getSlowMovers(LocalDate from, LocalDate to, int limit) {
+       long timer = metrics.start();
+       List<TOCStockRow> rows = new ArrayList<TOCStockRow>();
+       int days = (int) ChronoUnit.DAYS.between(from, to) + 1;
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           PreparedStatement stmt = prepare(conn, "SELECT I.BARCODE, I.NAME, I.STOCK, COALESCE(S.SOLD, 0) AS SOLD FROM ITEMS I " +
+                                                  "LEFT JOIN (SELECT BARCODE, SUM(QUANTITY) AS SOLD FROM ITEM_SALES WHERE DAY BETWEEN ? AND ? " +
+                                                  "GROUP BY BARCODE) S ON S.BARCODE = I.BARCODE WHERE I.STOCK > 0 " +
+                                                  "ORDER BY SOLD, I.STOCK DESC LIMIT ?");
+           stmt.setString(1,"" + from);
+           stmt.setString(2,"" + to);
+           stmt.setInt(3,limit);
+           ResultSet results = query(stmt);
+           while(next(results)) {
+               rows.add(new TOCStockRow(results.getString("BARCODE"), results.getString("NAME"), results.getInt("STOCK"),
+                                        results.getInt("SOLD"), days));
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase getSlowMovers(LocalDate from, LocalDate to, int limit)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       metrics.stop("db.getSlowMovers", timer);
+       return rows;
+   }
+   
+   /**
+    * Gets the items whose stock will run out within a number of days if they keep selling as fast as they did over
+    * the last few days. An item runs out in time when stock / (sold / days) < coverDays, which is compared as
+    * stock * days < coverDays * sold so nothing is divided by 0
+    * 
+    * @param    days        how many days up to today the selling speed is worked out from
+    * @param    coverDays   how many days the stock should last
+    * @return               the items that will run out first at the top
+    */
+   public List<TOCStockRow> getReorderCandidates(int days, int coverDays) {
+       long timer = metrics.start();
+       List<TOCStockRow> rows = new ArrayList<TOCStockRow>();
+       LocalDate to = LocalDate.now();
+       LocalDate from = to.minusDays(days - 1);
+       // Establish a connection to the database
+       Connection conn = connect();
+       
+       try{
+           PreparedStatement stmt = prepare(conn, "SELECT I.BARCODE, I.NAME, I.STOCK, S.SOLD FROM ITEMS I " +
+                                                  "JOIN (SELECT BARCODE, SUM(QUANTITY) AS SOLD FROM ITEM_SALES WHERE DAY BETWEEN ? AND ? " +
+                                                  "GROUP BY BARCODE) S ON S.BARCODE = I.BARCODE WHERE I.STOCK * ? < ? * S.SOLD " +
+                                                  "ORDER BY I.STOCK * 1.0 / S.SOLD");
+           stmt.setString(1,"" + from);
+           stmt.setString(2,"" + to);
+           stmt.setInt(3,days);
+           stmt.setInt(4,coverDays);
+           ResultSet results = query(stmt);
+           while(next(results)) {
+               rows.add(new TOCStockRow(results.getString("BARCODE"), results.getString("NAME"), results.getInt("STOCK"),
+                                        results.getInt("SOLD"), days));
+           }
+           results.close();
+           release(conn);
+       }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCDatabase getReorderCandidates(int days, int coverDays)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+       }
+       
+       metrics.stop("db.getReorderCandidates", timer);
+       return rows;
+   }
+   
     /**
      * Creates the tables that the TOC requires. They will all be initially empty. There is
-     * a restriction in the name of members and items to 25 characters.
+     * a restriction in the name of members and items to 25 characters. The tables themselves are described in
+     * TOCSchema and are also created or upgraded every time the TOCDatabase is constructed.
      * 
      * Initialises an admin account which will usually be the TOC representative of a division.
      * Note to Devs: Remember to modify this function to allow us to change the initial admin
      * details when a user first install it
      */
     public void firstSetup() {
+        long timer = metrics.start();
+        beginWrite();
         try{
-            connect();
+            Connection conn = connect();
+            
+            int applied = TOCSchema.migrate(conn);
+            System.out.println("Tables created (" + applied + " upgrades applied)");
             
             Statement stmt = conn.createStatement();
             // This string will store the sql commands we want to pass
             String sql;
             
-            // Create the members table
-            sql = "CREATE TABLE MEMBERS("                               +
-                  "ID    INT          NOT NULL,"                        +
-                  "NAME  VARCHAR(25)  NOT NULL,"                        +
-                  "ADMIN INT          NOT NULL,"                        +
-                  "PRIMARY KEY (ID))";
-            stmt.executeUpdate(sql);
-            System.out.println("Members table created");
-            
-            // Create the items table
-            sql = "CREATE TABLE ITEMS("                                 +
-                  "ID       INTEGER     PRIMARY KEY    AUTOINCREMENT,"  +
-                  "BARCODE  VARCHAR(30) NOT NULL,"                      +
-                  "NAME     VARCHAR(25) NOT NULL,"                      +
-                  "COST     REAL        NOT NULL,"                      +
-                  "STOCK    INT         NOT NULL)";                      
-            stmt.executeUpdate(sql);
-            System.out.println("Items table created");
-            
-            // Create the transactions table
-            sql = "CREATE TABLE TRANSACTIONS("                          +
-                  "NUM      INTEGER     PRIMARY KEY     AUTOINCREMENT," +
-                  "PMKEYS   INT         NOT NULL,"                      +
-                  "BARCODE  VARCHAR(30) NOT NULL,"                      +
-                  "NAME     VARCHAR(30) NOT NULL,"                      +
-                  "COST     REAL        NOT NULL,"                      +
-                  "DATE     TEXT        NOT NULL)";
-            stmt.executeUpdate(sql);
-            System.out.println("Transactions table created");
-            
-            // Add the first admin
-            sql = "INSERT INTO MEMBERS  (ID,NAME,ADMIN) " + 
+            // Add the first admin. Counted as a change to the members like any other so other programs read them again
+            conn.setAutoCommit(false);
+            sql = "INSERT OR IGNORE INTO MEMBERS  (ID,NAME,ADMIN) " + 
                   "VALUES (8618374,'Pedro Alves', 1)";
-            stmt.executeUpdate(sql);
+            update(stmt, sql);
+            stampChanges(conn, false, true);
+            conn.commit();
+            conn.setAutoCommit(true);
             
             // Get the admin details to test
-            ResultSet results = stmt.executeQuery("SELECT * FROM MEMBERS;");
-            while(results.next()) {
+            ResultSet results = query(stmt, "SELECT * FROM MEMBERS;");
+            while(next(results)) {
                 int id = results.getInt("ID");
                 String name = results.getString("NAME");
                 System.out.println("Admin created");
@@ -590,7 +2415,9 @@ public class TOCDatabase {
             }
             
             stmt.close();
-            conn.close();
+            release(conn);
+            // The member directory is the whole MEMBERS table, so the first admin can log in straight away
+            loadDirectory();
             
             System.out.println("------------------------------");
             System.out.println("");
@@ -600,5 +2427,7 @@ public class TOCDatabase {
             System.err.println("Error at TOCDatabase firstSetup()");
             System.exit(0);
         }
+        endWrite();
+        metrics.stop("db.firstSetup", timer);
     }
 }
\ No newline at end of file
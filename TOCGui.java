@@ -1,4 +1,9 @@
+import java.io.*;
+import java.time.*;
+import java.time.temporal.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 /**
  * A temporary class to prototype the TOC while the GUI is being build
@@ -7,19 +12,60 @@ import java.util.*;
  * @version 23 August 2016
  */
 public class TOCGui {
+    // How many bill entries are read at a time when printing a bill
+    private static final int BILL_PAGE_SIZE = 100;
+    // How many scans can be waiting for their item before the scan loop waits for the oldest one
+    private static final int MAX_PENDING_SCANS = 32;
+    
     // The communicator between the Interface, Core and Database components
     private TOCManager manager;
+    // Where the TOC keeps its members, items and bills
+    private TOCStorage storage;
+    // Where finalised baskets are recorded before they reach the storage (null to write them straight to it)
+    private TOCCheckout checkout;
+    // Reads what is typed or scanned. Only one is made so lines that arrive faster than they are read stay buffered
+    private Scanner scanner;
     
     /**
      * The entry point of the toc program. Will start up the GUI and wait for the user input
      * 
-     * @param   args            console commands (not used)
+     * @param   args            console commands. "memory [snapshot file]" runs the TOC in memory for pop up stalls
      */
     public static void main(String[] args) {
-        TOCGui gui = new TOCGui();
+        TOCStorage storage;
+        TOCCheckout checkout = null;
+        if(args.length > 0 && args[0].equalsIgnoreCase("memory")) {
+            try {
+                storage = new TOCMemoryStorage(args.length > 1 ? args[1] : "tocMemory.snapshot", TOCMemoryStorage.DEFAULT_SNAPSHOT_SECONDS);
+            }catch(UncheckedIOException e) {
+                System.err.println(e.getCause().getClass().getName() + ": " + e.getCause().getMessage());
+                System.err.println("Error at TOCGui main(String[] args)");
+                System.err.println("Something went wrong, please contact one of the TOC's admins");
+                System.exit(0);
+                return;
+            }
+            storage.firstSetup();
+        }else {
+            TOCDatabase database = new TOCDatabase();
+            checkout = new TOCJournal(database, "tocJournal.log");
+            storage = database;
+        }
+        TOCGui gui = new TOCGui(storage, checkout);
         gui.start();
     }
     
+    /**
+     * The constructor
+     * 
+     * @param   toc             where the TOC keeps its members, items and bills
+     * @param   sales           where finalised baskets are recorded (null to write them straight to the storage)
+     */
+    public TOCGui(TOCStorage toc, TOCCheckout sales) {
+        storage = toc;
+        checkout = sales;
+        scanner = new Scanner(System.in);
+    }
+    
     // ------------------------------------------------- Helper Functions -------------------------------------------------
     /**
      * Prints to System.out a string of characters and ends with a \n char
@@ -38,8 +84,7 @@ public class TOCGui {
      * @see                     getInput(int characterLoc)
      */
     private String getInput() {
-        Scanner scan = new Scanner(System.in);
-        String input = scan.nextLine().trim();
+        String input = scanner.nextLine().trim();
         
         return input;
     }
@@ -54,8 +99,7 @@ public class TOCGui {
      * @see                     getInput()
      */
     private char getInput(int characterLoc) {
-        Scanner scan = new Scanner(System.in);
-        char input = scan.nextLine().trim().toUpperCase().charAt(characterLoc);
+        char input = scanner.nextLine().trim().toUpperCase().charAt(characterLoc);
         
         return input;
     }
@@ -76,10 +120,18 @@ public class TOCGui {
         printLine("(S)ee bill");
         printLine("(A)dd Member");
         printLine("(R)emove Member");
+        printLine("(L)oad nominal roll");
+        printLine("(F)ile import of items or members");
         printLine("(U)pdate admin status");
         printLine("(N)ew Item");
         printLine("(E)xile Item");
         printLine("(C)hange item cost");
+        printLine("(I)ncrease or decrease prices");
+        printLine("(T)ake a delivery");
+        printLine("(P)ay a member's bill");
+        printLine("(V)erify balances");
+        printLine("Sales rep(O)rts");
+        printLine("(M)etrics");
         printLine("(Q)uit");
         printLine("------------------------------");
         
@@ -89,9 +141,9 @@ public class TOCGui {
         while(!ok) {
             System.out.print("Selection: ");
             choice = getInput(0);
-            ok = (choice == 'G' || choice == 'D' || choice == 'B' || choice == 'Q' || choice == 'A' || choice == 'R' || choice == 'U' || choice == 'N' || choice == 'S' || choice == 'C' || choice == 'E');
+            ok = (choice == 'G' || choice == 'D' || choice == 'B' || choice == 'Q' || choice == 'A' || choice == 'R' || choice == 'U' || choice == 'N' || choice == 'S' || choice == 'C' || choice == 'E' || choice == 'P' || choice == 'V' || choice == 'M' || choice == 'L' || choice == 'F' || choice == 'I' || choice == 'T' || choice == 'O');
             if(!ok) {
-                printLine("Please type g,G,d,D,b,B,s,S,a,A,r,R,n,N,q,Q,u,U,c,C,e,E");
+                printLine("Please type g,G,d,D,b,B,s,S,a,A,r,R,l,L,f,F,n,N,q,Q,u,U,c,C,i,I,t,T,e,E,p,P,v,V,o,O,m,M");
                 printLine("");
             }
         }
@@ -108,7 +160,7 @@ public class TOCGui {
         char choice = ' ';
         String input = " ";
         
-        manager = new TOCManager();
+        manager = new TOCManager(storage, checkout);
         boolean loop = true;
         printLine("17 DIVISION TOC");
         
@@ -116,7 +168,7 @@ public class TOCGui {
         while(loop) {
             input = getInput();
             try {
-                pmkeys = Integer.valueOf(input);
+                pmkeys = Integer.parseInt(input);
             }catch(NumberFormatException e) {
                 pmkeys = 0;
             }
@@ -153,6 +205,12 @@ public class TOCGui {
                 case 'R':
                     removeMember();
                     break;
+                case 'L':
+                    loadRoster();
+                    break;
+                case 'F':
+                    importFile();
+                    break;
                 case 'U':
                     updateAdmin();
                     break;
@@ -165,10 +223,30 @@ public class TOCGui {
                 case 'C':
                     updateCost();
                     break;
+                case 'I':
+                    changeCosts();
+                    break;
+                case 'T':
+                    receiveDelivery();
+                    break;
+                case 'P':
+                    payBill();
+                    break;
+                case 'V':
+                    verifyBalances();
+                    break;
+                case 'O':
+                    printReports();
+                    break;
+                case 'M':
+                    printMetrics();
+                    break;
                 case 'Q':
                     break;
             }
         }
+        
+        manager.shutdown();
     }
     
     // -------------------------------------------- Actions Called By The Menu --------------------------------------------
@@ -278,6 +356,94 @@ public class TOCGui {
         }
     }
     
+    /**
+     * Asks for a nominal roll file, shows what it would change in the member list and makes the changes if the user
+     * agrees
+     */
+    private void loadRoster() {
+        // Check if the user requesting to modify the database is an admin
+        if(manager.getMemberAdmin()) {
+            System.out.print("Nominal roll file (PMKEYS,NAME[,ADMIN]): ");
+            String file = getInput();
+            
+            TOCRoster.Changes changes = null;
+            try {
+                Reader roll = new InputStreamReader(new FileInputStream(file), "UTF-8");
+                Writer rejects = new StringWriter();
+                changes = manager.compareRoster(roll, rejects);
+                roll.close();
+                if(rejects.toString().length() > 0) {
+                    printLine("Rejected (LINE,REASON,RECORD):");
+                    System.out.print(rejects.toString());
+                }
+            }catch(IOException e) {
+                printLine("Could not read " + file + ": " + e.getMessage());
+                printLine("");
+                return;
+            }
+            
+            PrintWriter out = new PrintWriter(System.out);
+            TOCRoster.report(changes, out);
+            out.flush();
+            if(changes.isEmpty()) {
+                printLine("");
+                return;
+            }
+            
+            // Ask before changing anything
+            System.out.print("Apply these changes (1 for yes, 0 for no): ");
+            int apply = 0;
+            try {
+                apply = Integer.valueOf(getInput());
+            }catch(NumberFormatException e) {
+                apply = 0;
+            }
+            if(apply == 1) {
+                manager.applyRoster(changes);
+                printLine("Roster applied");
+            }
+            printLine("");
+        }else {
+            printLine("Sorry you must be an admin");
+        }
+    }
+    
+    /**
+     * Asks for a comma separated file of items or members and loads it into the TOC. Loading it here rather than with
+     * TOCCatalogue means the TOC's cached items and members are updated straight away
+     */
+    private void importFile() {
+        // Check if the user requesting to modify the database is an admin
+        if(manager.getMemberAdmin()) {
+            System.out.print("Load (I)tems or (M)embers: ");
+            char kind = getInput(0);
+            if(kind != 'I' && kind != 'M') {
+                printLine("Please type i,I,m,M");
+                printLine("");
+                return;
+            }
+            System.out.print(kind == 'I' ? "Item file (BARCODE,NAME,COST,STOCK): " : "Member file (PMKEYS,NAME,ADMIN): ");
+            String file = getInput();
+            
+            try {
+                Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+                Writer rejects = new StringWriter();
+                TOCCatalogue.Result result = manager.importFile(kind == 'I', in, rejects);
+                in.close();
+                if(rejects.toString().length() > 0) {
+                    printLine("Rejected (LINE,REASON,RECORD):");
+                    System.out.print(rejects.toString());
+                }
+                printLine((kind == 'I' ? "Items: " : "Members: ") + result);
+            }catch(IOException e) {
+                printLine("Could not read " + file + ": " + e.getMessage());
+            }
+            printLine("");
+        }else {
+            printLine("Sorry you must be an admin");
+        }
+    }
+    
     /**
      * Prompts the user to type the barcode of the item we want to see the details for
      */
@@ -297,16 +463,14 @@ public class TOCGui {
     }
     
     /**
-     * Shows the user the details of an item's barcode
+     * Shows the user the details of the item that was last found by the manager
      * 
      * @param   barcode     the barcode of the item to show the info on
      */
     private void printItem(String barcode) {
-        manager.changeItem(barcode);
-        
         printLine("BARCODE: "   + manager.getItemBarcode());
         printLine("NAME:    "   + manager.getItemName());
-        printLine("PRICE:   $"  + manager.getItemCost());
+        printLine("PRICE:   "   + TOCMoney.format(manager.getItemCost()));
         printLine("STOCK:   "   + manager.getItemStock());
         printLine(" ");
     }
@@ -330,12 +494,12 @@ public class TOCGui {
             
             // Ask for cost
             System.out.print("Cost of item: ");
-            double cost = 0.0;
+            long cost = 0;
             input = getInput();
             try {
-                cost = Double.valueOf(input);
+                cost = TOCMoney.parse(input);
             }catch(NumberFormatException e) {
-                cost = 0.0;
+                cost = 0;
             }
             
             // Ask for stock
@@ -385,12 +549,12 @@ public class TOCGui {
             // Ask for updated cost
             if(manager.changeItem(barcode)) {
                 System.out.print("Updated cost: ");
-                double cost = 0.0;
+                long cost = 0;
                 input = getInput();
                 try {
-                    cost = Double.valueOf(input);
+                    cost = TOCMoney.parse(input);
                 }catch(NumberFormatException e) {
-                    cost = 0.0;
+                    cost = 0;
                 }
                 
                 // Pass the details to the manager
@@ -400,33 +564,334 @@ public class TOCGui {
             printLine("");
     }
     
+    /**
+     * Asks for a group of items and a price change and has the manager change them all at once. The items are read
+     * from a file with a barcode on each line, or scanned one after the other
+     */
+    private void changeCosts() {
+        // Check if the user requesting to modify the database is an admin
+        if(!manager.getMemberAdmin()) {
+            printLine("Sorry you must be an admin");
+            return;
+        }
+        
+        Map<String,Integer> scanned = readBarcodes(false);
+        if(scanned == null || scanned.isEmpty()) {
+            printLine("");
+            return;
+        }
+        
+        // Ask for the change. A % at the end makes it a percentage
+        System.out.print("Change (eg. 0.20 or -0.10 for an amount, 10% or -5% for a percentage): ");
+        String input = getInput();
+        boolean percent = input.endsWith("%");
+        double change = 0.0;
+        long amount = 0;
+        try {
+            if(percent) {
+                change = Double.valueOf(input.substring(0, input.length() - 1).trim());
+            }else {
+                amount = TOCMoney.parse(input);
+            }
+        }catch(NumberFormatException e) {
+            printLine("That is not a valid change");
+            printLine("");
+            return;
+        }
+        
+        List<String> missing = manager.changeCosts(new ArrayList<String>(scanned.keySet()), change, amount);
+        printLine((scanned.size() - missing.size()) + " items changed");
+        for(String barcode : missing) {
+            printLine("Not found: " + barcode);
+        }
+        printLine("");
+    }
+    
+    /**
+     * Asks for the items in a delivery and has the manager add them all to the stock at once. The delivery is read
+     * from a file with BARCODE,QUANTITY on each line, or scanned one item at a time (scanning an item again adds one
+     * more)
+     */
+    private void receiveDelivery() {
+        // Check if the user requesting to modify the database is an admin
+        if(!manager.getMemberAdmin()) {
+            printLine("Sorry you must be an admin");
+            return;
+        }
+        
+        Map<String,Integer> delivery = readBarcodes(true);
+        if(delivery == null || delivery.isEmpty()) {
+            printLine("");
+            return;
+        }
+        
+        List<String> missing = manager.receiveDelivery(delivery);
+        printLine((delivery.size() - missing.size()) + " items restocked");
+        for(String barcode : missing) {
+            printLine("Not found: " + barcode);
+        }
+        printLine("");
+    }
+    
+    /**
+     * Reads a list of barcodes from a file or from the scanner
+     * 
+     * @param   quantities      if the file has a quantity after each barcode
+     * @return                  every barcode with its quantity in the order they came, or null if the file could not
+     *                          be read
+     */
+    private Map<String,Integer> readBarcodes(boolean quantities) {
+        Map<String,Integer> barcodes = new LinkedHashMap<String,Integer>();
+        System.out.print("File to read (press enter to scan the items instead): ");
+        String file = getInput();
+        
+        if(file.isEmpty()) {
+            // Scan until a blank line
+            printLine("Scan the items and press enter on its own to finish");
+            String barcode = getInput();
+            while(!barcode.isEmpty()) {
+                Integer count = barcodes.get(barcode);
+                barcodes.put(barcode, count == null ? 1 : count + 1);
+                barcode = getInput();
+            }
+            return barcodes;
+        }
+        
+        try {
+            Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            TOCCsv csv = new TOCCsv(in);
+            List<String> record = csv.next();
+            while(record != null) {
+                String barcode = record.get(0).trim();
+                int quantity = 1;
+                try {
+                    quantity = quantities && record.size() > 1 ? Integer.valueOf(record.get(1).trim()) : 1;
+                }catch(NumberFormatException e) {
+                    // A header line or a bad quantity
+                    printLine("Skipped line " + csv.getRecordLine() + ": " + barcode);
+                    record = csv.next();
+                    continue;
+                }
+                if(!barcode.isEmpty()) {
+                    Integer count = barcodes.get(barcode);
+                    barcodes.put(barcode, count == null ? quantity : count + quantity);
+                }
+                record = csv.next();
+            }
+            in.close();
+        }catch(IOException e) {
+            printLine("Could not read " + file + ": " + e.getMessage());
+            return null;
+        }
+        return barcodes;
+    }
+    
     /**
      * Gets the item barcode and adds it to the list of bought items. After the user has completed their shopping,
-     * this function lets the TOCManager update the database
+     * this function lets the TOCManager update the database. Typing remove followed by a barcode takes one of that
+     * item back out and typing void empties the basket
+     * 
+     * Scans are handed to the manager without waiting for their lookup, so the next barcode can be read straight
+     * away. Their results are printed in the order they were scanned. Up to MAX_PENDING_SCANS can be waiting at once,
+     * after that the loop waits for the oldest one so a fast scanner can not get too far ahead
      */
     private void startTransaction() {
         // Controls the loop while the user is still buying
         boolean buying = true;
         String barcode = " ";
+        // The printouts of the scans that are still waiting, oldest first
+        Deque<CompletableFuture<Void>> pending = new ArrayDeque<CompletableFuture<Void>>();
+        CompletableFuture<Void> printed = CompletableFuture.completedFuture(null);
         while(buying) {
             System.out.print("Scan item (Type finish to finalise): ");
             barcode = getInput();
-            if(manager.changeItem(barcode)) {
-                manager.addItemToTransaction();
-                printLine("" + manager.getItemName() + ": " + manager.getItemCost());
-            }else if(barcode.equals("finish") || barcode.equals("Finish")) {
-                manager.finaliseTransaction();
+            if(barcode.equalsIgnoreCase("finish")) {
+                waitForScans(pending);
+                TOCReceipt receipt;
+                try {
+                    receipt = manager.finaliseTransactionAsync().join();
+                }catch(CompletionException e) {
+                    // Nothing was charged and the basket is kept so the member can try again
+                    printLine("The sale could not be recorded, please try again or contact one of the TOC's admins");
+                    continue;
+                }
+                for(TOCBasketLine line : receipt.getRejected()) {
+                    printLine("Out of stock, not charged: " + line.getQuantity() + " x " + line.getName());
+                }
                 buying = false;
+            }else if(barcode.equalsIgnoreCase("void")) {
+                waitForScans(pending);
+                manager.voidTransaction();
+                printLine("Transaction voided");
+            }else if(barcode.toLowerCase().startsWith("remove ")) {
+                waitForScans(pending);
+                if(manager.removeItemFromTransaction(barcode.substring(7).trim())) {
+                    printLine("Removed. Total: " + TOCMoney.format(manager.getTransactionTotal()));
+                }else {
+                    printLine("Item is not in this transaction");
+                }
             }else {
-                printLine("Item not in this TOC's database");
+                // Each printout waits for the one before it so they come out in the order of the scans. A scan that
+                // fails prints its own error and does not stop the printouts after it
+                final String scanned = barcode;
+                printed = printed.thenCombine(manager.scanItemAsync(barcode), new BiFunction<Void,TOCScan,Void>() {
+                    public Void apply(Void previous, TOCScan scan) {
+                        printScan(scan);
+                        return null;
+                    }
+                }).handle(new BiFunction<Void,Throwable,Void>() {
+                    public Void apply(Void result, Throwable error) {
+                        if(error != null) {
+                            printLine("Could not scan " + scanned + ", please scan it again");
+                        }
+                        return null;
+                    }
+                });
+                pending.addLast(printed);
+                while(!pending.isEmpty() && (pending.peekFirst().isDone() || pending.size() > MAX_PENDING_SCANS)) {
+                    pending.pollFirst().join();
+                }
             }
         }
     }
     
     /**
-     * A temporary function that prints the user's past transactions
+     * Waits until every scan that is still waiting has been printed
+     * 
+     * @param   pending     the printouts of the scans that are still waiting, oldest first
+     */
+    private void waitForScans(Deque<CompletableFuture<Void>> pending) {
+        while(!pending.isEmpty()) {
+            pending.pollFirst().join();
+        }
+    }
+    
+    /**
+     * Prints what a scan added to the basket
+     * 
+     * @param   scan        the result of the scan
+     */
+    private void printScan(TOCScan scan) {
+        if(scan.isFound()) {
+            printLine("" + scan.getItem().getName() + ": " + TOCMoney.format(scan.getItem().getCost()) + " (Total: " + TOCMoney.format(scan.getTotal()) + ")");
+        }else {
+            printLine("Item not in this TOC's database");
+        }
+    }
+    
+    /**
+     * A temporary function that prints the user's past transactions. Entries are printed as they are read so long
+     * bills do not have to fit in memory
      */
     private void printBill() {
-        printLine(manager.getBill());
+        manager.getBill(null, null, BILL_PAGE_SIZE, new Consumer<TOCBillRow>() {
+            public void accept(TOCBillRow row) {
+                printLine("" + row);
+            }
+        });
+        printLine("Amount owed: " + TOCMoney.format(manager.getAmountOwed()));
+        printLine("");
+    }
+    
+    /**
+     * Asks the manager to record a payment towards a member's bill
+     */
+    private void payBill() {
+        // Check if the user taking the payment is an admin
+        if(manager.getMemberAdmin()) {
+            String input = "";
+            
+            // Ask for pmkeys
+            System.out.print("pmKeys of member paying: ");
+            int pmkeys = 0;
+            input = getInput();
+            try {
+                pmkeys = Integer.valueOf(input);
+            }catch(NumberFormatException e) {
+                pmkeys = 0;
+            }
+            
+            // Ask for the amount
+            System.out.print("Amount paid: ");
+            long amount = 0;
+            input = getInput();
+            try {
+                amount = TOCMoney.parse(input);
+            }catch(NumberFormatException e) {
+                amount = 0;
+            }
+            
+            if(!manager.settleBill(pmkeys, amount)) {
+                printLine("Payment not recorded");
+            }
+            printLine("");
+        }else {
+            printLine("Sorry you must be an admin");
+        }
+    }
+    
+    /**
+     * Asks the manager to check every member's balance against their transactions and prints what it found
+     */
+    private void verifyBalances() {
+        // Check if the user is an admin
+        if(manager.getMemberAdmin()) {
+            List<Integer> corrected = manager.rebuildBalances();
+            for(int pmkeys : corrected) {
+                printLine("Balance corrected: " + pmkeys);
+            }
+            printLine(corrected.size() + " balances corrected");
+            printLine("");
+        }else {
+            printLine("Sorry you must be an admin");
+        }
+    }
+    
+    /**
+     * Prints the sales reports: top sellers, revenue by month, slow movers and what needs ordering
+     */
+    private void printReports() {
+        // Check if the user is an admin
+        if(!manager.getMemberAdmin()) {
+            printLine("Sorry you must be an admin");
+            return;
+        }
+        
+        System.out.print("How many days to look back (press enter for 30): ");
+        int days = 30;
+        try {
+            days = Math.max(1, Integer.valueOf(getInput()));
+        }catch(NumberFormatException e) {
+            days = 30;
+        }
+        
+        printLine("Top sellers in the last " + days + " days:");
+        for(TOCSalesRow row : manager.getTopSellers(days, 10)) {
+            printLine("  " + row);
+        }
+        printLine("Sales by month over the last year:");
+        for(TOCSalesRow row : manager.getRevenue(LocalDate.now().minusMonths(11).withDayOfMonth(1), LocalDate.now(), ChronoUnit.MONTHS)) {
+            printLine("  " + row.getKey() + " - " + row.getQuantity() + " sold - " + TOCMoney.format(row.getRevenue()));
+        }
+        printLine("Slowest movers in the last " + days + " days:");
+        for(TOCStockRow row : manager.getSlowMovers(days, 10)) {
+            printLine("  " + row + " - " + row.getSold() + " sold");
+        }
+        printLine("Items that will run out within a week:");
+        for(TOCStockRow row : manager.getReorderCandidates(days, 7)) {
+            printLine("  " + row + " - order " + row.getReorder(14) + " for two weeks");
+        }
+        printLine("");
+    }
+    
+    /**
+     * Prints how long the TOC has been taking to do things so admins can see why a counter is slow
+     */
+    private void printMetrics() {
+        if(manager.getMemberAdmin()) {
+            printLine(manager.getMetricsReport());
+        }else {
+            printLine("Sorry you must be an admin");
+        }
     }
 }
\ No newline at end of file
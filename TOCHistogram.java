@@ -0,0 +1,144 @@
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counts how long something took in buckets that get wider as the times get longer, the same way an HDR histogram
+ * does. Every power of two is split into 16 buckets so any percentile is within about 6% of the real time, and
+ * recording a time never allocates or locks so it can be used on every scan
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCHistogram {
+    // How many buckets each power of two is split into (as a power of two)
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // Enough buckets for any positive long
+    private static final int BUCKET_COUNT = 64 * SUB_COUNT;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong total;
+    private final AtomicLong max;
+
+    /**
+     * The constructor. Starts with nothing recorded
+     */
+    public TOCHistogram() {
+        buckets = new AtomicLongArray(BUCKET_COUNT);
+        count = new AtomicLong();
+        total = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Records one time
+     *
+     * @param   value           the time to record (negative times are recorded as 0)
+     */
+    public void record(long value) {
+        if(value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long current = max.get();
+        while(value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Works out which bucket a time goes in
+     *
+     * @param   value           the time
+     * @return                  the index of the bucket
+     */
+    private static int bucketOf(long value) {
+        if(value < SUB_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int top = (int) (value >>> (magnitude - SUB_BITS));
+        return (magnitude - SUB_BITS + 1) * SUB_COUNT + top - SUB_COUNT;
+    }
+
+    /**
+     * Works out the largest time that goes in a bucket
+     *
+     * @param   index           the index of the bucket
+     * @return                  the largest time in the bucket
+     */
+    private static long highestIn(int index) {
+        int block = index / SUB_COUNT;
+        int sub = index % SUB_COUNT;
+        if(block == 0) {
+            return index;
+        }
+        int shift = block - 1;
+        return ((long) (SUB_COUNT + sub) << shift) + (1L << shift) - 1;
+    }
+
+    /**
+     * Gets a percentile of the recorded times
+     *
+     * @param   fraction        the percentile wanted (ie. 0.99 for p99)
+     * @return                  the time at that percentile (0 if nothing was recorded)
+     */
+    public long getPercentile(double fraction) {
+        long recorded = count.get();
+        if(recorded == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(fraction * recorded));
+        long seen = 0;
+        for(int i=0; i<BUCKET_COUNT; i++) {
+            seen = seen + buckets.get(i);
+            if(seen >= wanted) {
+                return Math.min(highestIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Get how many times were recorded
+     *
+     * @return                  the number of times recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the average of the recorded times
+     *
+     * @return                  the mean time (0 if nothing was recorded)
+     */
+    public long getMean() {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : total.get() / recorded;
+    }
+
+    /**
+     * Get the longest time recorded
+     *
+     * @return                  the longest time
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Forgets every recorded time
+     */
+    public void reset() {
+        for(int i=0; i<BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
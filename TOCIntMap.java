@@ -0,0 +1,209 @@
+import java.util.*;
+
+/**
+ * A map from int keys (ie. pmkeys) to values that keeps the keys in a plain int array instead of boxing them. Keys
+ * are found by open addressing with linear probing, so a lookup is a couple of array reads with no objects created
+ * along the way. Not thread safe, the owner must lock around it
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCIntMap<V> {
+    // Grow the table once it is this full
+    private static final double MAX_LOAD = 0.5;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * The constructor. Starts with room for a few keys and grows as they are added
+     */
+    public TOCIntMap() {
+        this(16);
+    }
+
+    /**
+     * The constructor
+     *
+     * @param   expected        how many keys the map is expected to hold
+     */
+    public TOCIntMap(int expected) {
+        int capacity = 16;
+        while(capacity * MAX_LOAD < expected) {
+            capacity = capacity * 2;
+        }
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Works out where a key starts looking in the table. The bits are mixed so keys that follow each other do not
+     * end up in one long run
+     *
+     * @param   key             the key
+     * @return                  the first slot to look in
+     */
+    private int slotOf(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Finds the slot that holds a key
+     *
+     * @param   key             the key to find
+     * @return                  the slot of the key or -1 if it is not in the map
+     */
+    private int find(int key) {
+        int slot = slotOf(key);
+        while(values[slot] != null) {
+            if(keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the value stored for a key
+     *
+     * @param   key             the key
+     * @return                  the value or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = find(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * Check if a key is in the map
+     *
+     * @param   key             the key
+     * @return                  a boolean representing if the key is in the map
+     */
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Stores a value for a key, replacing the old value if there was one
+     *
+     * @param   key             the key
+     * @param   value           the value. Can not be null
+     * @return                  the old value or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if(value == null) {
+            throw new IllegalArgumentException("TOCIntMap can not store null values");
+        }
+        int slot = slotOf(key);
+        while(values[slot] != null) {
+            if(keys[slot] == key) {
+                V old = (V) values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if(size > keys.length * MAX_LOAD) {
+            grow();
+        }
+        return null;
+    }
+
+    /**
+     * Takes a key out of the map. The keys after it in its run are moved back so lookups never have to skip over
+     * removed slots
+     *
+     * @param   key             the key
+     * @return                  the value that was stored or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = find(key);
+        if(slot < 0) {
+            return null;
+        }
+        V old = (V) values[slot];
+        values[slot] = null;
+        size--;
+
+        int next = (slot + 1) & mask;
+        while(values[next] != null) {
+            int home = slotOf(keys[next]);
+            // Move the key back if its home slot is not between the gap and where it is now
+            boolean movable = slot <= next ? (home <= slot || home > next) : (home <= slot && home > next);
+            if(movable) {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                values[next] = null;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        return old;
+    }
+
+    /**
+     * Doubles the size of the table and puts every key back in
+     */
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+        for(int i=0; i<oldKeys.length; i++) {
+            if(oldValues[i] != null) {
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Get how many keys are in the map
+     *
+     * @return                  the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Takes every key out of the map
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Gets every key in the map in order from smallest to largest
+     *
+     * @return                  the keys of the map
+     */
+    public int[] keys() {
+        int[] found = new int[size];
+        int next = 0;
+        for(int i=0; i<keys.length; i++) {
+            if(values[i] != null) {
+                found[next] = keys[i];
+                next++;
+            }
+        }
+        Arrays.sort(found);
+        return found;
+    }
+}
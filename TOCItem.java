@@ -7,13 +7,13 @@
 public class TOCItem {
     private String barcode;
     private String name;
-    private double cost;
+    private long cost;
     private int stock;
     
     /**
      * The constructore. Set the item's details initially
      */
-    public TOCItem(String newBarcode, String newName, double newCost, int newStock) {
+    public TOCItem(String newBarcode, String newName, long newCost, int newStock) {
         barcode = newBarcode;
         name = newName;
         cost = newCost;
@@ -26,10 +26,10 @@ public class TOCItem {
      * 
      * @param   itemBarcode     the item's barcode
      * @param   itemName        the item's name
-     * @param   itemCost        the item's cost
+     * @param   itemCost        the item's cost in cents
      * @param   itemStock       the current stock of the item
      */
-    public void updateItem(String itemBarcode, String itemName, double itemCost, int itemStock) {
+    public void updateItem(String itemBarcode, String itemName, long itemCost, int itemStock) {
         barcode = itemBarcode;
         name = itemName;
         cost = itemCost;
@@ -57,9 +57,9 @@ public class TOCItem {
     /**
      * Get the item's cost
      * 
-     * @return                  the item's cost
+     * @return                  the item's cost in cents
      */
-    public double getCost() {
+    public long getCost() {
         return cost;
     }
     
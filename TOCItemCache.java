@@ -0,0 +1,148 @@
+import java.util.*;
+
+/**
+ * Keeps recently scanned items in memory so a scan does not have to go to the database. The cache holds a limited
+ * number of items and throws away the one that was used the longest time ago when it is full. The TOCDatabase is in
+ * charge of keeping the cache up to date whenever it changes an item
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCItemCache {
+    private final int maxSize;
+    private final LinkedHashMap<String,TOCItem> items;
+
+    // How many lookups were answered from memory and how many had to go to the database
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * The constructor. Creates an empty cache
+     *
+     * @param   size            the most items the cache will hold
+     */
+    public TOCItemCache(int size) {
+        maxSize = size;
+        // Ordering by access lets us find the least recently used item quickly
+        items = new LinkedHashMap<String,TOCItem>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,TOCItem> eldest) {
+                if(size() > maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks for an item in the cache
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  a copy of the cached item or null if it is not in the cache
+     */
+    public synchronized TOCItem get(String barcode) {
+        TOCItem item = items.get(barcode);
+        if(item == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(item);
+    }
+
+    /**
+     * Adds or replaces an item in the cache
+     *
+     * @param   item            the item to store
+     */
+    public synchronized void put(TOCItem item) {
+        items.put(item.getBarcode(), copy(item));
+    }
+
+    /**
+     * Changes the stock of a cached item after a sale or delivery. Does nothing if the item is not cached
+     *
+     * @param   barcode         the barcode of the item
+     * @param   change          how much to add to the stock (negative to take stock away)
+     */
+    public synchronized void adjustStock(String barcode, int change) {
+        TOCItem item = items.get(barcode);
+        if(item != null) {
+            item.updateItem(item.getBarcode(), item.getName(), item.getCost(), item.getStock() + change);
+        }
+    }
+
+    /**
+     * Removes an item from the cache so the next lookup reads it from the database again
+     *
+     * @param   barcode         the barcode of the item
+     */
+    public synchronized void invalidate(String barcode) {
+        items.remove(barcode);
+    }
+
+    /**
+     * Empties the cache
+     */
+    public synchronized void clear() {
+        items.clear();
+    }
+
+    /**
+     * Get the most items the cache will hold
+     *
+     * @return                  the size limit of the cache
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the number of items currently in the cache
+     *
+     * @return                  the number of cached items
+     */
+    public synchronized int getSize() {
+        return items.size();
+    }
+
+    /**
+     * Get how many lookups were found in the cache
+     *
+     * @return                  the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get how many lookups were not found in the cache
+     *
+     * @return                  the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get how many items were thrown out to make room for newer ones
+     *
+     * @return                  the number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Copies an item so changes made by the caller do not change the cached version
+     *
+     * @param   item            the item to copy
+     * @return                  the copy
+     */
+    private TOCItem copy(TOCItem item) {
+        return new TOCItem(item.getBarcode(), item.getName(), item.getCost(), item.getStock());
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Where the TOC keeps the items it sells. The function that calls any of the changes should check if the member
+ * that requests them has permission
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public interface TOCItemRepository {
+    /**
+     * Check if an item exists
+     *
+     * @param   barcode         the barcode of the item to search for
+     * @return                  a boolean representing if the item exists
+     */
+    public boolean itemExists(String barcode);
+
+    /**
+     * Updates the cost of an item
+     *
+     * @param   cost            the updated cost of the item in cents
+     * @param   barcode         the barcode of the updated item
+     */
+    public void updateCost(long cost, String barcode);
+
+    /**
+     * Removes an item
+     *
+     * @param   barcode         the barcode of the item to be removed
+     */
+    public void removeItem(String barcode);
+
+    /**
+     * Gets the name of the item that matches the barcode
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  the name of the item or "Item Not Found"
+     */
+    public String getItemName(String barcode);
+
+    /**
+     * Gets the cost of the item that matches the barcode
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  the cost of the item in cents (0 if it was not found)
+     */
+    public long getItemCost(String barcode);
+
+    /**
+     * Gets the stock of the item that matches the barcode
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  the stock of the item (0 if it was not found)
+     */
+    public int getItemStock(String barcode);
+
+    /**
+     * Gets every detail of an item
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  the item that matches the barcode or null if the item was not found
+     */
+    public TOCItem getItem(String barcode);
+
+    /**
+     * Adds a new item. Nothing happens if the barcode is already taken
+     *
+     * @param   barcode         the item's barcode
+     * @param   name            the item's name
+     * @param   cost            the item's cost in cents
+     * @param   stock           the item's stock
+     */
+    public void addItem(String barcode, String name, long cost, int stock);
+
+    /**
+     * Adds a group of items at once. Items whose barcode is already taken get the new name, cost and stock
+     *
+     * @param   items           the items to add or update
+     */
+    public void upsertItems(List<TOCItem> items);
+
+    /**
+     * Changes the cost of a group of items at once. The percentage is applied first and rounded to the cent, then the
+     * amount is added. The new cost is never below 0
+     *
+     * @param   barcodes        the barcodes of the items to change
+     * @param   percent         the percentage to change the cost by (eg. 10 for 10% dearer, -5 for 5% cheaper, 0 for none)
+     * @param   amount          the cents to add to the cost (negative to take off)
+     * @return                  the barcodes that were not found. Every other item was changed
+     */
+    public List<String> changeCosts(List<String> barcodes, double percent, long amount);
+
+    /**
+     * Adds stock to a group of items at once, such as when a delivery arrives. A negative quantity takes stock away
+     * (eg. after a stocktake) but never below 0
+     *
+     * @param   delivery        how many of each barcode to add
+     * @return                  the barcodes that were not found. Every other item was changed
+     */
+    public List<String> adjustStock(Map<String,Integer> delivery);
+
+    /**
+     * Hands every item to the visitor in barcode order without holding them all in memory
+     *
+     * @param   visitor         called with every item
+     */
+    public void forEachItem(Consumer<TOCItem> visitor);
+}
@@ -0,0 +1,375 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Records every finalised basket in a journal file before it goes into the database. A checkout reserves the stock
+ * in memory, adds one entry to the end of the journal and waits for it to reach the disk, which is one short
+ * sequential write instead of several SQLite commits. A background thread then copies the entries into the
+ * TRANSACTIONS table in groups, and the journal is emptied whenever everything in it has been copied.
+ *
+ * Every entry ends with a CRC32 of its contents. When the TOC starts, entries that were only half written when it
+ * stopped are cut off (they were never confirmed to the member), and any whole entries the database has not seen yet
+ * are copied in before the first checkout, so no confirmed sale is ever lost or recorded twice.
+ *
+ * Entry layout: length (int), contents, CRC32 of the contents (int). Contents: format (int, 1), seq (long), pmkeys
+ * (int), time in milliseconds since 1970 (long), number of lines (int) and for each line its barcode, name, cost in
+ * cents (long) and quantity (int). Text is written as modified UTF-8 the same way DataOutputStream writes it. A whole
+ * entry with any other format stops the TOC from starting rather than being thrown away, as it may hold sales
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCJournal implements TOCCheckout {
+    // The most entries copied into the database in one commit
+    private static final int REPLAY_BATCH = 256;
+    // An entry longer than this can only be a damaged length
+    private static final int MAX_ENTRY_BYTES = 16 * 1024 * 1024;
+    // Written at the start of every entry's contents
+    private static final int ENTRY_FORMAT = 1;
+
+    private final TOCDatabase db;
+    private final FileChannel channel;
+    private final BlockingQueue<TOCJournalEntry> replay;
+    private final Thread replayer;
+    private final TOCMetrics metrics;
+    // Guards the end of the file and the entry numbers
+    private final Object appendLock = new Object();
+    private long nextSeq;
+    // Set if a write failed part way and the end of the file could not be put back, so nothing can follow it
+    private boolean damaged;
+    private volatile long appliedSeq;
+    private volatile boolean running = true;
+
+    /**
+     * The constructor. Recovers whatever the journal holds from the last time the TOC ran and starts copying new
+     * entries into the database
+     *
+     * @param   database        the database the entries are copied into
+     * @param   file            the path of the journal file. It is created if it does not exist
+     */
+    public TOCJournal(TOCDatabase database, String file) {
+        db = database;
+        metrics = TOCMetrics.getInstance();
+        replay = new LinkedBlockingQueue<TOCJournalEntry>();
+
+        FileChannel opened = null;
+        try {
+            opened = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                      StandardOpenOption.WRITE);
+            recover(opened);
+        }catch(Exception e) {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+            System.err.println("Error at TOCJournal(TOCDatabase database, String file)");
+            System.err.println("Something went wrong, please contact one of the TOC's admins");
+            System.exit(0);
+        }
+        channel = opened;
+
+        replayer = new Thread("toc-journal") {
+            public void run() {
+                replay();
+            }
+        };
+        replayer.setDaemon(true);
+        replayer.start();
+    }
+
+    // ------------------------------------------------- Journal Functions -------------------------------------------------
+    /**
+     * Reserves the stock of a basket and adds it to the journal. The sale is safe once this returns, even though it
+     * may not be in the database yet. A basket that can not be written (eg. the journal has been shut down or the disk
+     * is full) is not sold. Its stock is put back and the future completes with the error, the same way the
+     * TOCWriteQueue rejects a basket, so the member can try again and the TOC keeps running
+     *
+     * @param   pmkeys          the pmkeys of the member buying the basket
+     * @param   basket          the items being bought. A copy is taken so the basket can be cleared straight away
+     * @return                  an already completed future with how many of each line of the basket were sold
+     */
+    public CompletableFuture<int[]> submit(int pmkeys, TOCBasket basket) {
+        long timer = metrics.start();
+        if(!running) {
+            return rejected(new IllegalStateException("The journal has been shut down"));
+        }
+        TOCPurchase purchase = new TOCPurchase(pmkeys, basket);
+        int[] sold = db.reserveBasket(purchase);
+
+        List<TOCBasketLine> lines = new ArrayList<TOCBasketLine>();
+        for(int i=0; i<sold.length; i++) {
+            TOCBasketLine line = purchase.getLines().get(i);
+            if(sold[i] > 0) {
+                lines.add(new TOCBasketLine(line.getBarcode(), line.getName(), line.getCost(), sold[i]));
+            }
+        }
+
+        if(!lines.isEmpty()) {
+            try {
+                synchronized(appendLock) {
+                    if(!running || damaged) {
+                        throw new IllegalStateException("The journal has been shut down");
+                    }
+                    TOCJournalEntry entry = new TOCJournalEntry(nextSeq, pmkeys, TOCTime.now(), lines);
+                    append(encode(entry));
+                    nextSeq++;
+                    // Queued while still holding the lock so entries are copied in the order they were numbered
+                    replay.add(entry);
+                }
+            }catch(Exception e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCJournal submit(int pmkeys, TOCBasket basket)");
+                db.releaseBasket(purchase, sold);
+                metrics.increment("journal.rejected");
+                return rejected(e);
+            }
+        }
+
+        metrics.stop("journal.append", timer);
+        return CompletableFuture.completedFuture(sold);
+    }
+
+    /**
+     * Writes one entry to the end of the journal and waits for it to reach the disk. If the write fails part way the
+     * file is cut back to where the entry started, so the entries after it can still be recovered. Must be called
+     * while holding the append lock
+     *
+     * @param   buffer          the encoded entry
+     */
+    private void append(ByteBuffer buffer) throws IOException {
+        long end = channel.position();
+        try {
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }catch(IOException e) {
+            try {
+                channel.truncate(end);
+                channel.position(end);
+            }catch(IOException cut) {
+                damaged = true;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Makes the reply to a basket that was not written
+     *
+     * @param   error           why the basket was not written
+     * @return                  a future that has already failed with the error
+     */
+    private static CompletableFuture<int[]> rejected(Throwable error) {
+        CompletableFuture<int[]> result = new CompletableFuture<int[]>();
+        result.completeExceptionally(error);
+        return result;
+    }
+
+    /**
+     * Copies every entry that is still waiting into the database and closes the journal
+     */
+    public void shutdown() {
+        synchronized(appendLock) {
+            if(!running) {
+                return;
+            }
+            running = false;
+        }
+        // The replay thread is not interrupted as that would close the file channel under it. It sees running is
+        // false within one poll
+        try {
+            replayer.join();
+            channel.close();
+        }catch(Exception e) {
+            // The journal is closing so there is nothing else to do with it. Anything left is copied next time
+        }
+    }
+
+    /**
+     * Run by the replay thread. Copies entries into the database in groups and empties the journal when it has
+     * caught up
+     */
+    private void replay() {
+        List<TOCJournalEntry> group = new ArrayList<TOCJournalEntry>();
+        while(running || !replay.isEmpty()) {
+            try {
+                TOCJournalEntry first = replay.poll(100, TimeUnit.MILLISECONDS);
+                if(first != null) {
+                    group.add(first);
+                }
+            }catch(InterruptedException e) {
+                // Whatever is left is copied before the thread stops
+                running = false;
+            }
+            replay.drainTo(group, REPLAY_BATCH - group.size());
+            if(group.isEmpty()) {
+                continue;
+            }
+
+            db.applyJournal(group);
+            appliedSeq = group.get(group.size() - 1).getSeq();
+            group.clear();
+            compact();
+        }
+    }
+
+    /**
+     * Empties the journal file if every entry in it has been copied into the database. If the TOC stops before the
+     * file is really emptied the old entries are skipped when it starts as the database already has them
+     */
+    private void compact() {
+        synchronized(appendLock) {
+            if(appliedSeq != nextSeq - 1 || !replay.isEmpty()) {
+                return;
+            }
+            try {
+                channel.truncate(0);
+                metrics.increment("journal.compactions");
+            }catch(IOException e) {
+                // The entries stay in the file and are skipped next time
+                System.err.println("Journal not emptied: " + e.getMessage());
+            }
+        }
+    }
+
+    // ------------------------------------------------- Recovery Functions -------------------------------------------------
+    /**
+     * Reads the journal left by the last run. A half written entry at the end is cut off, and whole entries the
+     * database does not have yet are copied in before anything else happens
+     *
+     * @param   file            the open journal file
+     */
+    private void recover(FileChannel file) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) file.size());
+        file.position(0);
+        while(data.hasRemaining() && file.read(data) >= 0) {
+            // Keep reading until the whole file is in memory
+        }
+        data.flip();
+
+        List<TOCJournalEntry> entries = new ArrayList<TOCJournalEntry>();
+        int good = 0;
+        while(true) {
+            TOCJournalEntry entry = decode(data);
+            if(entry == null) {
+                break;
+            }
+            entries.add(entry);
+            good = data.position();
+        }
+        if(good < file.size()) {
+            System.err.println("Journal: cut off " + (file.size() - good) + " bytes of an unfinished entry");
+            file.truncate(good);
+        }
+
+        long lastApplied = db.getLastJournalSeq();
+        long lastSeq = lastApplied;
+        List<TOCJournalEntry> missing = new ArrayList<TOCJournalEntry>();
+        for(TOCJournalEntry entry : entries) {
+            if(entry.getSeq() > lastApplied) {
+                missing.add(entry);
+            }
+            lastSeq = Math.max(lastSeq, entry.getSeq());
+        }
+        if(!missing.isEmpty()) {
+            System.out.println("Journal: recovering " + missing.size() + " sales");
+            db.holdJournalStock(missing);
+            db.applyJournal(missing);
+        }
+
+        // Everything is in the database now so the journal can start again from empty
+        file.truncate(0);
+        file.force(false);
+        nextSeq = lastSeq + 1;
+        appliedSeq = lastSeq;
+    }
+
+    /**
+     * Turns an entry into the bytes written to the journal
+     *
+     * @param   entry           the entry
+     * @return                  the bytes of the entry ready to be written
+     */
+    private static ByteBuffer encode(TOCJournalEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(ENTRY_FORMAT);
+        out.writeLong(entry.getSeq());
+        out.writeInt(entry.getPmKeys());
+        out.writeLong(entry.getTime());
+        out.writeInt(entry.getLines().size());
+        for(TOCBasketLine line : entry.getLines()) {
+            out.writeUTF(line.getBarcode());
+            out.writeUTF(line.getName());
+            out.writeLong(line.getCost());
+            out.writeInt(line.getQuantity());
+        }
+        out.close();
+        byte[] contents = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(contents, 0, contents.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(contents.length + 8);
+        buffer.putInt(contents.length);
+        buffer.put(contents);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads the next entry out of the journal
+     *
+     * @param   data            the journal, positioned at the start of the entry
+     * @return                  the entry or null if there are no more whole entries
+     * @throws  IOException     if a whole entry was written in a format this TOC can not read
+     */
+    private static TOCJournalEntry decode(ByteBuffer data) throws IOException {
+        int start = data.position();
+        if(data.remaining() < 4) {
+            return null;
+        }
+        int length = data.getInt();
+        if(length <= 0 || length > MAX_ENTRY_BYTES || data.remaining() < length + 4) {
+            data.position(start);
+            return null;
+        }
+
+        byte[] contents = new byte[length];
+        data.get(contents);
+        int expected = data.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(contents, 0, contents.length);
+        if((int) crc.getValue() != expected) {
+            data.position(start);
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents));
+        int format = length < 4 ? 0 : in.readInt();
+        if(format != ENTRY_FORMAT) {
+            throw new IOException("The journal entry at byte " + start + " is in format " + format + ", which this TOC can not read");
+        }
+        try {
+            long seq = in.readLong();
+            int pmkeys = in.readInt();
+            long time = in.readLong();
+            int count = in.readInt();
+            List<TOCBasketLine> lines = new ArrayList<TOCBasketLine>();
+            for(int i=0; i<count; i++) {
+                String barcode = in.readUTF();
+                String name = in.readUTF();
+                long cost = in.readLong();
+                lines.add(new TOCBasketLine(barcode, name, cost, in.readInt()));
+            }
+            return new TOCJournalEntry(seq, pmkeys, time, lines);
+        }catch(IOException e) {
+            data.position(start);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.*;
+
+/**
+ * One basket in the journal. Holds what was actually sold (not what was scanned) and when, so copying it into the
+ * database never has to check stock again
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCJournalEntry {
+    private final long seq;
+    private final int pmKeys;
+    private final long time;
+    private final List<TOCBasketLine> lines;
+
+    /**
+     * The constructor
+     *
+     * @param   entrySeq        the number of the entry. Every entry has a higher number than the one before it
+     * @param   memberPmKeys    the pmKeys of the member who bought the basket
+     * @param   entryTime       when the basket was bought (milliseconds since 1970)
+     * @param   soldLines       the lines that were sold with how many of each. Lines that sold none are left out
+     */
+    public TOCJournalEntry(long entrySeq, int memberPmKeys, long entryTime, List<TOCBasketLine> soldLines) {
+        seq = entrySeq;
+        pmKeys = memberPmKeys;
+        time = entryTime;
+        lines = Collections.unmodifiableList(new ArrayList<TOCBasketLine>(soldLines));
+    }
+
+    // ------------------------------------------- Getters and Setters -------------------------------------------
+    /**
+     * Get the number of the entry
+     *
+     * @return                  the entry's number
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * Get the pmKeys of the member who bought the basket
+     *
+     * @return                  the member's pmKeys
+     */
+    public int getPmKeys() {
+        return pmKeys;
+    }
+
+    /**
+     * Get when the basket was bought
+     *
+     * @return                  the milliseconds since 1970
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Get the lines that were sold
+     *
+     * @return                  the lines. The list can not be changed
+     */
+    public List<TOCBasketLine> getLines() {
+        return lines;
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Slows down guessing pmkeys. Logging in only takes a pmkeys, so a terminal or browser that gets it wrong too many
+ * times in a row is turned away for a while before it can try again. Failures are counted by the address the login
+ * came from and start again once that address logs in properly or has been quiet for the lockout time. Used by the
+ * TOCServer and the TOCWebServer
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCLoginThrottle {
+    // How many logins in a row can fail from one address, and how long it is then turned away for
+    public static final int MAX_FAILURES = 5;
+    public static final long LOCKOUT_MILLIS = 60 * 1000;
+
+    private final ConcurrentHashMap<String,Failures> failures;
+    private final String name;
+    private final TOCMetrics metrics;
+
+    /**
+     * The logins that failed in a row from one address
+     */
+    private static class Failures {
+        private int count;
+        private long last;
+    }
+
+    /**
+     * The constructor. Starts with no failures
+     *
+     * @param   metricsName     what the failures are counted as in the metrics (eg. web gives web.login.failed)
+     */
+    public TOCLoginThrottle(String metricsName) {
+        failures = new ConcurrentHashMap<String,Failures>();
+        name = metricsName;
+        metrics = TOCMetrics.getInstance();
+    }
+
+    /**
+     * Checks if an address has to wait before it can try to log in again
+     *
+     * @param   from            the address of the terminal or browser
+     * @return                  a boolean representing if the address has failed too many logins in a row lately
+     */
+    public boolean isLockedOut(String from) {
+        Failures failed = failures.get(from);
+        if(failed == null) {
+            return false;
+        }
+        boolean locked;
+        synchronized(failed) {
+            locked = failed.count >= MAX_FAILURES && System.currentTimeMillis() - failed.last < LOCKOUT_MILLIS;
+        }
+        if(locked) {
+            metrics.increment(name + ".login.lockedOut");
+        }
+        return locked;
+    }
+
+    /**
+     * Counts a failed login from an address. The count starts again once the address has been quiet for the lockout
+     * time, and the counts of quiet addresses are thrown away so they do not build up
+     *
+     * @param   from            the address of the terminal or browser
+     */
+    public void failed(String from) {
+        long now = System.currentTimeMillis();
+        Iterator<Failures> old = failures.values().iterator();
+        while(old.hasNext()) {
+            Failures failed = old.next();
+            synchronized(failed) {
+                if(now - failed.last > LOCKOUT_MILLIS) {
+                    old.remove();
+                }
+            }
+        }
+
+        failures.putIfAbsent(from, new Failures());
+        Failures failed = failures.get(from);
+        if(failed == null) {
+            return;
+        }
+        synchronized(failed) {
+            if(now - failed.last > LOCKOUT_MILLIS) {
+                failed.count = 0;
+            }
+            failed.count++;
+            failed.last = now;
+        }
+        metrics.increment(name + ".login.failed");
+    }
+
+    /**
+     * Forgets the failures of an address that has logged in
+     *
+     * @param   from            the address of the terminal or browser
+     */
+    public void succeeded(String from) {
+        failures.remove(from);
+    }
+}
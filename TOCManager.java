@@ -1,50 +1,256 @@
+import java.io.*;
+import java.time.*;
+import java.time.temporal.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
 /**
  * The "Driver" of the program. Provides the bridge between the Interface, Core and Database components of the TOC
  * 
+ * Each manager holds the member, item and basket of one counter. The server gives every terminal its own manager
+ * over one shared TOCStorage, and every function is synchronized so a terminal's requests never see each other's
+ * half finished changes
+ * 
+ * Scans and checkouts can also be handed over with the Async functions, which return straight away with a future. The
+ * lookups run on a shared pool of threads at the same time, but each one is applied to the basket in the order it was
+ * handed over, so a fast scanner never has to wait for the database before scanning the next item
+ * 
  * @author  Pedro Alves
  * @version 23 August 2016
  */
 public class TOCManager {
-    private TOCDatabase db;
+    private TOCStorage db;
     private TOCMember member;
     private TOCItem item;
-    private TOCItem[] transactions;
-    
-    // Counts how many items are currently being processed in the transaction
-    private int transactionCount = 0;
+    private TOCBasket basket;
+    // Records finalised baskets instead of writing them straight to the storage (null to write them straight away)
+    private TOCCheckout writes;
+    // Times every operation so we can see where a slow counter spends its time
+    private TOCMetrics metrics;
+    // Runs the lookups and checkouts of the Async functions for every manager. The threads are daemons so nothing has
+    // to shut it down
+    private static final ExecutorService ASYNC = TOCThreads.newRequestExecutor("toc-async");
+    // The last scan or checkout handed to an Async function. Each one waits for the one before it so the basket
+    // changes in the order they were handed over
+    private CompletableFuture<Void> lastAsync = CompletableFuture.completedFuture(null);
     
     /**
      * The constructor. Will set up the TOCDatabase object which will allow us to communicate with the SQL database
      */
     public TOCManager() {
-        db = new TOCDatabase();
+        this(new TOCDatabase());
+    }
+    
+    /**
+     * The constructor. Uses a database that has already been set up
+     * 
+     * @param   database    the storage the manager will read from and write to (ie. a TOCDatabase)
+     */
+    public TOCManager(TOCStorage database) {
+        this(database, null);
+    }
+    
+    /**
+     * The constructor. Uses a database that has already been set up and hands finalised baskets to a checkout (ie. a
+     * TOCWriteQueue so they can share a commit with other terminals' baskets, or a TOCJournal)
+     * 
+     * @param   database    the storage the manager will read from and write to (ie. a TOCDatabase)
+     * @param   queue       what finalised baskets are handed to (null to write baskets straight away)
+     */
+    public TOCManager(TOCStorage database, TOCCheckout queue) {
+        db = database;
+        writes = queue;
+        metrics = TOCMetrics.getInstance();
         member = new TOCMember(0,"No Member",false);
-        item = new TOCItem("0","No Item", 0.0, 0);
-        transactions = new TOCItem[30];
+        item = new TOCItem("0","No Item", 0, 0);
+        basket = new TOCBasket();
         
         // Call to create the database
         //db.firstSetup();
     }
 
     /**
-     * Adds the current item to the transactions list
+     * Records any baskets the checkout is still holding and closes the connections to the database. Call this before
+     * the program exits. When the database is shared with other managers only call it once they are all finished
+     */
+    public synchronized void shutdown() {
+        if(writes != null) {
+            writes.shutdown();
+        }
+        db.close();
+    }
+    
+    /**
+     * Adds the current item to the transactions list. The item's cost is fixed at what it is now
+     */
+    public synchronized void addItemToTransaction() {
+        long timer = metrics.start();
+        basket.add(item);
+        metrics.stop("manager.addItemToTransaction", timer);
+    }
+    
+    /**
+     * Takes one of an item out of the transactions list
+     * 
+     * @param   barcode     the barcode of the item to take out
+     * @return              a boolean representing if the item was in the transaction
+     */
+    public synchronized boolean removeItemFromTransaction(String barcode) {
+        long timer = metrics.start();
+        boolean removed = basket.remove(barcode);
+        
+        metrics.stop("manager.removeItemFromTransaction", timer);
+        return removed;
+    }
+    
+    /**
+     * Voids the current transaction by removing every item from it
+     */
+    public synchronized void voidTransaction() {
+        basket.clear();
+    }
+    
+    /**
+     * Get the cost of everything in the current transaction
+     * 
+     * @return              the running total of the transaction in cents
+     */
+    public synchronized long getTransactionTotal() {
+        return basket.getTotal();
+    }
+    
+    /**
+     * Get how many items are in the current transaction
+     * 
+     * @return              the number of items scanned
+     */
+    public synchronized int getTransactionCount() {
+        return basket.getItemCount();
+    }
+    
+    /**
+     * Get the lines of the current transaction
+     * 
+     * @return              a copy of every line in the order they were first scanned
      */
-    public void addItemToTransaction() {
-        transactions[transactionCount] = item;
-        transactionCount++;
+    public synchronized List<TOCBasketLine> getTransactionLines() {
+        List<TOCBasketLine> lines = new ArrayList<TOCBasketLine>();
+        for(TOCBasketLine line : basket.getLines()) {
+            lines.add(new TOCBasketLine(line.getBarcode(), line.getName(), line.getCost(), line.getQuantity()));
+        }
+        return lines;
     }
     
     /**
-     * Finalises the current transaction and stores the information in the database
+     * Finalises the current transaction and stores the information in the database. The whole basket is sent to the
+     * database at once so it is saved with a single commit
+     * 
+     * @return              what was charged and the items that could not be sold because they ran out of stock
+     * @throws  CompletionException if the checkout could not record the sale (eg. it has been shut down). Nothing is
+     *                      charged and the basket is kept
      */
-    public void finaliseTransaction() {
-        for(int i=0; i<transactions.length; i++) {
-            if(transactions[i] != null) {
-                db.addTransaction(member.getPmKeys(), transactions[i].getBarcode());
-                transactions[i] = null;
+    public synchronized TOCReceipt finaliseTransaction() {
+        long timer = metrics.start();
+        List<TOCBasketLine> lines = new ArrayList<TOCBasketLine>(basket.getLines());
+        int[] sold;
+        if(writes != null) {
+            // Waits until the sale is safe (ie. committed with its group or written to the journal)
+            sold = writes.submit(member.getPmKeys(), basket).join();
+        }else {
+            sold = db.addTransactions(member.getPmKeys(), basket);
+        }
+        basket.clear();
+        
+        List<TOCBasketLine> charged = new ArrayList<TOCBasketLine>();
+        List<TOCBasketLine> rejected = new ArrayList<TOCBasketLine>();
+        for(int i=0; i<lines.size(); i++) {
+            TOCBasketLine line = lines.get(i);
+            if(sold[i] > 0) {
+                charged.add(new TOCBasketLine(line.getBarcode(), line.getName(), line.getCost(), sold[i]));
+            }
+            if(sold[i] < line.getQuantity()) {
+                rejected.add(new TOCBasketLine(line.getBarcode(), line.getName(), line.getCost(), line.getQuantity() - sold[i]));
             }
         }
-        transactionCount = 0;
+        
+        metrics.stop("manager.finaliseTransaction", timer);
+        return new TOCReceipt(charged, rejected);
+    }
+    
+    /**
+     * Looks up an item without waiting for the storage. Does not change the current item or the basket
+     * 
+     * @param   barcode     the barcode of the item
+     * @return              completes with the item or null if it was not found
+     */
+    public CompletableFuture<TOCItem> lookupItemAsync(final String barcode) {
+        return CompletableFuture.supplyAsync(new Supplier<TOCItem>() {
+            public TOCItem get() {
+                long timer = metrics.start();
+                TOCItem found = db.getItem(barcode);
+                metrics.stop("manager.lookupItemAsync", timer);
+                return found;
+            }
+        }, ASYNC);
+    }
+    
+    /**
+     * Scans an item into the basket without waiting for the storage. The item is looked up straight away, at the
+     * same time as any other scans that are still waiting, but it only joins the basket once every scan handed over
+     * before it has
+     * 
+     * @param   barcode     the barcode that was scanned
+     * @return              completes with what the scan did once the item is in the basket (or was not found)
+     */
+    public synchronized CompletableFuture<TOCScan> scanItemAsync(final String barcode) {
+        final long timer = metrics.start();
+        CompletableFuture<TOCScan> scan = lastAsync.thenCombine(lookupItemAsync(barcode), new BiFunction<Void,TOCItem,TOCScan>() {
+            public TOCScan apply(Void previous, TOCItem found) {
+                synchronized(TOCManager.this) {
+                    if(found != null) {
+                        item.updateItem(found.getBarcode(),found.getName(),found.getCost(),found.getStock());
+                        basket.add(found);
+                    }
+                    metrics.stop("manager.scanItemAsync", timer);
+                    return new TOCScan(barcode, found, basket.getTotal(), basket.getItemCount());
+                }
+            }
+        });
+        lastAsync = settled(scan);
+        return scan;
+    }
+    
+    /**
+     * Finalises the current transaction without waiting for it to be recorded. Every scan handed to scanItemAsync
+     * before this is in the basket first, and scans handed over after it go into the next basket
+     * 
+     * @return              completes with what was charged and the items that could not be sold once the sale is
+     *                      recorded
+     */
+    public synchronized CompletableFuture<TOCReceipt> finaliseTransactionAsync() {
+        CompletableFuture<TOCReceipt> checkout = lastAsync.thenApplyAsync(new Function<Void,TOCReceipt>() {
+            public TOCReceipt apply(Void previous) {
+                return finaliseTransaction();
+            }
+        }, ASYNC);
+        lastAsync = settled(checkout);
+        return checkout;
+    }
+    
+    /**
+     * Makes a future that completes when another one does, whether it worked or not, so one failed scan does not
+     * stop the ones after it
+     * 
+     * @param   future      the scan or checkout to wait for
+     * @return              completes with null once the future is done
+     */
+    private static CompletableFuture<Void> settled(CompletableFuture<?> future) {
+        return future.handle(new BiFunction<Object,Throwable,Void>() {
+            public Void apply(Object result, Throwable error) {
+                return null;
+            }
+        });
     }
     
     /**
@@ -52,38 +258,327 @@ public class TOCManager {
      * 
      * @return              A string representation of the bill
      */
-    public String getBill() {
+    public synchronized String getBill() {
+        long timer = metrics.start();
         String bill = db.findTransactions(getMemberPmKeys());
         
+        metrics.stop("manager.getBill", timer);
         return bill;
     }
     
     /**
-     * Handle a new user
+     * Reads the current member's tab one entry at a time without holding the whole tab in memory
+     * 
+     * @param   from        the earliest purchase to include (null for no limit)
+     * @param   to          the purchase time to stop before (null for no limit)
+     * @param   pageSize    how many entries to read from the database at a time
+     * @param   visitor     called with every entry of the tab in the order they were bought
+     */
+    public synchronized void getBill(LocalDateTime from, LocalDateTime to, int pageSize, Consumer<TOCBillRow> visitor) {
+        long timer = metrics.start();
+        db.forEachTransaction(getMemberPmKeys(), from, to, pageSize, visitor);
+        metrics.stop("manager.getBill", timer);
+    }
+    
+    /**
+     * Reads one page of the current member's tab
+     * 
+     * @param   from        the earliest purchase to include (null for no limit)
+     * @param   to          the purchase time to stop before (null for no limit)
+     * @param   after       the last entry of the previous page (null for the first page)
+     * @param   pageSize    the most entries to return
+     * @return              the entries of the page in the order they were bought
+     */
+    public synchronized List<TOCBillRow> getBillPage(LocalDateTime from, LocalDateTime to, TOCBillRow after, int pageSize) {
+        long timer = metrics.start();
+        List<TOCBillRow> page = db.findTransactions(getMemberPmKeys(), from, to, after, pageSize);
+        
+        metrics.stop("manager.getBillPage", timer);
+        return page;
+    }
+    
+    /**
+     * Reads one page of the current member's tab from the latest entry back
+     * 
+     * @param   before      the last entry of the previous page (null for the first page, which ends with the latest
+     *                      entry)
+     * @param   pageSize    the most entries to return
+     * @return              the entries of the page, newest first
+     */
+    public synchronized List<TOCBillRow> getLatestBillPage(TOCBillRow before, int pageSize) {
+        long timer = metrics.start();
+        List<TOCBillRow> page = db.findLatestTransactions(getMemberPmKeys(), before, pageSize);
+        
+        metrics.stop("manager.getLatestBillPage", timer);
+        return page;
+    }
+    
+    /**
+     * Get how much the current member owes without reading their whole tab
+     * 
+     * @return              the current member's balance in cents
+     */
+    public synchronized long getAmountOwed() {
+        long timer = metrics.start();
+        long owed = db.getBalance(getMemberPmKeys());
+        
+        metrics.stop("manager.getAmountOwed", timer);
+        return owed;
+    }
+    
+    /**
+     * Records a payment towards a member's tab. Only admins can take payments
+     * 
+     * @param   pmKeys      the pmKeys of the member paying
+     * @param   amount      how much was paid in cents
+     * @return              a boolean representing if the payment was recorded
+     */
+    public synchronized boolean settleBill(int pmKeys, long amount) {
+        long timer = metrics.start();
+        if(getMemberAdmin() && amount > 0) {
+            db.settleBalance(pmKeys, amount);
+            metrics.stop("manager.settleBill", timer);
+            return true;
+        }
+        metrics.stop("manager.settleBill", timer);
+        return false;
+    }
+    
+    /**
+     * Gets what every member owes for the end of month settlement. Only admins can see this
+     * 
+     * @return              every non zero balance in cents stored by pmKeys (empty if the current member is not an admin)
+     */
+    public synchronized Map<Integer,Long> getBalances() {
+        long timer = metrics.start();
+        Map<Integer,Long> balances = new LinkedHashMap<Integer,Long>();
+        if(getMemberAdmin()) {
+            balances = db.getBalances();
+        }
+        
+        metrics.stop("manager.getBalances", timer);
+        return balances;
+    }
+    
+    /**
+     * Checks every stored balance against the members' transactions and corrects the wrong ones. Only admins can
+     * do this
+     * 
+     * @return              the pmKeys of every member whose balance had to be corrected
+     */
+    public synchronized List<Integer> rebuildBalances() {
+        long timer = metrics.start();
+        List<Integer> corrected = new ArrayList<Integer>();
+        if(getMemberAdmin()) {
+            corrected = db.verifyBalances(true);
+        }
+        
+        metrics.stop("manager.rebuildBalances", timer);
+        return corrected;
+    }
+    
+    /**
+     * Gets the items that sold the most over the last few days. Only admins can see this
+     * 
+     * @param   days        how many days up to today to look at
+     * @param   limit       the most items to return
+     * @return              the items with the best seller first (empty if the current member is not an admin)
+     */
+    public synchronized List<TOCSalesRow> getTopSellers(int days, int limit) {
+        long timer = metrics.start();
+        List<TOCSalesRow> rows = new ArrayList<TOCSalesRow>();
+        if(getMemberAdmin()) {
+            rows = db.getTopSellers(LocalDate.now().minusDays(days - 1), LocalDate.now(), limit);
+        }
+        metrics.stop("manager.getTopSellers", timer);
+        return rows;
+    }
+    
+    /**
+     * Gets how much was sold in each day, month or year between two days. Only admins can see this
+     * 
+     * @param   from        the first day (inclusive)
+     * @param   to          the last day (inclusive)
+     * @param   period      DAYS, MONTHS or YEARS
+     * @return              one row for every period that had sales (empty if the current member is not an admin)
+     */
+    public synchronized List<TOCSalesRow> getRevenue(LocalDate from, LocalDate to, ChronoUnit period) {
+        long timer = metrics.start();
+        List<TOCSalesRow> rows = new ArrayList<TOCSalesRow>();
+        if(getMemberAdmin()) {
+            rows = db.getRevenue(from, to, period);
+        }
+        metrics.stop("manager.getRevenue", timer);
+        return rows;
+    }
+    
+    /**
+     * Gets how much the current member spent in each of the last few months
+     * 
+     * @param   months      how many months up to this one to look at
+     * @return              one row for every month the member bought something, oldest first
+     */
+    public synchronized List<TOCSalesRow> getSpending(int months) {
+        long timer = metrics.start();
+        List<TOCSalesRow> rows = db.getMemberSpending(getMemberPmKeys(), LocalDate.now().minusMonths(months - 1), LocalDate.now());
+        metrics.stop("manager.getSpending", timer);
+        return rows;
+    }
+    
+    /**
+     * Gets the items in stock that sold the least over the last few days. Only admins can see this
+     * 
+     * @param   days        how many days up to today to look at
+     * @param   limit       the most items to return
+     * @return              the items with the slowest first (empty if the current member is not an admin)
+     */
+    public synchronized List<TOCStockRow> getSlowMovers(int days, int limit) {
+        long timer = metrics.start();
+        List<TOCStockRow> rows = new ArrayList<TOCStockRow>();
+        if(getMemberAdmin()) {
+            rows = db.getSlowMovers(LocalDate.now().minusDays(days - 1), LocalDate.now(), limit);
+        }
+        metrics.stop("manager.getSlowMovers", timer);
+        return rows;
+    }
+    
+    /**
+     * Gets the items that will run out within a number of days at the speed they have been selling. Only admins can
+     * see this
+     * 
+     * @param   days        how many days up to today the selling speed is worked out from
+     * @param   coverDays   how many days the stock should last
+     * @return              the items that will run out first at the top (empty if the current member is not an admin)
+     */
+    public synchronized List<TOCStockRow> getReorderCandidates(int days, int coverDays) {
+        long timer = metrics.start();
+        List<TOCStockRow> rows = new ArrayList<TOCStockRow>();
+        if(getMemberAdmin()) {
+            rows = db.getReorderCandidates(days, coverDays);
+        }
+        metrics.stop("manager.getReorderCandidates", timer);
+        return rows;
+    }
+    
+    /**
+     * Gets how long every database and manager function has been taking, with counts of connections, queries and
+     * rows read. Only admins can see this
+     * 
+     * @return              the metrics report (empty if the current member is not an admin)
+     */
+    public synchronized String getMetricsReport() {
+        if(getMemberAdmin()) {
+            return metrics.getReport();
+        }
+        return "";
+    }
+    
+    /**
+     * Loads a comma separated file of items or members into the storage the TOC is using, so the item cache and the
+     * member directory are updated as it loads. Only admins can do this
+     * 
+     * @param   items       true for an item file (BARCODE,NAME,COST,STOCK), false for a member file (PMKEYS,NAME,ADMIN)
+     * @param   in          the file to read
+     * @param   rejects     where records that can not be loaded are reported
+     * @return              how many records were loaded and rejected or null if the current member is not an admin
+     */
+    public synchronized TOCCatalogue.Result importFile(boolean items, Reader in, Writer rejects) throws IOException {
+        long timer = metrics.start();
+        TOCCatalogue.Result result = null;
+        if(getMemberAdmin()) {
+            TOCCatalogue catalogue = new TOCCatalogue(db);
+            result = items ? catalogue.importItems(in, rejects) : catalogue.importMembers(in, rejects);
+        }
+        
+        metrics.stop("manager.importFile", timer);
+        return result;
+    }
+    
+    /**
+     * Works out what a nominal roll would change in the member list without changing anything. The current member is
+     * never removed. Only admins can do this
+     * 
+     * @param   roll        the nominal roll (PMKEYS,NAME and optionally ADMIN)
+     * @param   rejects     where records that can not be read are reported
+     * @return              the changes the roll would make or null if the current member is not an admin
+     */
+    public synchronized TOCRoster.Changes compareRoster(Reader roll, Writer rejects) throws IOException {
+        long timer = metrics.start();
+        TOCRoster.Changes changes = null;
+        if(getMemberAdmin()) {
+            changes = new TOCRoster(db).compare(roll, rejects, Collections.singleton(getMemberPmKeys()));
+        }
+        
+        metrics.stop("manager.compareRoster", timer);
+        return changes;
+    }
+    
+    /**
+     * Makes every change of a nominal roll in one go. Only admins can do this
+     * 
+     * @param   changes     the changes worked out by compareRoster
+     * @return              a boolean representing if the changes were made
+     */
+    public synchronized boolean applyRoster(TOCRoster.Changes changes) {
+        long timer = metrics.start();
+        if(getMemberAdmin() && changes != null) {
+            new TOCRoster(db).apply(changes);
+            metrics.stop("manager.applyRoster", timer);
+            return true;
+        }
+        metrics.stop("manager.applyRoster", timer);
+        return false;
+    }
+    
+    /**
+     * Handle a new user. With a TOCDatabase the member is found in the member directory, so a card swipe does not
+     * go to the database
      * 
      * @param   userPmKeys  The new user's pmKeys
      * @return              A boolean stating if the member was found and updated
      */
-    public boolean changeMember(int userPmKeys) {
-        if(db.memberExists(userPmKeys)) {
-            String name = db.getMemberName(userPmKeys);
-            boolean admin = db.memberIsAdmin(userPmKeys);
-            
-            member.updateMember(userPmKeys,name,admin);
+    public synchronized boolean changeMember(int userPmKeys) {
+        long timer = metrics.start();
+        TOCMember found = db.getMember(userPmKeys);
+        if(found != null) {
+            member.updateMember(found.getPmKeys(),found.getName(),found.isAdmin());
+            metrics.stop("manager.changeMember", timer);
             return true;
         }else {
+            metrics.stop("manager.changeMember", timer);
             return false;
         }
     }
     
+    /**
+     * Hands the TOC over to another member, such as when a card is swiped at a counter. The last member's basket is
+     * only dropped once the new member is found, so a mistyped pmkeys leaves the last member and their basket as they
+     * were. Both happen under the manager's lock so nothing can be scanned or checked out in between
+     * 
+     * @param   userPmKeys  The new user's pmKeys
+     * @return              A boolean stating if the member was found and the basket emptied for them
+     */
+    public synchronized boolean switchMember(int userPmKeys) {
+        long timer = metrics.start();
+        TOCMember found = db.getMember(userPmKeys);
+        if(found != null) {
+            basket.clear();
+            member.updateMember(found.getPmKeys(),found.getName(),found.isAdmin());
+        }
+        metrics.stop("manager.switchMember", timer);
+        return found != null;
+    }
+    
      /**
      * Checks to make sure the current admin is not removing themselves
      * 
      * @param pmKeys the member's pmKeys to be updated
      */
-    public void updateAdmin(int pmKeys) {
+    public synchronized void updateAdmin(int pmKeys) {
+        long timer = metrics.start();
         if(pmKeys != getMemberPmKeys())
             db.updateAdmin(pmKeys);
+        metrics.stop("manager.updateAdmin", timer);
     }
     
     /**
@@ -93,10 +588,12 @@ public class TOCManager {
      * @param   name    the new member's name
      * @param   admin   if the new member is an admin
      */
-    public void newMember(int pmKeys, String name, boolean admin) {
+    public synchronized void newMember(int pmKeys, String name, boolean admin) {
+        long timer = metrics.start();
         if(getMemberAdmin()) {
             db.addMember(pmKeys,name,admin);
         }
+        metrics.stop("manager.newMember", timer);
     }
     
     /**
@@ -106,10 +603,12 @@ public class TOCManager {
      * 
      * @param   pmKeys  the member's pmKeys
      */
-    public void removeMember(int pmKeys) {
+    public synchronized void removeMember(int pmKeys) {
+        long timer = metrics.start();
         if(pmKeys != getMemberPmKeys()) {
             db.removeMember(pmKeys);
         }
+        metrics.stop("manager.removeMember", timer);
     }
     
     /**
@@ -117,7 +616,7 @@ public class TOCManager {
      * 
      * @return          The current member's pmKeys
      */
-    public int getMemberPmKeys() {
+    public synchronized int getMemberPmKeys() {
         return member.getPmKeys();
     }   
     
@@ -126,17 +625,18 @@ public class TOCManager {
      * 
      * @return          The current member's name
      */
-    public String getMemberName() {
+    public synchronized String getMemberName() {
         return member.getName();
     }
     
     /**
-     * Get the current member's admin status
+     * Get the current member's admin status. Read from the storage every time (a lookup in the member directory for
+     * a TOCDatabase) so an admin who is demoted or removed loses their rights straight away
      * 
      * @return          The current member's admin flag
      */
-    public boolean getMemberAdmin() {
-        return member.isAdmin();
+    public synchronized boolean getMemberAdmin() {
+        return member.getPmKeys() != 0 && db.memberIsAdmin(member.getPmKeys());
     }
     
     /**
@@ -145,26 +645,28 @@ public class TOCManager {
      * @param   barcode     the barcode of the item to allow us to search the database
      * @return              a boolean representing if the item was found or not
      */
-    public boolean changeItem(String barcode) {
-        if(db.itemExists(barcode)) {
-            String name = db.getItemName(barcode);
-            double cost = db.getItemCost(barcode);
-            int stock = db.getItemStock(barcode);
-            
-            item.updateItem(barcode,name,cost,stock);
+    public synchronized boolean changeItem(String barcode) {
+        long timer = metrics.start();
+        TOCItem found = db.getItem(barcode);
+        if(found != null) {
+            item.updateItem(found.getBarcode(),found.getName(),found.getCost(),found.getStock());
+            metrics.stop("manager.changeItem", timer);
             return true;
         }else {
+            metrics.stop("manager.changeItem", timer);
             return false;
         }
     }
     
     /** Receives the values for the cost update and sends them to the database manager
      * 
-     * @param cost the updated cost
+     * @param cost the updated cost in cents
      * @param barcode the barcode of the item being updated
      */
-    public void updateCost(double cost) {
+    public synchronized void updateCost(long cost) {
+        long timer = metrics.start();
         db.updateCost(cost,getItemBarcode());
+        metrics.stop("manager.updateCost", timer);
     }
     
     /**
@@ -172,8 +674,10 @@ public class TOCManager {
      * 
      * @param barcode the barcode of the item to be removed
      */
-    public void removeItem(String barcode) {
+    public synchronized void removeItem(String barcode) {
+        long timer = metrics.start();
         db.removeItem(barcode);
+        metrics.stop("manager.removeItem", timer);
     }
     
     /**
@@ -181,13 +685,49 @@ public class TOCManager {
      * 
      * @param   barcode     the item's barcode
      * @param   name        the item's name
-     * @param   cost        the item's cost
+     * @param   cost        the item's cost in cents
      * @param   stock       the item's stock
      */
-    public void newItem(String barcode, String name, double cost, int stock) {
+    public synchronized void newItem(String barcode, String name, long cost, int stock) {
+        long timer = metrics.start();
         if(getMemberAdmin()) {
             db.addItem(barcode,name,cost,stock);
         }
+        metrics.stop("manager.newItem", timer);
+    }
+        
+    /**
+     * Changes the cost of a group of items at once. Only admins can do this
+     * 
+     * @param   barcodes    the barcodes of the items to change
+     * @param   percent     the percentage to change the cost by (eg. 10 for 10% dearer, 0 for none)
+     * @param   amount      the cents to add to the cost
+     * @return              the barcodes that were not found or null if the current member is not an admin
+     */
+    public synchronized List<String> changeCosts(List<String> barcodes, double percent, long amount) {
+        long timer = metrics.start();
+        List<String> missing = null;
+        if(getMemberAdmin()) {
+            missing = db.changeCosts(barcodes, percent, amount);
+        }
+        metrics.stop("manager.changeCosts", timer);
+        return missing;
+    }
+    
+    /**
+     * Adds a delivery to the stock of its items all at once. Only admins can do this
+     * 
+     * @param   delivery    how many of each barcode arrived (negative to take stock away)
+     * @return              the barcodes that were not found or null if the current member is not an admin
+     */
+    public synchronized List<String> receiveDelivery(Map<String,Integer> delivery) {
+        long timer = metrics.start();
+        List<String> missing = null;
+        if(getMemberAdmin()) {
+            missing = db.adjustStock(delivery);
+        }
+        metrics.stop("manager.receiveDelivery", timer);
+        return missing;
     }
         
     /**
@@ -195,7 +735,7 @@ public class TOCManager {
      * 
      * @return                  the item's barcode
      */
-    public String getItemBarcode() {
+    public synchronized String getItemBarcode() {
         return item.getBarcode();
     }
     
@@ -204,16 +744,16 @@ public class TOCManager {
      * 
      * @return                  the item's name
      */
-    public String getItemName() {
+    public synchronized String getItemName() {
         return item.getName();
     }
     
     /**
      * Get the current item's cost
      * 
-     * @return                  the item's cost
+     * @return                  the item's cost in cents
      */
-    public double getItemCost() {
+    public synchronized long getItemCost() {
         return item.getCost();
     }
     
@@ -222,7 +762,7 @@ public class TOCManager {
      * 
      * @return                 the current stock of the item
      */
-    public int getItemStock() {
+    public synchronized int getItemStock() {
         return item.getStock();
     }
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+import java.util.*;
+
+/**
+ * Keeps every member in memory by pmkeys so logging in and checking if someone is an admin never has to go to the
+ * database. The members are kept in a TOCIntMap so a lookup is a couple of array reads with no boxing, however many
+ * members there are. Unlike the item cache it holds every member rather than the recently used ones. The TOCDatabase
+ * loads it once when it starts and is in charge of keeping it up to date whenever it changes a member
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCMemberDirectory {
+    private final TOCIntMap<TOCMember> members;
+
+    /**
+     * The constructor. Creates an empty directory
+     */
+    public TOCMemberDirectory() {
+        members = new TOCIntMap<TOCMember>();
+    }
+
+    /**
+     * Looks for a member in the directory
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  a copy of the member or null if there is no member with the pmkeys
+     */
+    public synchronized TOCMember get(int pmkeys) {
+        TOCMember member = members.get(pmkeys);
+        return member == null ? null : copy(member);
+    }
+
+    /**
+     * Checks if a member is in the directory
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  a boolean representing if the member exists
+     */
+    public synchronized boolean contains(int pmkeys) {
+        return members.containsKey(pmkeys);
+    }
+
+    /**
+     * Get a member's name
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  the member's name or null if there is no member with the pmkeys
+     */
+    public synchronized String getName(int pmkeys) {
+        TOCMember member = members.get(pmkeys);
+        return member == null ? null : member.getName();
+    }
+
+    /**
+     * Checks if a member is an admin
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  a boolean representing if the member exists and is an admin
+     */
+    public synchronized boolean isAdmin(int pmkeys) {
+        TOCMember member = members.get(pmkeys);
+        return member != null && member.isAdmin();
+    }
+
+    /**
+     * Adds or replaces a member in the directory
+     *
+     * @param   member          the member to store
+     */
+    public synchronized void put(TOCMember member) {
+        members.put(member.getPmKeys(), copy(member));
+    }
+
+    /**
+     * Replaces every member in the directory in one go, so no one looking a member up sees the directory half loaded
+     *
+     * @param   loaded          every member
+     */
+    public synchronized void replaceAll(List<TOCMember> loaded) {
+        members.clear();
+        for(TOCMember member : loaded) {
+            members.put(member.getPmKeys(), copy(member));
+        }
+    }
+
+    /**
+     * Removes a member from the directory. Does nothing if the member is not in it
+     *
+     * @param   pmkeys          the member's pmkeys
+     */
+    public synchronized void remove(int pmkeys) {
+        members.remove(pmkeys);
+    }
+
+    /**
+     * Get how many members are in the directory
+     *
+     * @return                  the number of members
+     */
+    public synchronized int getSize() {
+        return members.size();
+    }
+
+    /**
+     * Copies a member so changes made by the caller do not change the stored version
+     *
+     * @param   member          the member to copy
+     * @return                  the copy
+     */
+    private TOCMember copy(TOCMember member) {
+        return new TOCMember(member.getPmKeys(), member.getName(), member.isAdmin());
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Where the TOC keeps its members. The function that calls any of the changes should check if the member that
+ * requests them has permission
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public interface TOCMemberRepository {
+    /**
+     * Get a member's name
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  the member's name or "Member Not Found"
+     */
+    public String getMemberName(int pmkeys);
+
+    /**
+     * Check if a member is an admin
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  a boolean representing if the member is an admin
+     */
+    public boolean memberIsAdmin(int pmkeys);
+
+    /**
+     * Changes the member status of a member to either admin or not admin
+     *
+     * @param   pmKeys          the pmKeys of the member to be updated
+     */
+    public void updateAdmin(int pmKeys);
+
+    /**
+     * Check if a member exists
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  a boolean representing if the member was found
+     */
+    public boolean memberExists(int pmkeys);
+
+    /**
+     * Gets every detail of a member
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  the member that matches the pmkeys or null if the member was not found
+     */
+    public TOCMember getMember(int pmkeys);
+
+    /**
+     * Adds a new member. Nothing happens if the pmKeys is already taken
+     *
+     * @param   pmKeys          the new member's pmKeys
+     * @param   name            the new member's name
+     * @param   isAdmin         if the new member is an admin
+     */
+    public void addMember(int pmKeys, String name, boolean isAdmin);
+
+    /**
+     * Removes a member. Their past bills are kept
+     *
+     * @param   pmKeys          the member's pmKeys
+     */
+    public void removeMember(int pmKeys);
+
+    /**
+     * Adds a group of members at once. Members whose pmKeys is already taken get the new name and admin status
+     *
+     * @param   members         the members to add or update
+     */
+    public void upsertMembers(List<TOCMember> members);
+
+    /**
+     * Adds, updates and removes members all at once, so either every change is made or none are
+     *
+     * @param   changed         the members to add or update
+     * @param   removed         the pmKeys of the members to remove. Their past bills are kept
+     */
+    public void syncMembers(List<TOCMember> changed, List<Integer> removed);
+
+    /**
+     * Hands every member to the visitor in pmKeys order without holding them all in memory
+     *
+     * @param   visitor         called with every member
+     */
+    public void forEachMember(Consumer<TOCMember> visitor);
+}
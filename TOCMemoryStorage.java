@@ -0,0 +1,1034 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.*;
+import java.time.temporal.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Keeps everything the TOC stores in memory. Members and balances are kept in TOCIntMaps by pmkeys, items in a hash
+ * map by barcode and every member's bill in a list in the order it was bought, so nothing ever waits on the disk.
+ * Everything is written to a snapshot file every few seconds (and when the storage is closed) and read back when it
+ * is opened again. Anything bought after the last snapshot is lost if the program is killed, so this is meant for
+ * pop up stalls, tests and benchmarks rather than the main TOC
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCMemoryStorage implements TOCStorage {
+    // How often the snapshot is written when nothing else is given
+    public static final long DEFAULT_SNAPSHOT_SECONDS = 30;
+    // Written at the start of every snapshot so other files, or snapshots in a format this TOC can not read, are not
+    // read by mistake
+    private static final int SNAPSHOT_MAGIC = 0x544F4331;
+    // How many bill entries are handed over at a time when a whole bill is wanted
+    private static final int BILL_PAGE_SIZE = 500;
+
+    private final TOCIntMap<TOCMember> members;
+    private final Map<String,TOCItem> items;
+    private final TOCIntMap<List<TOCBillRow>> bills;
+    // Every member's bill entries together in the order they were made, for reading all sales in a range of time
+    private final List<TOCBillRow> ledger;
+    // What every member owes in cents. Each balance is a one long array that is added to where it is, so recording a
+    // sale does not box a new number
+    private final TOCIntMap<long[]> balances;
+    private final TOCSalesTotals sales;
+    private long lastNum = 0;
+
+    private final Path snapshot;
+    private final ScheduledExecutorService snapshots;
+    private final TOCMetrics metrics;
+    private boolean dirty = false;
+
+    /**
+     * The constructor. Nothing is written to disk so everything is lost when the program stops
+     */
+    public TOCMemoryStorage() {
+        this(null, 0);
+    }
+
+    /**
+     * The constructor. Reads the snapshot if there is one and starts writing a new one every few seconds
+     *
+     * @param   file            the path of the snapshot file (null to never write one)
+     * @param   seconds         how often the snapshot is written (0 to only write it when the storage is closed)
+     * @throws  UncheckedIOException if the snapshot is there but can not be read (eg. it is damaged)
+     */
+    public TOCMemoryStorage(String file, long seconds) {
+        members = new TOCIntMap<TOCMember>();
+        items = new HashMap<String,TOCItem>();
+        bills = new TOCIntMap<List<TOCBillRow>>();
+        ledger = new ArrayList<TOCBillRow>();
+        balances = new TOCIntMap<long[]>();
+        sales = new TOCSalesTotals();
+        metrics = TOCMetrics.getInstance();
+        snapshot = file == null ? null : Paths.get(file);
+
+        if(snapshot != null && Files.exists(snapshot)) {
+            try {
+                load();
+            }catch(IOException e) {
+                throw new UncheckedIOException("Could not read the snapshot " + snapshot, e);
+            }
+        }
+
+        if(snapshot != null && seconds > 0) {
+            snapshots = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "toc-snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            snapshots.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    save();
+                }
+            }, seconds, seconds, TimeUnit.SECONDS);
+        }else {
+            snapshots = null;
+        }
+    }
+
+    // ------------------------------------------------- Snapshot Functions -------------------------------------------------
+    /**
+     * Writes everything to the snapshot file if anything changed since the last one. The file is written under a
+     * temporary name and then moved over the old one so a crash while writing never leaves half a snapshot behind
+     */
+    public void save() {
+        if(snapshot == null) {
+            return;
+        }
+        long timer = metrics.start();
+        byte[] data;
+        synchronized(this) {
+            if(!dirty) {
+                return;
+            }
+            try {
+                data = write();
+            }catch(IOException e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                System.err.println("Error at TOCMemoryStorage save()");
+                return;
+            }
+            dirty = false;
+        }
+
+        try {
+            Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+            Files.write(temporary, data);
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }catch(IOException e) {
+            // The next snapshot will try again
+            synchronized(this) {
+                dirty = true;
+            }
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+            System.err.println("Error at TOCMemoryStorage save()");
+        }
+        metrics.stop("memory.snapshot", timer);
+    }
+
+    /**
+     * Turns everything into the bytes of a snapshot. Must be called while holding the lock
+     *
+     * @return                  the snapshot
+     */
+    private byte[] write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes));
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeLong(lastNum);
+
+        out.writeInt(members.size());
+        for(int pmkeys : members.keys()) {
+            TOCMember member = members.get(pmkeys);
+            out.writeInt(member.getPmKeys());
+            out.writeUTF(member.getName());
+            out.writeBoolean(member.isAdmin());
+        }
+
+        out.writeInt(items.size());
+        for(TOCItem item : items.values()) {
+            out.writeUTF(item.getBarcode());
+            out.writeUTF(item.getName());
+            out.writeLong(item.getCost());
+            out.writeInt(item.getStock());
+        }
+
+        int[] billed = bills.keys();
+        out.writeInt(billed.length);
+        for(int pmkeys : billed) {
+            List<TOCBillRow> bill = bills.get(pmkeys);
+            out.writeInt(pmkeys);
+            out.writeInt(bill.size());
+            for(TOCBillRow row : bill) {
+                out.writeLong(row.getNum());
+                out.writeUTF(row.getBarcode());
+                out.writeUTF(row.getName());
+                out.writeLong(row.getCost());
+                out.writeLong(row.getTime());
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads everything back from the snapshot file. Balances and sales totals are worked out again from the bills.
+     * Nothing is caught here, as this storage is used by tests and benchmarks that need to see a damaged snapshot
+     */
+    private synchronized void load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)));
+        try {
+            int magic = in.readInt();
+            if(magic != SNAPSHOT_MAGIC) {
+                throw new IOException(snapshot + " is not a TOC snapshot this TOC can read");
+            }
+            lastNum = in.readLong();
+
+            int count = in.readInt();
+            for(int i=0; i<count; i++) {
+                TOCMember member = new TOCMember(in.readInt(), in.readUTF(), in.readBoolean());
+                members.put(member.getPmKeys(), member);
+            }
+
+            count = in.readInt();
+            for(int i=0; i<count; i++) {
+                String barcode = in.readUTF();
+                String name = in.readUTF();
+                long cost = in.readLong();
+                TOCItem item = new TOCItem(barcode, name, cost, in.readInt());
+                items.put(item.getBarcode(), item);
+            }
+
+            count = in.readInt();
+            for(int i=0; i<count; i++) {
+                int pmkeys = in.readInt();
+                int rows = in.readInt();
+                List<TOCBillRow> bill = new ArrayList<TOCBillRow>(rows);
+                long owed = 0;
+                for(int j=0; j<rows; j++) {
+                    long num = in.readLong();
+                    String barcode = in.readUTF();
+                    String name = in.readUTF();
+                    long cost = in.readLong();
+                    long time = in.readLong();
+                    TOCBillRow row = new TOCBillRow(num, pmkeys, barcode, name, cost, time);
+                    bill.add(row);
+                    ledger.add(row);
+                    owed = TOCMoney.add(owed, row.getCost());
+                    if(!row.getBarcode().equals(TOCDatabase.PAYMENT_BARCODE)) {
+                        sales.add(pmkeys, row.getBarcode(), row.getTime(), 1, row.getCost());
+                    }
+                }
+                bills.put(pmkeys, bill);
+                balances.put(pmkeys, new long[] {owed});
+            }
+            // The bills were read one member at a time
+            Collections.sort(ledger, new Comparator<TOCBillRow>() {
+                public int compare(TOCBillRow a, TOCBillRow b) {
+                    return Long.compare(a.getNum(), b.getNum());
+                }
+            });
+        }finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the last snapshot and stops writing new ones
+     */
+    public void close() {
+        if(snapshots != null) {
+            snapshots.shutdown();
+        }
+        save();
+    }
+
+    /**
+     * Adds the first admin if they are not there already
+     */
+    public synchronized void firstSetup() {
+        if(!members.containsKey(8618374)) {
+            members.put(8618374, new TOCMember(8618374, "Pedro Alves", true));
+            dirty = true;
+        }
+    }
+
+    // ------------------------------------------------- Member Functions -------------------------------------------------
+    /**
+     * Gets the name of a member
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  the member's name or "Member Not Found" if there is no member with the pmkeys
+     */
+    public synchronized String getMemberName(int pmkeys) {
+        TOCMember member = members.get(pmkeys);
+        return member == null ? "Member Not Found" : member.getName();
+    }
+
+    /**
+     * Checks if a member is an admin
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  a boolean representing if the member exists and is an admin
+     */
+    public synchronized boolean memberIsAdmin(int pmkeys) {
+        TOCMember member = members.get(pmkeys);
+        return member != null && member.isAdmin();
+    }
+
+    /**
+     * Changes a member to an admin if they are not one, or back to a member if they are
+     *
+     * @param   pmKeys          the pmkeys of the member to change
+     */
+    public synchronized void updateAdmin(int pmKeys) {
+        TOCMember member = members.get(pmKeys);
+        if(member != null) {
+            members.put(pmKeys, new TOCMember(pmKeys, member.getName(), !member.isAdmin()));
+            dirty = true;
+        }
+    }
+
+    /**
+     * Checks if a member exists
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  a boolean representing if the member was found
+     */
+    public synchronized boolean memberExists(int pmkeys) {
+        return members.containsKey(pmkeys);
+    }
+
+    /**
+     * Gets every detail of a member
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @return                  a copy of the member or null if the member was not found
+     */
+    public synchronized TOCMember getMember(int pmkeys) {
+        TOCMember member = members.get(pmkeys);
+        // Hand out a copy so the caller can not change the stored member
+        return member == null ? null : new TOCMember(member.getPmKeys(), member.getName(), member.isAdmin());
+    }
+
+    /**
+     * Adds a member. Does nothing if there is already a member with the pmkeys
+     *
+     * @param   pmKeys          the new member's pmkeys
+     * @param   name            the new member's name
+     * @param   isAdmin         if the new member is an admin
+     */
+    public synchronized void addMember(int pmKeys, String name, boolean isAdmin) {
+        if(!members.containsKey(pmKeys)) {
+            members.put(pmKeys, new TOCMember(pmKeys, name, isAdmin));
+            dirty = true;
+        }
+    }
+
+    /**
+     * Removes a member. Their bill and balance are kept
+     *
+     * @param   pmKeys          the pmkeys of the member to remove
+     */
+    public synchronized void removeMember(int pmKeys) {
+        if(members.remove(pmKeys) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Adds a group of members. Members that already exist get the new name and admin status
+     *
+     * @param   added           the members to add or update
+     */
+    public synchronized void upsertMembers(List<TOCMember> added) {
+        for(TOCMember member : added) {
+            members.put(member.getPmKeys(), new TOCMember(member.getPmKeys(), member.getName(), member.isAdmin()));
+        }
+        dirty = true;
+    }
+
+    /**
+     * Adds, updates and removes members in one go so no one sees the list half changed
+     *
+     * @param   changed         the members to add or update
+     * @param   removed         the pmkeys of the members to remove
+     */
+    public synchronized void syncMembers(List<TOCMember> changed, List<Integer> removed) {
+        upsertMembers(changed);
+        for(int pmkeys : removed) {
+            members.remove(pmkeys);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Hands every member to the visitor in pmkeys order
+     *
+     * @param   visitor         called with a copy of every member
+     */
+    public void forEachMember(Consumer<TOCMember> visitor) {
+        // Copied out under the lock so the visitor runs without holding it
+        List<TOCMember> copy = new ArrayList<TOCMember>();
+        synchronized(this) {
+            for(int pmkeys : members.keys()) {
+                TOCMember member = members.get(pmkeys);
+                copy.add(new TOCMember(member.getPmKeys(), member.getName(), member.isAdmin()));
+            }
+        }
+        for(TOCMember member : copy) {
+            visitor.accept(member);
+        }
+    }
+
+    // -------------------------------------------------- Item Functions --------------------------------------------------
+    /**
+     * Checks if an item exists
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  a boolean representing if the item exists
+     */
+    public synchronized boolean itemExists(String barcode) {
+        return items.containsKey(barcode);
+    }
+
+    /**
+     * Changes the cost of an item
+     *
+     * @param   cost            the new cost of the item in cents
+     * @param   barcode         the barcode of the item
+     */
+    public synchronized void updateCost(long cost, String barcode) {
+        TOCItem item = items.get(barcode);
+        if(item != null) {
+            items.put(barcode, new TOCItem(barcode, item.getName(), cost, item.getStock()));
+            dirty = true;
+        }
+    }
+
+    /**
+     * Removes an item. Bills that have the item keep it
+     *
+     * @param   barcode         the barcode of the item to remove
+     */
+    public synchronized void removeItem(String barcode) {
+        if(items.remove(barcode) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Gets the name of an item
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  the name of the item or "Item Not Found" if there is no item with the barcode
+     */
+    public synchronized String getItemName(String barcode) {
+        TOCItem item = items.get(barcode);
+        return item == null ? "Item Not Found" : item.getName();
+    }
+
+    /**
+     * Gets the cost of an item
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  the cost of the item in cents (0 if the item was not found)
+     */
+    public synchronized long getItemCost(String barcode) {
+        TOCItem item = items.get(barcode);
+        return item == null ? 0 : item.getCost();
+    }
+
+    /**
+     * Gets the stock of an item
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  how many of the item are left (0 if the item was not found)
+     */
+    public synchronized int getItemStock(String barcode) {
+        TOCItem item = items.get(barcode);
+        return item == null ? 0 : item.getStock();
+    }
+
+    /**
+     * Gets every detail of an item
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  a copy of the item or null if the item was not found
+     */
+    public synchronized TOCItem getItem(String barcode) {
+        TOCItem item = items.get(barcode);
+        // Hand out a copy so the caller can not change the stored item
+        return item == null ? null : new TOCItem(item.getBarcode(), item.getName(), item.getCost(), item.getStock());
+    }
+
+    /**
+     * Adds an item. Does nothing if there is already an item with the barcode
+     *
+     * @param   barcode         the item's barcode
+     * @param   name            the item's name
+     * @param   cost            the item's cost in cents
+     * @param   stock           the item's stock
+     */
+    public synchronized void addItem(String barcode, String name, long cost, int stock) {
+        if(!items.containsKey(barcode)) {
+            items.put(barcode, new TOCItem(barcode, name, cost, stock));
+            dirty = true;
+        }
+    }
+
+    /**
+     * Adds a group of items. Items that already exist get the new name, cost and stock
+     *
+     * @param   added           the items to add or update
+     */
+    public synchronized void upsertItems(List<TOCItem> added) {
+        for(TOCItem item : added) {
+            items.put(item.getBarcode(), new TOCItem(item.getBarcode(), item.getName(), item.getCost(), item.getStock()));
+        }
+        dirty = true;
+    }
+
+    /**
+     * Changes the cost of a group of items. The percentage is rounded to the cent before the amount is added and the cost
+     * never goes below 0
+     *
+     * @param   barcodes        the barcodes of the items to change
+     * @param   percent         the percentage to change the cost by (eg. 10 for 10% dearer, 0 for none)
+     * @param   amount          the cents to add to the cost
+     * @return                  the barcodes that were not found
+     */
+    public synchronized List<String> changeCosts(List<String> barcodes, double percent, long amount) {
+        List<String> missing = new ArrayList<String>();
+        for(String barcode : barcodes) {
+            TOCItem item = items.get(barcode);
+            if(item == null) {
+                missing.add(barcode);
+                continue;
+            }
+            long cost = Math.max(0, TOCMoney.add(TOCMoney.percent(item.getCost(), percent), amount));
+            items.put(barcode, new TOCItem(barcode, item.getName(), cost, item.getStock()));
+            dirty = true;
+        }
+        return missing;
+    }
+
+    /**
+     * Adds stock to a group of items. Negative quantities take stock away but the stock never goes below 0
+     *
+     * @param   delivery        how many of each barcode to add
+     * @return                  the barcodes that were not found
+     */
+    public synchronized List<String> adjustStock(Map<String,Integer> delivery) {
+        List<String> missing = new ArrayList<String>();
+        for(Map.Entry<String,Integer> line : delivery.entrySet()) {
+            TOCItem item = items.get(line.getKey());
+            if(item == null) {
+                missing.add(line.getKey());
+                continue;
+            }
+            int stock = Math.max(0, item.getStock() + line.getValue());
+            items.put(item.getBarcode(), new TOCItem(item.getBarcode(), item.getName(), item.getCost(), stock));
+            dirty = true;
+        }
+        return missing;
+    }
+
+    /**
+     * Hands every item to the visitor in barcode order
+     *
+     * @param   visitor         called with a copy of every item
+     */
+    public void forEachItem(Consumer<TOCItem> visitor) {
+        // Copied out under the lock so the visitor runs without holding it
+        List<TOCItem> copy = new ArrayList<TOCItem>();
+        synchronized(this) {
+            for(String barcode : new TreeSet<String>(items.keySet())) {
+                TOCItem item = items.get(barcode);
+                copy.add(new TOCItem(item.getBarcode(), item.getName(), item.getCost(), item.getStock()));
+            }
+        }
+        for(TOCItem item : copy) {
+            visitor.accept(item);
+        }
+    }
+
+    // ----------------------------------------------- Transaction Functions -----------------------------------------------
+    /**
+     * Records a member buying one of an item
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @param   barcode         the barcode of the item
+     * @return                  a boolean representing if the item was in stock and was sold
+     */
+    public boolean addTransaction(int pmkeys, String barcode) {
+        TOCItem item = getItem(barcode);
+        if(item == null) {
+            return false;
+        }
+        TOCBasket basket = new TOCBasket();
+        basket.add(item);
+        return addTransactions(pmkeys, basket)[0] == 1;
+    }
+
+    /**
+     * Records a member buying a basket
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @param   basket          the basket being bought
+     * @return                  how many of each line were sold, in the same order as the basket's lines
+     */
+    public int[] addTransactions(int pmkeys, TOCBasket basket) {
+        List<TOCPurchase> purchases = new ArrayList<TOCPurchase>();
+        purchases.add(new TOCPurchase(pmkeys, basket));
+        return addTransactions(purchases).get(0);
+    }
+
+    /**
+     * Records several baskets. Each line is sold while there is stock left, the same as the database does
+     *
+     * @param   purchases       the baskets to record
+     * @return                  how many of each line of each basket were sold, in the same order as the purchases
+     */
+    public synchronized List<int[]> addTransactions(List<TOCPurchase> purchases) {
+        long timer = metrics.start();
+        List<int[]> sold = new ArrayList<int[]>();
+        long time = TOCTime.now();
+
+        for(TOCPurchase purchase : purchases) {
+            List<TOCBasketLine> lines = purchase.getLines();
+            int[] lineSold = new int[lines.size()];
+            long total = 0;
+            for(int i=0; i<lines.size(); i++) {
+                TOCBasketLine line = lines.get(i);
+                TOCItem item = items.get(line.getBarcode());
+                if(item == null || item.getStock() <= 0) {
+                    continue;
+                }
+                // Sell as many as there are, the same as the database does
+                int quantity = Math.min(line.getQuantity(), item.getStock());
+                items.put(item.getBarcode(), new TOCItem(item.getBarcode(), item.getName(), item.getCost(), item.getStock() - quantity));
+                lineSold[i] = quantity;
+
+                List<TOCBillRow> bill = bills.get(purchase.getPmKeys());
+                if(bill == null) {
+                    bill = new ArrayList<TOCBillRow>();
+                    bills.put(purchase.getPmKeys(), bill);
+                }
+                // The bill has one entry for each item bought
+                for(int j=0; j<quantity; j++) {
+                    lastNum++;
+                    TOCBillRow row = new TOCBillRow(lastNum, purchase.getPmKeys(), line.getBarcode(), line.getName(), line.getCost(), time);
+                    bill.add(row);
+                    ledger.add(row);
+                }
+                long cost = TOCMoney.times(line.getCost(), quantity);
+                total = TOCMoney.add(total, cost);
+                sales.add(purchase.getPmKeys(), line.getBarcode(), time, quantity, cost);
+            }
+            addToBalance(purchase.getPmKeys(), total);
+            sold.add(lineSold);
+        }
+
+        dirty = true;
+        metrics.stop("memory.addTransactionGroup", timer);
+        return sold;
+    }
+
+    /**
+     * Records a payment from a member. It is added to their bill as a negative entry
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @param   amount          how many cents were paid
+     */
+    public synchronized void settleBalance(int pmkeys, long amount) {
+        List<TOCBillRow> bill = bills.get(pmkeys);
+        if(bill == null) {
+            bill = new ArrayList<TOCBillRow>();
+            bills.put(pmkeys, bill);
+        }
+        lastNum++;
+        TOCBillRow row = new TOCBillRow(lastNum, pmkeys, TOCDatabase.PAYMENT_BARCODE, "Payment", -amount, TOCTime.now());
+        bill.add(row);
+        ledger.add(row);
+        addToBalance(pmkeys, -amount);
+        dirty = true;
+    }
+
+    /**
+     * Adds an amount to what a member owes. Must be called while holding the lock
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @param   amount          how many cents to add (negative for payments)
+     */
+    private void addToBalance(int pmkeys, long amount) {
+        long[] owed = balances.get(pmkeys);
+        if(owed == null) {
+            owed = new long[1];
+            balances.put(pmkeys, owed);
+        }
+        owed[0] = TOCMoney.add(owed[0], amount);
+    }
+
+    /**
+     * Gets what a member owes
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @return                  the balance in cents (0 if they have never bought anything)
+     */
+    public synchronized long getBalance(int pmkeys) {
+        long[] owed = balances.get(pmkeys);
+        return owed == null ? 0 : owed[0];
+    }
+
+    /**
+     * Gets what every member owes. Members who owe nothing are left out
+     *
+     * @return                  the balances in cents stored by pmkeys
+     */
+    public synchronized Map<Integer,Long> getBalances() {
+        Map<Integer,Long> owed = new LinkedHashMap<Integer,Long>();
+        for(int pmkeys : balances.keys()) {
+            long balance = balances.get(pmkeys)[0];
+            if(balance != 0) {
+                owed.put(pmkeys, balance);
+            }
+        }
+        return owed;
+    }
+
+    /**
+     * Checks every balance against the member's bill
+     *
+     * @param   fix             if wrong balances should be replaced with the total of the bill
+     * @return                  the pmkeys of the members whose balance was wrong, in order
+     */
+    public synchronized List<Integer> verifyBalances(boolean fix) {
+        List<Integer> wrong = new ArrayList<Integer>();
+        TOCIntMap<long[]> worked = new TOCIntMap<long[]>(bills.size());
+        for(int pmkeys : bills.keys()) {
+            long total = 0;
+            for(TOCBillRow row : bills.get(pmkeys)) {
+                total = TOCMoney.add(total, row.getCost());
+            }
+            worked.put(pmkeys, new long[] {total});
+            long[] owed = balances.get(pmkeys);
+            // Costs are whole cents so the totals must match exactly
+            if(owed == null || owed[0] != total) {
+                wrong.add(pmkeys);
+            }
+        }
+        for(int pmkeys : balances.keys()) {
+            if(!worked.containsKey(pmkeys)) {
+                wrong.add(pmkeys);
+            }
+        }
+        Collections.sort(wrong);
+
+        if(fix && !wrong.isEmpty()) {
+            balances.clear();
+            for(int pmkeys : worked.keys()) {
+                balances.put(pmkeys, worked.get(pmkeys));
+            }
+        }
+        return wrong;
+    }
+
+    /**
+     * Gets a member's whole bill as text
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @return                  one line for every entry of the bill
+     */
+    public String findTransactions(int pmkeys) {
+        final StringBuilder transactions = new StringBuilder();
+        forEachTransaction(pmkeys, null, null, BILL_PAGE_SIZE, new Consumer<TOCBillRow>() {
+            public void accept(TOCBillRow row) {
+                transactions.append(row).append("\n");
+            }
+        });
+        return transactions.toString();
+    }
+
+    /**
+     * Hands a member's bill entries between two times to the visitor a page at a time
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @param   from            the earliest purchase to include (null for no limit)
+     * @param   to              the purchase time to stop before (null for no limit)
+     * @param   pageSize        how many entries are read at a time
+     * @param   visitor         called with every entry in the order they were bought
+     */
+    public void forEachTransaction(int pmkeys, LocalDateTime from, LocalDateTime to, int pageSize, Consumer<TOCBillRow> visitor) {
+        // Each page is copied out under the lock so the visitor runs without holding it
+        TOCBillRow last = null;
+        List<TOCBillRow> page = findTransactions(pmkeys, from, to, last, pageSize);
+        while(!page.isEmpty()) {
+            for(TOCBillRow row : page) {
+                visitor.accept(row);
+            }
+            if(page.size() < pageSize) {
+                break;
+            }
+            last = page.get(page.size() - 1);
+            page = findTransactions(pmkeys, from, to, last, pageSize);
+        }
+    }
+
+    /**
+     * Reads one page of a member's bill. Entries are kept in the order they were bought, so the start of the page is
+     * found with a binary search and the page costs the same no matter how far into the bill it is
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @param   from            the earliest purchase to include (null for no limit)
+     * @param   to              the purchase time to stop before (null for no limit)
+     * @param   after           the last entry of the previous page (null for the first page)
+     * @param   pageSize        the most entries to return
+     * @return                  the entries of the page in the order they were bought
+     */
+    public synchronized List<TOCBillRow> findTransactions(int pmkeys, LocalDateTime from, LocalDateTime to, TOCBillRow after, int pageSize) {
+        List<TOCBillRow> page = new ArrayList<TOCBillRow>();
+        List<TOCBillRow> bill = bills.get(pmkeys);
+        if(bill == null) {
+            return page;
+        }
+
+        return readPage(bill, from, to, after, pageSize);
+    }
+
+    /**
+     * Reads one page of a member's bill from the latest entry back. The end of the page is found with a binary search
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @param   before          the last entry of the previous page (null for the first page, which ends with the
+     *                          latest entry)
+     * @param   pageSize        the most entries to return
+     * @return                  the entries of the page, newest first
+     */
+    public synchronized List<TOCBillRow> findLatestTransactions(int pmkeys, TOCBillRow before, int pageSize) {
+        List<TOCBillRow> page = new ArrayList<TOCBillRow>();
+        List<TOCBillRow> bill = bills.get(pmkeys);
+        if(bill == null) {
+            return page;
+        }
+
+        int index = before == null ? bill.size() : firstAfterNum(bill, before.getNum() - 1);
+        while(index > 0 && page.size() < pageSize) {
+            index--;
+            page.add(bill.get(index));
+        }
+        return page;
+    }
+
+    /**
+     * Hands every member's bill entries between two times to the visitor a page at a time
+     *
+     * @param   from            the earliest purchase to include (null for no limit)
+     * @param   to              the purchase time to stop before (null for no limit)
+     * @param   pageSize        how many entries are read at a time
+     * @param   visitor         called with every entry in the order they were made
+     */
+    public void forEachSale(LocalDateTime from, LocalDateTime to, int pageSize, Consumer<TOCBillRow> visitor) {
+        // Each page is copied out under the lock so the visitor runs without holding it
+        TOCBillRow last = null;
+        List<TOCBillRow> page = findSales(from, to, last, pageSize);
+        while(!page.isEmpty()) {
+            for(TOCBillRow row : page) {
+                visitor.accept(row);
+            }
+            if(page.size() < pageSize) {
+                break;
+            }
+            last = page.get(page.size() - 1);
+            page = findSales(from, to, last, pageSize);
+        }
+    }
+
+    /**
+     * Reads one page of every member's bill entries. The ledger is in the order the entries were made so the start of
+     * the page is found with a binary search
+     *
+     * @param   from            the earliest purchase to include (null for no limit)
+     * @param   to              the purchase time to stop before (null for no limit)
+     * @param   after           the last entry of the previous page (null for the first page)
+     * @param   pageSize        the most entries to return
+     * @return                  the entries of the page in the order they were made
+     */
+    public synchronized List<TOCBillRow> findSales(LocalDateTime from, LocalDateTime to, TOCBillRow after, int pageSize) {
+        return readPage(ledger, from, to, after, pageSize);
+    }
+
+    /**
+     * Adds up what every member was billed between two times
+     *
+     * @param   from            the earliest entry to include
+     * @param   to              the time to stop before
+     * @return                  the totals in cents stored by pmkeys, in pmkeys order
+     */
+    public synchronized Map<Integer,Long> getBillTotals(LocalDateTime from, LocalDateTime to) {
+        TOCIntMap<long[]> totals = new TOCIntMap<long[]>();
+        long end = TOCTime.toMillis(to);
+        for(int index = firstFromTime(ledger, TOCTime.toMillis(from)); index < ledger.size(); index++) {
+            TOCBillRow row = ledger.get(index);
+            if(row.getTime() >= end) {
+                break;
+            }
+            long[] total = totals.get(row.getPmKeys());
+            if(total == null) {
+                total = new long[1];
+                totals.put(row.getPmKeys(), total);
+            }
+            total[0] = TOCMoney.add(total[0], row.getCost());
+        }
+        // Only boxed once per member at the end. The keys come out in pmkeys order
+        Map<Integer,Long> sorted = new LinkedHashMap<Integer,Long>();
+        for(int pmkeys : totals.keys()) {
+            sorted.put(pmkeys, totals.get(pmkeys)[0]);
+        }
+        return sorted;
+    }
+
+    /**
+     * Reads one page of entries between two times out of a list in the order they were made. Must be called while
+     * holding the lock
+     *
+     * @param   rows            a bill or the ledger
+     * @param   from            the earliest entry to include (null for no limit)
+     * @param   to              the time to stop before (null for no limit)
+     * @param   after           the last entry of the previous page (null for the first page)
+     * @param   pageSize        the most entries to return
+     * @return                  the entries of the page
+     */
+    private static List<TOCBillRow> readPage(List<TOCBillRow> rows, LocalDateTime from, LocalDateTime to, TOCBillRow after, int pageSize) {
+        List<TOCBillRow> page = new ArrayList<TOCBillRow>();
+        long start = from == null ? Long.MIN_VALUE : TOCTime.toMillis(from);
+        long end = to == null ? Long.MAX_VALUE : TOCTime.toMillis(to);
+
+        int index = 0;
+        if(after != null) {
+            index = firstAfterNum(rows, after.getNum());
+        }else if(from != null) {
+            index = firstFromTime(rows, start);
+        }
+        while(index < rows.size() && page.size() < pageSize) {
+            TOCBillRow row = rows.get(index);
+            if(row.getTime() >= end) {
+                break;
+            }
+            if(row.getTime() >= start) {
+                page.add(row);
+            }
+            index++;
+        }
+        return page;
+    }
+
+    /**
+     * Finds the first entry of a bill with a higher number than the one given
+     *
+     * @param   bill            the bill in the order it was bought
+     * @param   num             the number of the last entry already read
+     * @return                  the index of the next entry
+     */
+    private static int firstAfterNum(List<TOCBillRow> bill, long num) {
+        int low = 0;
+        int high = bill.size();
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(bill.get(middle).getNum() <= num) {
+                low = middle + 1;
+            }else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the first entry of a bill bought at or after a time
+     *
+     * @param   bill            the bill in the order it was bought
+     * @param   start           the time in milliseconds since 1970
+     * @return                  the index of the first entry from that time
+     */
+    private static int firstFromTime(List<TOCBillRow> bill, long start) {
+        int low = 0;
+        int high = bill.size();
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(bill.get(middle).getTime() < start) {
+                low = middle + 1;
+            }else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // ------------------------------------------------- Report Functions -------------------------------------------------
+    /**
+     * Gets the items that sold the most between two days
+     *
+     * @param   from            the first day (inclusive)
+     * @param   to              the last day (inclusive)
+     * @param   limit           the most items to return
+     * @return                  the items by barcode with the best seller first
+     */
+    public synchronized List<TOCSalesRow> getTopSellers(LocalDate from, LocalDate to, int limit) {
+        return sales.getTopSellers(from, to, limit, items);
+    }
+
+    /**
+     * Gets how much was sold in every day, month or year between two days
+     *
+     * @param   from            the first day (inclusive)
+     * @param   to              the last day (inclusive)
+     * @param   period          DAYS, MONTHS or YEARS
+     * @return                  one row for every period that had sales, oldest first. The key is the period
+     *                          (eg. 2026-10-18, 2026-10 or 2026)
+     */
+    public synchronized List<TOCSalesRow> getRevenue(LocalDate from, LocalDate to, ChronoUnit period) {
+        return sales.getRevenue(from, to, period);
+    }
+
+    /**
+     * Gets how much a member spent in every month between two days
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @param   from            the first day (only its month is used)
+     * @param   to              the last day (only its month is used)
+     * @return                  one row for every month the member bought something, oldest first
+     */
+    public synchronized List<TOCSalesRow> getMemberSpending(int pmkeys, LocalDate from, LocalDate to) {
+        return sales.getMemberSpending(pmkeys, from, to);
+    }
+
+    /**
+     * Gets the items in stock that sold the least between two days, including ones that did not sell at all
+     *
+     * @param   from            the first day (inclusive)
+     * @param   to              the last day (inclusive)
+     * @param   limit           the most items to return
+     * @return                  the items with the slowest first
+     */
+    public synchronized List<TOCStockRow> getSlowMovers(LocalDate from, LocalDate to, int limit) {
+        return sales.getSlowMovers(from, to, limit, items);
+    }
+
+    /**
+     * Gets the items whose stock will run out within a number of days if they keep selling as fast as they did
+     * recently
+     *
+     * @param   days            how many days up to today the selling speed is worked out from
+     * @param   coverDays       how many days the stock should last
+     * @return                  the items that will run out first at the top
+     */
+    public synchronized List<TOCStockRow> getReorderCandidates(int days, int coverDays) {
+        return sales.getReorderCandidates(days, coverDays, items);
+    }
+}
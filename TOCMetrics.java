@@ -0,0 +1,191 @@
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import javax.management.*;
+
+/**
+ * Keeps track of how long the TOC spends in each database and manager function and counts things like connections
+ * opened, queries run and rows read. There is one set of metrics for the whole program. They can be seen in jconsole
+ * under TOC:type=Metrics, printed from the admin menu or written to a file
+ *
+ * Timers are named after the class and function they measure (ie. db.getItem, manager.changeItem)
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCMetrics implements TOCMetricsMBean {
+    private static TOCMetrics instance = null;
+
+    private final ConcurrentHashMap<String,TOCHistogram> timers;
+    private final ConcurrentHashMap<String,AtomicLong> counters;
+    private final ConcurrentHashMap<String,Supplier<Long>> gauges;
+
+    /**
+     * The constructor. Use getInstance() to get the program's metrics
+     */
+    private TOCMetrics() {
+        timers = new ConcurrentHashMap<String,TOCHistogram>();
+        counters = new ConcurrentHashMap<String,AtomicLong>();
+        gauges = new ConcurrentHashMap<String,Supplier<Long>>();
+    }
+
+    /**
+     * Gets the metrics of the program. They are registered with JMX the first time this is called
+     *
+     * @return                  the program's metrics
+     */
+    public static synchronized TOCMetrics getInstance() {
+        if(instance == null) {
+            instance = new TOCMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName("TOC:type=Metrics"));
+            }catch(Exception e) {
+                // The metrics still work without JMX, they just can not be seen in jconsole
+                System.err.println("Metrics not registered with JMX: " + e.getMessage());
+            }
+        }
+        return instance;
+    }
+
+    // ------------------------------------------------- Recording -------------------------------------------------
+    /**
+     * Starts timing something. Pass the result to stop(String name, long start) when it is finished
+     *
+     * @return                  the time it started
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Finishes timing something and records how long it took
+     *
+     * @param   name            the name of the timer
+     * @param   start           the time returned by start()
+     */
+    public void stop(String name, long start) {
+        timer(name).record(System.nanoTime() - start);
+    }
+
+    /**
+     * Adds one to a counter
+     *
+     * @param   name            the name of the counter
+     */
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Adds an amount to a counter
+     *
+     * @param   name            the name of the counter
+     * @param   amount          how much to add
+     */
+    public void add(String name, long amount) {
+        AtomicLong counter = counters.get(name);
+        if(counter == null) {
+            counters.putIfAbsent(name, new AtomicLong());
+            counter = counters.get(name);
+        }
+        counter.addAndGet(amount);
+    }
+
+    /**
+     * Adds a value that is read when the report is made instead of being recorded (ie. the item cache's hits)
+     *
+     * @param   name            the name of the value
+     * @param   value           gives the current value
+     */
+    public void addGauge(String name, Supplier<Long> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Gets a timer, creating it if it does not exist yet
+     *
+     * @param   name            the name of the timer
+     * @return                  the timer's histogram
+     */
+    public TOCHistogram timer(String name) {
+        TOCHistogram histogram = timers.get(name);
+        if(histogram == null) {
+            timers.putIfAbsent(name, new TOCHistogram());
+            histogram = timers.get(name);
+        }
+        return histogram;
+    }
+
+    /**
+     * Gets the value of a counter
+     *
+     * @param   name            the name of the counter
+     * @return                  the counter's value (0 if nothing was counted)
+     */
+    public long getCount(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    // -------------------------------------------------- Reporting --------------------------------------------------
+    /**
+     * Get every timer and counter as text. Times are in microseconds
+     *
+     * @return                  the metrics report
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-36s %10s %10s %10s %10s %10s %10s%n", "TIMER (us)", "COUNT", "MEAN", "P50", "P90", "P99", "MAX"));
+        for(String name : new TreeSet<String>(timers.keySet())) {
+            TOCHistogram histogram = timers.get(name);
+            report.append(String.format("%-36s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount(),
+                                        histogram.getMean() / 1000.0, histogram.getPercentile(0.50) / 1000.0,
+                                        histogram.getPercentile(0.90) / 1000.0, histogram.getPercentile(0.99) / 1000.0,
+                                        histogram.getMax() / 1000.0));
+        }
+
+        report.append(String.format("%n%-36s %10s%n", "COUNTER", "VALUE"));
+        SortedMap<String,Long> values = new TreeMap<String,Long>();
+        for(Map.Entry<String,AtomicLong> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        for(Map.Entry<String,Supplier<Long>> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        for(Map.Entry<String,Long> entry : values.entrySet()) {
+            report.append(String.format("%-36s %10d%n", entry.getKey(), entry.getValue()));
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Writes the metrics report to a file
+     *
+     * @param   file            the path of the file to write to
+     */
+    public void dump(String file) {
+        try {
+            PrintWriter writer = new PrintWriter(new FileWriter(file));
+            writer.print(getReport());
+            writer.close();
+        }catch(IOException e) {
+            System.err.println("Metrics not written to " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forgets every recorded time and count. Gauges are left alone as they belong to other objects
+     */
+    public void reset() {
+        for(TOCHistogram histogram : timers.values()) {
+            histogram.reset();
+        }
+        for(AtomicLong counter : counters.values()) {
+            counter.set(0);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * What the TOC's metrics show through JMX (ie. in jconsole under TOC:type=Metrics)
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public interface TOCMetricsMBean {
+    /**
+     * Get every timer and counter as text
+     *
+     * @return                  the metrics report
+     */
+    public String getReport();
+
+    /**
+     * Writes the metrics report to a file
+     *
+     * @param   file            the path of the file to write to
+     */
+    public void dump(String file);
+
+    /**
+     * Forgets every recorded time and count
+     */
+    public void reset();
+}
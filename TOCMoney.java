@@ -0,0 +1,134 @@
+/**
+ * Money in the TOC is a long number of cents, so adding up costs is exact however many there are and nothing is
+ * allocated to do it. This class only has static functions to read, write and work with amounts in cents. Sums use
+ * Math.addExact and Math.multiplyExact so an amount that would not fit throws instead of quietly wrapping around
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCMoney {
+    /**
+     * Nothing to construct, every function is static
+     */
+    private TOCMoney() {
+    }
+
+    /**
+     * Adds two amounts
+     *
+     * @param   a               the first amount in cents
+     * @param   b               the second amount in cents
+     * @return                  the sum in cents
+     */
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * Works out the cost of several of an item
+     *
+     * @param   cents           the cost of one in cents
+     * @param   quantity        how many
+     * @return                  the total in cents
+     */
+    public static long times(long cents, int quantity) {
+        return Math.multiplyExact(cents, (long) quantity);
+    }
+
+    /**
+     * Changes an amount by a percentage, rounded to the nearest cent with halves going up. The percentage is taken to
+     * the hundredth of a percent and the rest of the sum is done in whole numbers, so the same change always gives the
+     * same cents
+     *
+     * @param   cents           the amount in cents
+     * @param   percent         the change (eg. 10 for 10% more, -5 for 5% less, 2.5 for 2.5% more)
+     * @return                  the new amount in cents
+     */
+    public static long percent(long cents, double percent) {
+        long hundredths = Math.round(percent * 100);
+        long scaled = Math.multiplyExact(cents, Math.addExact(10000L, hundredths));
+        return Math.floorDiv(Math.addExact(scaled, 5000L), 10000L);
+    }
+
+    /**
+     * Reads an amount typed in dollars, such as 2, 2.4, 2.40, $2.40 or -0.5
+     *
+     * @param   text            the amount in dollars
+     * @return                  the amount in cents
+     * @throws  NumberFormatException if the text is not an amount or has more than 2 decimal places
+     */
+    public static long parse(String text) {
+        String amount = text.trim();
+        boolean negative = amount.startsWith("-");
+        if(negative) {
+            amount = amount.substring(1).trim();
+        }
+        if(amount.startsWith("$")) {
+            amount = amount.substring(1);
+        }
+
+        int point = amount.indexOf('.');
+        String dollars = point < 0 ? amount : amount.substring(0, point);
+        String cents = point < 0 ? "" : amount.substring(point + 1);
+        if((dollars.isEmpty() && cents.isEmpty()) || cents.length() > 2 || !digits(dollars) || !digits(cents)) {
+            throw new NumberFormatException("Not an amount of money: " + text);
+        }
+
+        try {
+            long value = dollars.isEmpty() ? 0 : Math.multiplyExact(Long.parseLong(dollars), 100L);
+            if(!cents.isEmpty()) {
+                value = Math.addExact(value, Long.parseLong(cents.length() == 1 ? cents + "0" : cents));
+            }
+            return negative ? -value : value;
+        }catch(ArithmeticException e) {
+            throw new NumberFormatException("Too much money: " + text);
+        }
+    }
+
+    /**
+     * Writes an amount as a plain number of dollars with two decimal places, such as in a comma separated file
+     *
+     * @param   cents           the amount in cents
+     * @return                  the amount (eg. 2.40 or -0.50)
+     */
+    public static String toDecimal(long cents) {
+        StringBuilder text = new StringBuilder();
+        if(cents < 0) {
+            text.append('-');
+        }
+        // Long.MIN_VALUE has no positive so it is split before the sign is taken off
+        long dollars = Math.abs(cents / 100);
+        long rest = Math.abs(cents % 100);
+        text.append(dollars).append('.');
+        if(rest < 10) {
+            text.append('0');
+        }
+        return text.append(rest).toString();
+    }
+
+    /**
+     * Writes an amount the way it is shown to members
+     *
+     * @param   cents           the amount in cents
+     * @return                  the amount (eg. $2.40 or -$0.50)
+     */
+    public static String format(long cents) {
+        String amount = toDecimal(cents);
+        return cents < 0 ? "-$" + amount.substring(1) : "$" + amount;
+    }
+
+    /**
+     * Checks that a piece of an amount is only digits
+     *
+     * @param   text            the piece
+     * @return                  a boolean representing if every character is a digit
+     */
+    private static boolean digits(String text) {
+        for(int i=0; i<text.length(); i++) {
+            if(!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.*;
+
+/**
+ * A basket that has been finalised and is waiting to be written to the database. Takes a copy of the basket's lines
+ * so the terminal can start on the next basket straight away
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCPurchase {
+    private final int pmKeys;
+    private final List<TOCBasketLine> lines;
+
+    /**
+     * The constructor
+     *
+     * @param   memberPmKeys    the pmKeys of the member buying the basket
+     * @param   basket          the items being bought
+     */
+    public TOCPurchase(int memberPmKeys, TOCBasket basket) {
+        pmKeys = memberPmKeys;
+        List<TOCBasketLine> copy = new ArrayList<TOCBasketLine>();
+        for(TOCBasketLine line : basket.getLines()) {
+            copy.add(new TOCBasketLine(line.getBarcode(), line.getName(), line.getCost(), line.getQuantity()));
+        }
+        lines = Collections.unmodifiableList(copy);
+    }
+
+    // ------------------------------------------- Getters and Setters -------------------------------------------
+    /**
+     * Get the pmKeys of the member buying the basket
+     *
+     * @return                  the member's pmKeys
+     */
+    public int getPmKeys() {
+        return pmKeys;
+    }
+
+    /**
+     * Get the lines of the basket in the order they were scanned
+     *
+     * @return                  the basket's lines. The list can not be changed
+     */
+    public List<TOCBasketLine> getLines() {
+        return lines;
+    }
+}
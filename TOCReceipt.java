@@ -0,0 +1,59 @@
+import java.util.*;
+
+/**
+ * What one checkout did. The lines that were sold and the lines that ran out are split from the same copy of the
+ * basket the sale was recorded from, so what was charged always matches what was written even if the basket was
+ * changed while the checkout was waiting its turn
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCReceipt {
+    private final List<TOCBasketLine> sold;
+    private final List<TOCBasketLine> rejected;
+    private final long charged;
+
+    /**
+     * The constructor. Receipts do not change once they are made
+     *
+     * @param   soldLines       the lines that were charged, with how many of each were sold
+     * @param   rejectedLines   the lines that ran out of stock, with how many of each were not sold
+     */
+    public TOCReceipt(List<TOCBasketLine> soldLines, List<TOCBasketLine> rejectedLines) {
+        sold = Collections.unmodifiableList(new ArrayList<TOCBasketLine>(soldLines));
+        rejected = Collections.unmodifiableList(new ArrayList<TOCBasketLine>(rejectedLines));
+        long total = 0;
+        for(TOCBasketLine line : sold) {
+            total = TOCMoney.add(total, line.getTotal());
+        }
+        charged = total;
+    }
+
+    // ------------------------------------------------- Getters -------------------------------------------------
+    /**
+     * Get the lines that were charged to the member
+     *
+     * @return                  the sold lines in the order they were first scanned
+     */
+    public List<TOCBasketLine> getSold() {
+        return sold;
+    }
+
+    /**
+     * Get the lines that could not be sold because they ran out of stock
+     *
+     * @return                  the rejected lines with how many of each were not sold
+     */
+    public List<TOCBasketLine> getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Get what the member was charged for the checkout
+     *
+     * @return                  the total of the sold lines in cents
+     */
+    public long getCharged() {
+        return charged;
+    }
+}
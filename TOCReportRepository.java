@@ -0,0 +1,64 @@
+import java.time.*;
+import java.time.temporal.*;
+import java.util.*;
+
+/**
+ * Where the TOC keeps its sales totals. The totals are added to as every basket is recorded (by item for each day and
+ * by member for each month), so the reports read the totals instead of going through every transaction ever made.
+ * Payments are not sales so they are left out of every report
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public interface TOCReportRepository {
+    /**
+     * Gets the items that sold the most between two days
+     *
+     * @param   from            the first day (inclusive)
+     * @param   to              the last day (inclusive)
+     * @param   limit           the most items to return
+     * @return                  the items by barcode with the best seller first
+     */
+    public List<TOCSalesRow> getTopSellers(LocalDate from, LocalDate to, int limit);
+
+    /**
+     * Gets how much was sold in every day, month or year between two days
+     *
+     * @param   from            the first day (inclusive)
+     * @param   to              the last day (inclusive)
+     * @param   period          DAYS, MONTHS or YEARS
+     * @return                  one row for every period that had sales, oldest first. The key is the period
+     *                          (eg. 2026-10-18, 2026-10 or 2026)
+     */
+    public List<TOCSalesRow> getRevenue(LocalDate from, LocalDate to, ChronoUnit period);
+
+    /**
+     * Gets how much a member spent in every month between two days
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @param   from            the first day (only its month is used)
+     * @param   to              the last day (only its month is used)
+     * @return                  one row for every month the member bought something, oldest first
+     */
+    public List<TOCSalesRow> getMemberSpending(int pmkeys, LocalDate from, LocalDate to);
+
+    /**
+     * Gets the items in stock that sold the least between two days, including ones that did not sell at all
+     *
+     * @param   from            the first day (inclusive)
+     * @param   to              the last day (inclusive)
+     * @param   limit           the most items to return
+     * @return                  the items with the slowest first
+     */
+    public List<TOCStockRow> getSlowMovers(LocalDate from, LocalDate to, int limit);
+
+    /**
+     * Gets the items whose stock will run out within a number of days if they keep selling as fast as they did
+     * recently
+     *
+     * @param   days            how many days up to today the selling speed is worked out from
+     * @param   coverDays       how many days the stock should last
+     * @return                  the items that will run out first at the top
+     */
+    public List<TOCStockRow> getReorderCandidates(int days, int coverDays);
+}
@@ -0,0 +1,286 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Brings the member list in line with the unit's nominal roll in one go. The roll is read into a TOCIntMap by pmkeys
+ * and the stored members are then read once in pmkeys order and looked up in it, so the roll and the MEMBERS table are
+ * each only read once however long they are. Members on the roll but not stored are added, stored members whose name
+ * on the roll is different are renamed and members no longer on the roll are removed. Every change is then made in
+ * one commit.
+ *
+ * The roll has the columns PMKEYS,NAME and optionally ADMIN, with an optional header line. Without an ADMIN column
+ * stored members keep their admin status and new members are not admins. Admins that are not on the roll are kept so
+ * a roll from the posting cycle can never lock the admins out of the TOC
+ *
+ * Run with: java -cp .:sqlite-jdbc.jar TOCRoster [roll file] [apply]
+ * (use - or leave the file out for stdin. Without apply the changes are only reported)
+ *
+ * Do not run this while the TOC is running. Load the roll from the TOC's (L)oad nominal roll option instead, which
+ * updates the TOC's member directory as the changes are made. A TOC that is running only notices changes made by
+ * another program when it next checks the database (about twice a second).
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCRoster {
+    // The longest name the MEMBERS table allows
+    private static final int MAX_NAME = 25;
+
+    private final TOCStorage storage;
+    private final TOCMetrics metrics;
+
+    /**
+     * Everything a roll would change
+     */
+    public static class Changes {
+        private final List<TOCMember> added = new ArrayList<TOCMember>();
+        private final List<TOCMember> updated = new ArrayList<TOCMember>();
+        private final List<TOCMember> removed = new ArrayList<TOCMember>();
+        private final List<TOCMember> kept = new ArrayList<TOCMember>();
+        private int unchanged = 0;
+        private int rejected = 0;
+
+        /**
+         * Get the members on the roll that are not stored yet
+         *
+         * @return              the members to add
+         */
+        public List<TOCMember> getAdded() {
+            return added;
+        }
+
+        /**
+         * Get the stored members whose name or admin status is different on the roll
+         *
+         * @return              the members with their details from the roll
+         */
+        public List<TOCMember> getUpdated() {
+            return updated;
+        }
+
+        /**
+         * Get the stored members that are not on the roll
+         *
+         * @return              the members to remove
+         */
+        public List<TOCMember> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * Get the admins and protected members that are not on the roll but are kept anyway
+         *
+         * @return              the members that are kept
+         */
+        public List<TOCMember> getKept() {
+            return kept;
+        }
+
+        /**
+         * Get how many members are the same on the roll and in the TOC
+         *
+         * @return              the number of members left alone
+         */
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        /**
+         * Get how many records of the roll could not be read
+         *
+         * @return              the number of records written to the reject report
+         */
+        public int getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Check if the roll would change anything
+         *
+         * @return              a boolean representing if there is at least one add, update or removal
+         */
+        public boolean isEmpty() {
+            return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+        }
+
+        public String toString() {
+            return added.size() + " added, " + updated.size() + " updated, " + removed.size() + " removed, " +
+                   unchanged + " unchanged, " + kept.size() + " kept, " + rejected + " rejected";
+        }
+    }
+
+    /**
+     * Reports or applies a nominal roll
+     *
+     * @param   args            the roll (Default: stdin) and apply to make the changes
+     */
+    public static void main(String[] args) throws IOException {
+        String file = args.length > 0 ? args[0] : "-";
+        boolean apply = args.length > 1 && args[1].equalsIgnoreCase("apply");
+
+        TOCDatabase db = new TOCDatabase();
+        TOCRoster roster = new TOCRoster(db);
+        Reader in = file.equals("-") ? new InputStreamReader(System.in, "UTF-8") : new InputStreamReader(new FileInputStream(file), "UTF-8");
+        Writer rejects = new OutputStreamWriter(System.err);
+        Changes changes = roster.compare(in, rejects, Collections.<Integer>emptySet());
+        in.close();
+        rejects.flush();
+
+        PrintWriter out = new PrintWriter(System.out);
+        report(changes, out);
+        if(apply) {
+            roster.apply(changes);
+            out.println("Roster applied");
+        }else if(!changes.isEmpty()) {
+            out.println("Nothing changed. Run again with apply to make these changes");
+        }
+        out.flush();
+        db.close();
+    }
+
+    /**
+     * The constructor
+     *
+     * @param   toc             the storage holding the members
+     */
+    public TOCRoster(TOCStorage toc) {
+        storage = toc;
+        metrics = TOCMetrics.getInstance();
+    }
+
+    // ------------------------------------------------- Roster Functions -------------------------------------------------
+    /**
+     * Works out what a roll would change without changing anything
+     *
+     * @param   roll            the nominal roll to read
+     * @param   rejects         where records that can not be read are reported (LINE,REASON,RECORD)
+     * @param   protect         pmkeys that are never removed even if they are not on the roll (eg. whoever is logged in)
+     * @return                  the changes the roll would make
+     */
+    public Changes compare(Reader roll, Writer rejects, Set<Integer> protect) throws IOException {
+        long timer = metrics.start();
+        final Changes changes = new Changes();
+        final TOCIntMap<TOCMember> wanted = new TOCIntMap<TOCMember>();
+        // Remembers which records gave an admin status so the stored one is only changed when the roll says so
+        final TOCIntMap<Boolean> hasAdmin = new TOCIntMap<Boolean>();
+        TOCCsv csv = new TOCCsv(roll);
+        PrintWriter report = new PrintWriter(rejects);
+
+        List<String> record = csv.next();
+        if(record != null && record.size() > 0 && record.get(0).trim().equalsIgnoreCase("PMKEYS")) {
+            record = csv.next();
+        }
+        while(record != null) {
+            String reason = null;
+            int pmkeys = 0;
+            String name = "";
+            Boolean admin = null;
+            if(record.size() != 2 && record.size() != 3) {
+                reason = "expected 2 or 3 fields but found " + record.size();
+            }else {
+                try {
+                    pmkeys = Integer.parseInt(record.get(0).trim());
+                }catch(NumberFormatException e) {
+                    pmkeys = 0;
+                }
+                name = record.get(1).trim();
+                admin = record.size() == 3 ? TOCCsv.parseFlag(record.get(2)) : Boolean.FALSE;
+                if(pmkeys <= 0) {
+                    reason = "pmkeys must be a positive number";
+                }else if(name.isEmpty() || name.length() > MAX_NAME) {
+                    reason = "name must be 1 to " + MAX_NAME + " characters";
+                }else if(admin == null) {
+                    reason = "admin must be 1/0, true/false or yes/no";
+                }else if(wanted.containsKey(pmkeys)) {
+                    reason = "pmkeys is on the roll more than once";
+                }
+            }
+
+            if(reason != null) {
+                report.println(TOCCsv.format(csv.getRecordLine(), reason, TOCCsv.join(record)));
+                changes.rejected++;
+            }else {
+                wanted.put(pmkeys, new TOCMember(pmkeys, name, admin));
+                if(record.size() == 3) {
+                    hasAdmin.put(pmkeys, Boolean.TRUE);
+                }
+            }
+            record = csv.next();
+        }
+        report.flush();
+
+        // One pass over the stored members. Whatever is left in wanted afterwards is new
+        final Set<Integer> keep = protect;
+        storage.forEachMember(new Consumer<TOCMember>() {
+            public void accept(TOCMember stored) {
+                TOCMember onRoll = wanted.remove(stored.getPmKeys());
+                if(onRoll == null) {
+                    if(stored.isAdmin() || keep.contains(stored.getPmKeys())) {
+                        changes.kept.add(stored);
+                    }else {
+                        changes.removed.add(stored);
+                    }
+                    return;
+                }
+                boolean admin = hasAdmin.containsKey(stored.getPmKeys()) ? onRoll.isAdmin() : stored.isAdmin();
+                if(!onRoll.getName().equals(stored.getName()) || admin != stored.isAdmin()) {
+                    changes.updated.add(new TOCMember(stored.getPmKeys(), onRoll.getName(), admin));
+                }else {
+                    changes.unchanged++;
+                }
+            }
+        });
+        for(int pmkeys : wanted.keys()) {
+            changes.added.add(wanted.get(pmkeys));
+        }
+
+        metrics.stop("roster.compare", timer);
+        return changes;
+    }
+
+    /**
+     * Makes every change of a roll in one commit
+     *
+     * @param   changes         the changes worked out by compare
+     */
+    public void apply(Changes changes) {
+        long timer = metrics.start();
+        if(!changes.isEmpty()) {
+            List<TOCMember> changed = new ArrayList<TOCMember>(changes.added);
+            changed.addAll(changes.updated);
+            List<Integer> removed = new ArrayList<Integer>();
+            for(TOCMember member : changes.removed) {
+                removed.add(member.getPmKeys());
+            }
+            storage.syncMembers(changed, removed);
+        }
+
+        metrics.add("roster.added", changes.added.size());
+        metrics.add("roster.updated", changes.updated.size());
+        metrics.add("roster.removed", changes.removed.size());
+        metrics.stop("roster.apply", timer);
+    }
+
+    /**
+     * Writes out every change of a roll, one per line, followed by the totals
+     *
+     * @param   changes         the changes worked out by compare
+     * @param   out             where the report is written
+     */
+    public static void report(Changes changes, PrintWriter out) {
+        for(TOCMember member : changes.added) {
+            out.println("Added:   " + member.getPmKeys() + " " + member.getName() + (member.isAdmin() ? " (admin)" : ""));
+        }
+        for(TOCMember member : changes.updated) {
+            out.println("Updated: " + member.getPmKeys() + " " + member.getName() + (member.isAdmin() ? " (admin)" : ""));
+        }
+        for(TOCMember member : changes.removed) {
+            out.println("Removed: " + member.getPmKeys() + " " + member.getName());
+        }
+        for(TOCMember member : changes.kept) {
+            out.println("Kept:    " + member.getPmKeys() + " " + member.getName() + " (not on the roll)");
+        }
+        out.println(changes);
+    }
+}
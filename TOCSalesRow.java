@@ -0,0 +1,75 @@
+/**
+ * One line of a sales report: how much of something was sold and what it brought in. The key is whatever the report
+ * is grouped by, such as a barcode for top sellers or a day or month for revenue
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCSalesRow {
+    private final String key;
+    private final String name;
+    private final int quantity;
+    private final long revenue;
+
+    /**
+     * The constructor. Report rows do not change once they are read
+     *
+     * @param   rowKey          what the row is grouped by (eg. a barcode or a period such as 2026-10)
+     * @param   rowName         what is printed for the row (eg. the item's name or the period again)
+     * @param   rowQuantity     how many items were sold
+     * @param   rowRevenue      how much the items sold for in cents
+     */
+    public TOCSalesRow(String rowKey, String rowName, int rowQuantity, long rowRevenue) {
+        key = rowKey;
+        name = rowName;
+        quantity = rowQuantity;
+        revenue = rowRevenue;
+    }
+
+    // ------------------------------------------------- Getters -------------------------------------------------
+    /**
+     * Get what the row is grouped by
+     *
+     * @return                  the row's barcode, period or pmkeys
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Get what is printed for the row
+     *
+     * @return                  the row's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get how many items were sold
+     *
+     * @return                  the quantity sold
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Get how much the items sold for in cents
+     *
+     * @return                  the revenue in cents
+     */
+    public long getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * Shows the row the way it is printed on a report
+     *
+     * @return                  the row as name - quantity sold - $revenue
+     */
+    @Override
+    public String toString() {
+        return name + " - " + quantity + " sold - " + TOCMoney.format(revenue);
+    }
+}
@@ -0,0 +1,236 @@
+import java.time.*;
+import java.time.temporal.*;
+import java.util.*;
+
+/**
+ * The sales totals of the TOCMemoryStorage, kept the same way the database keeps its ITEM_SALES and MEMBER_SALES
+ * tables: a total for every item on every day (sorted by day so a range of days is read in one go) and a total for
+ * every member in every month. Not thread safe, the storage calls it while holding its own lock
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCSalesTotals {
+    // Items sold on each day by barcode
+    private final TreeMap<String,Map<String,Total>> itemDays;
+    // Items bought by each member in each month
+    private final TOCIntMap<TreeMap<String,Total>> memberMonths;
+
+    /**
+     * How many were sold and what they sold for
+     */
+    private static class Total {
+        private int quantity = 0;
+        private long revenue = 0;
+    }
+
+    /**
+     * The constructor. Starts with no sales
+     */
+    public TOCSalesTotals() {
+        itemDays = new TreeMap<String,Map<String,Total>>();
+        memberMonths = new TOCIntMap<TreeMap<String,Total>>();
+    }
+
+    /**
+     * Adds a sale to the totals
+     *
+     * @param   pmkeys          the pmkeys of the member that bought the items
+     * @param   barcode         the barcode of the items
+     * @param   time            when the sale was made (milliseconds since 1970)
+     * @param   quantity        how many were sold
+     * @param   revenue         what they sold for altogether in cents
+     */
+    public void add(int pmkeys, String barcode, long time, int quantity, long revenue) {
+        String day = TOCTime.day(time);
+        Map<String,Total> items = itemDays.get(day);
+        if(items == null) {
+            items = new HashMap<String,Total>();
+            itemDays.put(day, items);
+        }
+        Total item = items.get(barcode);
+        if(item == null) {
+            item = new Total();
+            items.put(barcode, item);
+        }
+        item.quantity += quantity;
+        item.revenue += revenue;
+
+        TreeMap<String,Total> months = memberMonths.get(pmkeys);
+        if(months == null) {
+            months = new TreeMap<String,Total>();
+            memberMonths.put(pmkeys, months);
+        }
+        String month = TOCTime.month(time);
+        Total member = months.get(month);
+        if(member == null) {
+            member = new Total();
+            months.put(month, member);
+        }
+        member.quantity += quantity;
+        member.revenue += revenue;
+    }
+
+    /**
+     * Adds up how much of each item was sold between two days
+     *
+     * @param   from            the first day (inclusive)
+     * @param   to              the last day (inclusive)
+     * @return                  the totals by barcode
+     */
+    private Map<String,Total> sold(LocalDate from, LocalDate to) {
+        Map<String,Total> sold = new HashMap<String,Total>();
+        for(Map<String,Total> day : itemDays.subMap("" + from, true, "" + to, true).values()) {
+            for(Map.Entry<String,Total> item : day.entrySet()) {
+                Total total = sold.get(item.getKey());
+                if(total == null) {
+                    total = new Total();
+                    sold.put(item.getKey(), total);
+                }
+                total.quantity += item.getValue().quantity;
+                total.revenue += item.getValue().revenue;
+            }
+        }
+        return sold;
+    }
+
+    // ------------------------------------------------- Report Functions -------------------------------------------------
+    /**
+     * Gets the items that sold the most between two days
+     *
+     * @param   from            the first day (inclusive)
+     * @param   to              the last day (inclusive)
+     * @param   limit           the most items to return
+     * @param   items           the items the TOC has now, for their names
+     * @return                  the items with the best seller first
+     */
+    public List<TOCSalesRow> getTopSellers(LocalDate from, LocalDate to, int limit, Map<String,TOCItem> items) {
+        List<TOCSalesRow> rows = new ArrayList<TOCSalesRow>();
+        for(Map.Entry<String,Total> sold : sold(from, to).entrySet()) {
+            TOCItem item = items.get(sold.getKey());
+            rows.add(new TOCSalesRow(sold.getKey(), item == null ? sold.getKey() : item.getName(), sold.getValue().quantity,
+                                     sold.getValue().revenue));
+        }
+        Collections.sort(rows, new Comparator<TOCSalesRow>() {
+            public int compare(TOCSalesRow a, TOCSalesRow b) {
+                if(a.getQuantity() != b.getQuantity()) {
+                    return b.getQuantity() - a.getQuantity();
+                }
+                return Long.compare(b.getRevenue(), a.getRevenue());
+            }
+        });
+        return rows.size() > limit ? new ArrayList<TOCSalesRow>(rows.subList(0, limit)) : rows;
+    }
+
+    /**
+     * Gets how much was sold in every day, month or year between two days
+     *
+     * @param   from            the first day (inclusive)
+     * @param   to              the last day (inclusive)
+     * @param   period          DAYS, MONTHS or YEARS
+     * @return                  one row for every period that had sales, oldest first
+     */
+    public List<TOCSalesRow> getRevenue(LocalDate from, LocalDate to, ChronoUnit period) {
+        int length = period == ChronoUnit.YEARS ? 4 : period == ChronoUnit.MONTHS ? 7 : 10;
+        // The days are in order so each period is finished before the next one starts
+        List<TOCSalesRow> rows = new ArrayList<TOCSalesRow>();
+        String current = null;
+        Total total = new Total();
+        for(Map.Entry<String,Map<String,Total>> day : itemDays.subMap("" + from, true, "" + to, true).entrySet()) {
+            String key = day.getKey().substring(0, length);
+            if(current != null && !current.equals(key)) {
+                rows.add(new TOCSalesRow(current, current, total.quantity, total.revenue));
+                total = new Total();
+            }
+            current = key;
+            for(Total item : day.getValue().values()) {
+                total.quantity += item.quantity;
+                total.revenue += item.revenue;
+            }
+        }
+        if(current != null) {
+            rows.add(new TOCSalesRow(current, current, total.quantity, total.revenue));
+        }
+        return rows;
+    }
+
+    /**
+     * Gets how much a member spent in every month between two days
+     *
+     * @param   pmkeys          the member's pmkeys
+     * @param   from            the first day (only its month is used)
+     * @param   to              the last day (only its month is used)
+     * @return                  one row for every month the member bought something, oldest first
+     */
+    public List<TOCSalesRow> getMemberSpending(int pmkeys, LocalDate from, LocalDate to) {
+        List<TOCSalesRow> rows = new ArrayList<TOCSalesRow>();
+        TreeMap<String,Total> months = memberMonths.get(pmkeys);
+        if(months == null) {
+            return rows;
+        }
+        String first = ("" + from).substring(0, 7);
+        String last = ("" + to).substring(0, 7);
+        for(Map.Entry<String,Total> month : months.subMap(first, true, last, true).entrySet()) {
+            rows.add(new TOCSalesRow(month.getKey(), month.getKey(), month.getValue().quantity, month.getValue().revenue));
+        }
+        return rows;
+    }
+
+    /**
+     * Gets the items in stock that sold the least between two days, including ones that did not sell at all
+     *
+     * @param   from            the first day (inclusive)
+     * @param   to              the last day (inclusive)
+     * @param   limit           the most items to return
+     * @param   items           the items the TOC has now
+     * @return                  the items with the slowest first
+     */
+    public List<TOCStockRow> getSlowMovers(LocalDate from, LocalDate to, int limit, Map<String,TOCItem> items) {
+        int days = (int) ChronoUnit.DAYS.between(from, to) + 1;
+        Map<String,Total> sold = sold(from, to);
+        List<TOCStockRow> rows = new ArrayList<TOCStockRow>();
+        for(TOCItem item : items.values()) {
+            if(item.getStock() > 0) {
+                Total total = sold.get(item.getBarcode());
+                rows.add(new TOCStockRow(item.getBarcode(), item.getName(), item.getStock(), total == null ? 0 : total.quantity, days));
+            }
+        }
+        Collections.sort(rows, new Comparator<TOCStockRow>() {
+            public int compare(TOCStockRow a, TOCStockRow b) {
+                if(a.getSold() != b.getSold()) {
+                    return a.getSold() - b.getSold();
+                }
+                return b.getStock() - a.getStock();
+            }
+        });
+        return rows.size() > limit ? new ArrayList<TOCStockRow>(rows.subList(0, limit)) : rows;
+    }
+
+    /**
+     * Gets the items whose stock will run out within a number of days if they keep selling as fast as they did over
+     * the last few days
+     *
+     * @param   days            how many days up to today the selling speed is worked out from
+     * @param   coverDays       how many days the stock should last
+     * @param   items           the items the TOC has now
+     * @return                  the items that will run out first at the top
+     */
+    public List<TOCStockRow> getReorderCandidates(int days, int coverDays, Map<String,TOCItem> items) {
+        LocalDate to = LocalDate.now();
+        Map<String,Total> sold = sold(to.minusDays(days - 1), to);
+        List<TOCStockRow> rows = new ArrayList<TOCStockRow>();
+        for(Map.Entry<String,Total> total : sold.entrySet()) {
+            TOCItem item = items.get(total.getKey());
+            // Compared without dividing, the same as the database does
+            if(item != null && (long) item.getStock() * days < (long) coverDays * total.getValue().quantity) {
+                rows.add(new TOCStockRow(item.getBarcode(), item.getName(), item.getStock(), total.getValue().quantity, days));
+            }
+        }
+        Collections.sort(rows, new Comparator<TOCStockRow>() {
+            public int compare(TOCStockRow a, TOCStockRow b) {
+                return Double.compare(a.getDaysLeft(), b.getDaysLeft());
+            }
+        });
+        return rows;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * What one scan did to the basket. Scans handed to TOCManager.scanItemAsync are looked up at the same time but join
+ * the basket in the order they were scanned, so each result keeps the basket's total as it was straight after its own
+ * item was added rather than whatever it is by the time the result is shown
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCScan {
+    private final String barcode;
+    private final TOCItem item;
+    private final long total;
+    private final int count;
+
+    /**
+     * The constructor. Scan results do not change once they are made
+     *
+     * @param   scanBarcode     the barcode that was scanned
+     * @param   scanItem        the item that was added to the basket or null if the barcode is not an item
+     * @param   scanTotal       the basket's total in cents straight after the scan
+     * @param   scanCount       how many items were in the basket straight after the scan
+     */
+    public TOCScan(String scanBarcode, TOCItem scanItem, long scanTotal, int scanCount) {
+        barcode = scanBarcode;
+        item = scanItem;
+        total = scanTotal;
+        count = scanCount;
+    }
+
+    // ------------------------------------------------- Getters -------------------------------------------------
+    /**
+     * Get the barcode that was scanned
+     *
+     * @return                  the barcode
+     */
+    public String getBarcode() {
+        return barcode;
+    }
+
+    /**
+     * Checks if the barcode was an item
+     *
+     * @return                  a boolean representing if the item was found and added to the basket
+     */
+    public boolean isFound() {
+        return item != null;
+    }
+
+    /**
+     * Get the item that was added to the basket
+     *
+     * @return                  the item or null if the barcode is not an item
+     */
+    public TOCItem getItem() {
+        return item;
+    }
+
+    /**
+     * Get the basket's total straight after the scan
+     *
+     * @return                  the total in cents
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Get how many items were in the basket straight after the scan
+     *
+     * @return                  the number of items
+     */
+    public int getCount() {
+        return count;
+    }
+}
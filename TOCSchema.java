@@ -0,0 +1,302 @@
+import java.sql.*;
+
+/**
+ * Keeps the tables of the database up to date. Every change to the tables is a numbered version made of sql
+ * statements, and the number of the last version applied is stored in the SCHEMA_VERSION table. When the TOC starts
+ * it applies any versions the database file has not seen yet, so old database files are upgraded where they are.
+ * Every statement must be safe to run on a database that already has the change (ie. use IF NOT EXISTS)
+ *
+ * Note to Devs: never change a version once it has been released. Add a new version to the end of the list instead
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCSchema {
+    // The statements of every version. Version 1 is the first entry
+    private static final String[][] VERSIONS = {
+        // Version 1: the tables that firstSetup() used to create
+        {
+            "CREATE TABLE IF NOT EXISTS MEMBERS("                       +
+            "ID    INT          NOT NULL,"                              +
+            "NAME  VARCHAR(25)  NOT NULL,"                              +
+            "ADMIN INT          NOT NULL,"                              +
+            "PRIMARY KEY (ID))",
+
+            "CREATE TABLE IF NOT EXISTS ITEMS("                         +
+            "ID       INTEGER     PRIMARY KEY    AUTOINCREMENT,"        +
+            "BARCODE  VARCHAR(30) NOT NULL,"                            +
+            "NAME     VARCHAR(25) NOT NULL,"                            +
+            "COST     REAL        NOT NULL,"                            +
+            "STOCK    INT         NOT NULL)",
+
+            "CREATE TABLE IF NOT EXISTS TRANSACTIONS("                  +
+            "NUM      INTEGER     PRIMARY KEY     AUTOINCREMENT,"       +
+            "PMKEYS   INT         NOT NULL,"                            +
+            "BARCODE  VARCHAR(30) NOT NULL,"                            +
+            "NAME     VARCHAR(30) NOT NULL,"                            +
+            "COST     REAL        NOT NULL,"                            +
+            "DATE     TEXT        NOT NULL)"
+        },
+        // Version 2: indexes so barcode lookups and bills do not scan the whole table. Items that were added twice
+        // before barcodes had to be unique are merged into their oldest entry, with the stock of every entry added up
+        // and the name and cost of the newest one. Each merge is printed first, see logDuplicateItems
+        {
+            "UPDATE ITEMS SET "                                                                                         +
+            "STOCK = (SELECT SUM(SAME.STOCK) FROM ITEMS AS SAME WHERE SAME.BARCODE = ITEMS.BARCODE), "                   +
+            "NAME = (SELECT SAME.NAME FROM ITEMS AS SAME WHERE SAME.BARCODE = ITEMS.BARCODE ORDER BY SAME.ID DESC LIMIT 1), " +
+            "COST = (SELECT SAME.COST FROM ITEMS AS SAME WHERE SAME.BARCODE = ITEMS.BARCODE ORDER BY SAME.ID DESC LIMIT 1) " +
+            "WHERE ID IN (SELECT MIN(ID) FROM ITEMS GROUP BY BARCODE HAVING COUNT(*) > 1)",
+
+            "DELETE FROM ITEMS WHERE ID NOT IN (SELECT MIN(ID) FROM ITEMS GROUP BY BARCODE)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS ITEMS_BARCODE ON ITEMS(BARCODE)",
+            "CREATE INDEX IF NOT EXISTS TRANSACTIONS_PMKEYS_DATE ON TRANSACTIONS(PMKEYS, DATE)"
+        },
+        // Version 3: the amount every member owes, kept up to date as purchases and payments are recorded
+        {
+            "CREATE TABLE IF NOT EXISTS BALANCES("                      +
+            "PMKEYS   INT         NOT NULL,"                            +
+            "OWED     REAL        NOT NULL,"                            +
+            "PRIMARY KEY (PMKEYS))",
+
+            "INSERT OR REPLACE INTO BALANCES (PMKEYS,OWED) "            +
+            "SELECT PMKEYS, SUM(COST) FROM TRANSACTIONS GROUP BY PMKEYS"
+        },
+        // Version 4: the number of the last journal entry that has been copied into the TRANSACTIONS table, so
+        // entries are never copied twice after a crash. See TOCJournal
+        {
+            "CREATE TABLE IF NOT EXISTS JOURNAL("                       +
+            "ID       INT         NOT NULL,"                            +
+            "LAST_SEQ INTEGER     NOT NULL,"                            +
+            "PRIMARY KEY (ID))",
+
+            "INSERT OR IGNORE INTO JOURNAL (ID,LAST_SEQ) VALUES (1,0)"
+        },
+        // Version 5: sales totals for the reports, by item for each day and by member for each month. They are added
+        // to in the same database transaction as the sale and filled in here from the sales made so far. The day
+        // comes first in ITEM_SALES so a range of days is read in one go
+        {
+            "CREATE TABLE IF NOT EXISTS ITEM_SALES("                    +
+            "DAY      TEXT        NOT NULL,"                            +
+            "BARCODE  VARCHAR(30) NOT NULL,"                            +
+            "QUANTITY INT         NOT NULL,"                            +
+            "REVENUE  REAL        NOT NULL,"                            +
+            "PRIMARY KEY (DAY, BARCODE)) WITHOUT ROWID",
+
+            "CREATE TABLE IF NOT EXISTS MEMBER_SALES("                  +
+            "PMKEYS   INT         NOT NULL,"                            +
+            "MONTH    TEXT        NOT NULL,"                            +
+            "QUANTITY INT         NOT NULL,"                            +
+            "SPENT    REAL        NOT NULL,"                            +
+            "PRIMARY KEY (PMKEYS, MONTH)) WITHOUT ROWID",
+
+            "INSERT OR REPLACE INTO ITEM_SALES (DAY,BARCODE,QUANTITY,REVENUE) "                 +
+            "SELECT SUBSTR(DATE,1,10), BARCODE, COUNT(*), SUM(COST) FROM TRANSACTIONS "          +
+            "WHERE BARCODE <> 'PAYMENT' GROUP BY SUBSTR(DATE,1,10), BARCODE",
+
+            "INSERT OR REPLACE INTO MEMBER_SALES (PMKEYS,MONTH,QUANTITY,SPENT) "                +
+            "SELECT PMKEYS, SUBSTR(DATE,1,7), COUNT(*), SUM(COST) FROM TRANSACTIONS "            +
+            "WHERE BARCODE <> 'PAYMENT' GROUP BY PMKEYS, SUBSTR(DATE,1,7)"
+        },
+        // Version 6: DATE holds milliseconds since 1970 UTC instead of text, so ranges of time are number comparisons
+        // on a small index. SQLite can not change the type of a column, so the table is copied into a new one and the
+        // old text is turned into milliseconds on the way (the text was the local time of the computer, which is what
+        // 'utc' converts from). NUM is copied as it is so the AUTOINCREMENT carries on from the same number. The
+        // TRANSACTIONS_DATE index is for reading every sale in a range of time
+        {
+            "CREATE TABLE IF NOT EXISTS TRANSACTIONS_NEW("              +
+            "NUM      INTEGER     PRIMARY KEY     AUTOINCREMENT,"       +
+            "PMKEYS   INT         NOT NULL,"                            +
+            "BARCODE  VARCHAR(30) NOT NULL,"                            +
+            "NAME     VARCHAR(30) NOT NULL,"                            +
+            "COST     REAL        NOT NULL,"                            +
+            "DATE     INTEGER     NOT NULL)",
+
+            "INSERT INTO TRANSACTIONS_NEW (NUM,PMKEYS,BARCODE,NAME,COST,DATE) "                             +
+            "SELECT NUM, PMKEYS, BARCODE, NAME, COST, "                                                     +
+            "CAST(ROUND((JULIANDAY(DATE,'utc') - 2440587.5) * 86400000) AS INTEGER) FROM TRANSACTIONS",
+
+            "DROP TABLE TRANSACTIONS",
+            "ALTER TABLE TRANSACTIONS_NEW RENAME TO TRANSACTIONS",
+            "CREATE INDEX IF NOT EXISTS TRANSACTIONS_PMKEYS_DATE ON TRANSACTIONS(PMKEYS, DATE)",
+            "CREATE INDEX IF NOT EXISTS TRANSACTIONS_DATE ON TRANSACTIONS(DATE)"
+        },
+        // Version 7: money is stored as a whole number of cents instead of dollars, so adding up costs is exact. Every
+        // table with money in it is copied the same way as version 6. The balances and sales totals are worked out
+        // again from the costs in cents rather than rounding the old sums, which may have drifted
+        {
+            "CREATE TABLE IF NOT EXISTS ITEMS_NEW("                     +
+            "ID       INTEGER     PRIMARY KEY    AUTOINCREMENT,"        +
+            "BARCODE  VARCHAR(30) NOT NULL,"                            +
+            "NAME     VARCHAR(25) NOT NULL,"                            +
+            "COST     INTEGER     NOT NULL,"                            +
+            "STOCK    INT         NOT NULL)",
+
+            "INSERT INTO ITEMS_NEW (ID,BARCODE,NAME,COST,STOCK) "                                           +
+            "SELECT ID, BARCODE, NAME, CAST(ROUND(COST * 100) AS INTEGER), STOCK FROM ITEMS",
+
+            "DROP TABLE ITEMS",
+            "ALTER TABLE ITEMS_NEW RENAME TO ITEMS",
+            "CREATE UNIQUE INDEX IF NOT EXISTS ITEMS_BARCODE ON ITEMS(BARCODE)",
+
+            "CREATE TABLE IF NOT EXISTS TRANSACTIONS_NEW("              +
+            "NUM      INTEGER     PRIMARY KEY     AUTOINCREMENT,"       +
+            "PMKEYS   INT         NOT NULL,"                            +
+            "BARCODE  VARCHAR(30) NOT NULL,"                            +
+            "NAME     VARCHAR(30) NOT NULL,"                            +
+            "COST     INTEGER     NOT NULL,"                            +
+            "DATE     INTEGER     NOT NULL)",
+
+            "INSERT INTO TRANSACTIONS_NEW (NUM,PMKEYS,BARCODE,NAME,COST,DATE) "                             +
+            "SELECT NUM, PMKEYS, BARCODE, NAME, CAST(ROUND(COST * 100) AS INTEGER), DATE FROM TRANSACTIONS",
+
+            "DROP TABLE TRANSACTIONS",
+            "ALTER TABLE TRANSACTIONS_NEW RENAME TO TRANSACTIONS",
+            "CREATE INDEX IF NOT EXISTS TRANSACTIONS_PMKEYS_DATE ON TRANSACTIONS(PMKEYS, DATE)",
+            "CREATE INDEX IF NOT EXISTS TRANSACTIONS_DATE ON TRANSACTIONS(DATE)",
+
+            "DROP TABLE BALANCES",
+
+            "CREATE TABLE IF NOT EXISTS BALANCES("                      +
+            "PMKEYS   INT         NOT NULL,"                            +
+            "OWED     INTEGER     NOT NULL,"                            +
+            "PRIMARY KEY (PMKEYS))",
+
+            "INSERT OR REPLACE INTO BALANCES (PMKEYS,OWED) "            +
+            "SELECT PMKEYS, SUM(COST) FROM TRANSACTIONS GROUP BY PMKEYS",
+
+            "DROP TABLE ITEM_SALES",
+
+            "CREATE TABLE IF NOT EXISTS ITEM_SALES("                    +
+            "DAY      TEXT        NOT NULL,"                            +
+            "BARCODE  VARCHAR(30) NOT NULL,"                            +
+            "QUANTITY INT         NOT NULL,"                            +
+            "REVENUE  INTEGER     NOT NULL,"                            +
+            "PRIMARY KEY (DAY, BARCODE)) WITHOUT ROWID",
+
+            "INSERT OR REPLACE INTO ITEM_SALES (DAY,BARCODE,QUANTITY,REVENUE) "                                        +
+            "SELECT DATE(DATE / 1000,'unixepoch','localtime'), BARCODE, COUNT(*), SUM(COST) FROM TRANSACTIONS "         +
+            "WHERE BARCODE <> 'PAYMENT' GROUP BY DATE(DATE / 1000,'unixepoch','localtime'), BARCODE",
+
+            "DROP TABLE MEMBER_SALES",
+
+            "CREATE TABLE IF NOT EXISTS MEMBER_SALES("                  +
+            "PMKEYS   INT         NOT NULL,"                            +
+            "MONTH    TEXT        NOT NULL,"                            +
+            "QUANTITY INT         NOT NULL,"                            +
+            "SPENT    INTEGER     NOT NULL,"                            +
+            "PRIMARY KEY (PMKEYS, MONTH)) WITHOUT ROWID",
+
+            "INSERT OR REPLACE INTO MEMBER_SALES (PMKEYS,MONTH,QUANTITY,SPENT) "                                      +
+            "SELECT PMKEYS, STRFTIME('%Y-%m',DATE / 1000,'unixepoch','localtime'), COUNT(*), SUM(COST) "               +
+            "FROM TRANSACTIONS WHERE BARCODE <> 'PAYMENT' "                                                           +
+            "GROUP BY PMKEYS, STRFTIME('%Y-%m',DATE / 1000,'unixepoch','localtime')"
+        },
+        // Version 8: how many times the items and the members have been changed, so a TOC that is running can tell
+        // when another program (eg. TOCCatalogue) changed them and read them again. See TOCDatabase.checkForChanges()
+        {
+            "CREATE TABLE IF NOT EXISTS CHANGES("                       +
+            "ID       INT         NOT NULL,"                            +
+            "ITEMS    INTEGER     NOT NULL,"                            +
+            "MEMBERS  INTEGER     NOT NULL,"                            +
+            "PRIMARY KEY (ID))",
+
+            "INSERT OR IGNORE INTO CHANGES (ID,ITEMS,MEMBERS) VALUES(1,0,0)"
+        }
+    };
+
+    /**
+     * Get the version the newest database should be at
+     *
+     * @return                  the latest version number
+     */
+    public static int getLatestVersion() {
+        return VERSIONS.length;
+    }
+
+    /**
+     * Reads the version of the database. A database from before versions were kept is at version 0
+     *
+     * @param   conn            the connection to the database
+     * @return                  the version of the database
+     */
+    public static int getVersion(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS SCHEMA_VERSION(VERSION INT NOT NULL)");
+
+        int version = 0;
+        ResultSet results = stmt.executeQuery("SELECT MAX(VERSION) AS VERSION FROM SCHEMA_VERSION");
+        if(results.next()) {
+            version = results.getInt("VERSION");
+        }
+        stmt.close();
+
+        return version;
+    }
+
+    /**
+     * Applies every version the database has not seen yet. Each version is applied in its own database transaction
+     * together with the change to its version number, so a failed upgrade leaves the database at the last version
+     * that worked
+     *
+     * @param   conn            the connection to the database
+     * @return                  how many versions were applied
+     */
+    public static int migrate(Connection conn) throws SQLException {
+        int version = getVersion(conn);
+        int applied = 0;
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            while(version < VERSIONS.length) {
+                if(version == 1) {
+                    logDuplicateItems(conn);
+                }
+                Statement stmt = conn.createStatement();
+                for(String sql : VERSIONS[version]) {
+                    stmt.executeUpdate(sql);
+                }
+                version++;
+
+                PreparedStatement record = conn.prepareStatement("INSERT INTO SCHEMA_VERSION VALUES(?)");
+                record.setInt(1,version);
+                record.executeUpdate();
+                record.close();
+                stmt.close();
+
+                conn.commit();
+                applied++;
+            }
+        }catch(SQLException e) {
+            conn.rollback();
+            throw e;
+        }finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        return applied;
+    }
+
+    /**
+     * Prints every barcode that is in the ITEMS table more than once, and what version 2 merges its entries into, so
+     * there is a record of the stock and costs that were combined
+     *
+     * @param   conn            the connection to the database, at version 1
+     */
+    private static void logDuplicateItems(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement();
+        ResultSet results = stmt.executeQuery("SELECT BARCODE, COUNT(*) AS ENTRIES, SUM(STOCK) AS STOCK, "                 +
+                                              "(SELECT SAME.NAME FROM ITEMS AS SAME WHERE SAME.BARCODE = ITEMS.BARCODE "  +
+                                              "ORDER BY SAME.ID DESC LIMIT 1) AS NAME, "                                 +
+                                              "(SELECT SAME.COST FROM ITEMS AS SAME WHERE SAME.BARCODE = ITEMS.BARCODE "  +
+                                              "ORDER BY SAME.ID DESC LIMIT 1) AS COST, "                                 +
+                                              "GROUP_CONCAT(COST, ' / ') AS COSTS "                                       +
+                                              "FROM ITEMS GROUP BY BARCODE HAVING COUNT(*) > 1");
+        while(results.next()) {
+            System.out.println("Merged " + results.getInt("ENTRIES") + " entries of barcode " + results.getString("BARCODE") +
+                               " into one: " + results.getString("NAME") + ", stock " + results.getInt("STOCK") +
+                               ", cost " + results.getString("COST") + " (was " + results.getString("COSTS") + ")");
+        }
+        stmt.close();
+    }
+}
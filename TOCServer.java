@@ -0,0 +1,288 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Lets several scanners use the TOC at the same time. Every terminal that connects gets its own session with its own
+ * member and basket, and all of them share one TOCStorage. Each terminal is served on its own thread (a virtual
+ * thread when Java supports it) and finalised baskets go through a TOCCheckout (the TOCJournal when started from
+ * main, or a TOCWriteQueue so checkouts that happen together share one commit)
+ *
+ * Terminals send one command per line and get one reply per line that starts with OK or ERR:
+ *      LOGIN <pmkeys>      log a member in (ends the last member's session). Refused for a while after too many
+ *                          failed logins in a row
+ *      SCAN <barcode>      add one of an item to the basket
+ *      REMOVE <barcode>    take one of an item out of the basket
+ *      VOID                empty the basket
+ *      TOTAL               the number of items in the basket and what they cost
+ *      FINISH              charge the basket to the member. Items that ran out are sent on a line each before the OK
+ *      BILL                the member's tab, one entry per line, followed by END
+ *      OWED                how much the member owes
+ *      QUIT                close the connection
+ *
+ * Only the computer the TOC runs on can connect unless another address to listen on is given (eg. the address of
+ * the counter network, or 0.0.0.0 for every network). LOGIN only takes a pmkeys, so a terminal address that gets it
+ * wrong too many times in a row is turned away with ERR for a while, the same as the TOCWebServer does
+ *
+ * Run with: java -cp .:sqlite-jdbc.jar TOCServer [port] [database file] [journal file] [address]
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCServer {
+    // The port terminals connect to when none is given
+    private static final int DEFAULT_PORT = 7070;
+    // How many bill entries are read at a time when sending a bill
+    private static final int BILL_PAGE_SIZE = 100;
+
+    private final TOCStorage db;
+    private final TOCCheckout writes;
+    private final ServerSocket server;
+    private final ExecutorService sessions;
+    private final TOCLoginThrottle logins;
+    private final TOCMetrics metrics;
+    private volatile boolean running = true;
+
+    /**
+     * Starts the server and waits for terminals to connect
+     *
+     * @param   args            the port to listen on, the database file, the journal file and the address to
+     *                          listen on (Default: 7070 tocDatabase.db tocJournal.log and this computer only)
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        TOCDatabase database = args.length > 1 ? new TOCDatabase(args[1]) : new TOCDatabase();
+        TOCJournal journal = new TOCJournal(database, args.length > 2 ? args[2] : "tocJournal.log");
+        InetAddress address = args.length > 3 ? InetAddress.getByName(args[3]) : InetAddress.getLoopbackAddress();
+
+        final TOCServer toc = new TOCServer(database, journal, address, port);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                toc.shutdown();
+            }
+        });
+        System.out.println("17 DIVISION TOC listening on " + address.getHostAddress() + " port " + toc.getPort() +
+                           (TOCThreads.hasVirtualThreads() ? " (virtual threads)" : ""));
+        toc.serve();
+    }
+
+    /**
+     * The constructor. Opens the port but does not accept terminals until serve() is called
+     *
+     * @param   database        the database every session shares
+     * @param   port            the port to listen on (0 for any free port)
+     */
+    public TOCServer(TOCStorage database, int port) throws IOException {
+        this(database, new TOCWriteQueue(database), port);
+    }
+
+    /**
+     * The constructor. Opens the port on this computer only but does not accept terminals until serve() is called
+     *
+     * @param   database        the database every session shares
+     * @param   checkout        where every session's finalised baskets are recorded (ie. a TOCJournal)
+     * @param   port            the port to listen on (0 for any free port)
+     */
+    public TOCServer(TOCStorage database, TOCCheckout checkout, int port) throws IOException {
+        this(database, checkout, InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * The constructor. Opens the port but does not accept terminals until serve() is called
+     *
+     * @param   database        the database every session shares
+     * @param   checkout        where every session's finalised baskets are recorded (ie. a TOCJournal)
+     * @param   address         the address to listen on (eg. the loopback address for this computer only, the
+     *                          address of the counter network, or 0.0.0.0 for every network)
+     * @param   port            the port to listen on (0 for any free port)
+     */
+    public TOCServer(TOCStorage database, TOCCheckout checkout, InetAddress address, int port) throws IOException {
+        db = database;
+        writes = checkout;
+        server = new ServerSocket(port, 0, address);
+        logins = new TOCLoginThrottle("server");
+        sessions = TOCThreads.newRequestExecutor("toc-session");
+        metrics = TOCMetrics.getInstance();
+    }
+
+    /**
+     * Get the port the server is listening on
+     *
+     * @return                  the port number
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts terminals until the server is shut down. Every terminal is served on its own thread
+     */
+    public void serve() {
+        while(running) {
+            try {
+                final Socket terminal = server.accept();
+                metrics.increment("server.sessions");
+                sessions.execute(new Runnable() {
+                    public void run() {
+                        session(terminal);
+                    }
+                });
+            }catch(IOException e) {
+                if(running) {
+                    System.err.println("Error at TOCServer serve(): " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting terminals, waits a moment for the open sessions to finish, writes any baskets still waiting and
+     * closes the database
+     */
+    public void shutdown() {
+        if(!running) {
+            return;
+        }
+        running = false;
+        try {
+            server.close();
+        }catch(IOException e) {
+            // The server is stopping so there is nothing else to do with it
+        }
+        sessions.shutdown();
+        try {
+            sessions.awaitTermination(5, TimeUnit.SECONDS);
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writes.shutdown();
+        db.close();
+    }
+
+    // ------------------------------------------------- Session Functions -------------------------------------------------
+    /**
+     * Serves one terminal until it quits or disconnects
+     *
+     * @param   terminal        the terminal's connection
+     */
+    private void session(Socket terminal) {
+        TOCManager manager = new TOCManager(db, writes);
+        String from = terminal.getInetAddress().getHostAddress();
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(terminal.getInputStream(), "UTF-8"));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(terminal.getOutputStream(), "UTF-8"));
+
+            String line = in.readLine();
+            while(line != null) {
+                long timer = metrics.start();
+                boolean more = handle(manager, from, line.trim(), out);
+                out.flush();
+                metrics.stop("server.request", timer);
+                if(!more) {
+                    break;
+                }
+                line = in.readLine();
+            }
+        }catch(IOException e) {
+            // The terminal disconnected, the basket it was building is dropped
+        }finally {
+            try {
+                terminal.close();
+            }catch(IOException e) {
+                // The connection is being thrown away so there is nothing else to do with it
+            }
+        }
+    }
+
+    /**
+     * Runs one command from a terminal and sends the reply
+     *
+     * @param   manager         the terminal's session
+     * @param   from            the address of the terminal
+     * @param   line            the command
+     * @param   out             where the reply is sent
+     * @return                  a boolean representing if the terminal wants to keep going
+     */
+    private boolean handle(TOCManager manager, String from, String line, final PrintWriter out) {
+        String[] parts = line.split("\\s+", 2);
+        String command = parts[0].toUpperCase();
+        String argument = parts.length > 1 ? parts[1].trim() : "";
+
+        if(command.equals("QUIT")) {
+            out.println("OK BYE");
+            return false;
+        }
+        if(command.equals("LOGIN")) {
+            if(logins.isLockedOut(from)) {
+                out.println("ERR Too many failed logins, wait a minute and try again");
+                return true;
+            }
+            int pmkeys;
+            try {
+                pmkeys = Integer.parseInt(argument);
+            }catch(NumberFormatException e) {
+                pmkeys = 0;
+            }
+            if(manager.switchMember(pmkeys)) {
+                logins.succeeded(from);
+                out.println("OK " + manager.getMemberName());
+            }else {
+                logins.failed(from);
+                out.println("ERR Member does not exist");
+            }
+            return true;
+        }
+        if(manager.getMemberPmKeys() == 0) {
+            out.println("ERR Not logged in");
+            return true;
+        }
+
+        if(command.equals("SCAN")) {
+            if(manager.changeItem(argument)) {
+                manager.addItemToTransaction();
+                out.println("OK " + manager.getItemName() + " - " + TOCMoney.format(manager.getItemCost()) + " - Total " +
+                            TOCMoney.format(manager.getTransactionTotal()));
+            }else {
+                out.println("ERR Item does not exist");
+            }
+        }else if(command.equals("REMOVE")) {
+            if(manager.removeItemFromTransaction(argument)) {
+                out.println("OK Total " + TOCMoney.format(manager.getTransactionTotal()));
+            }else {
+                out.println("ERR Item is not in the transaction");
+            }
+        }else if(command.equals("VOID")) {
+            manager.voidTransaction();
+            out.println("OK");
+        }else if(command.equals("TOTAL")) {
+            out.println("OK " + manager.getTransactionCount() + " " + TOCMoney.format(manager.getTransactionTotal()));
+        }else if(command.equals("FINISH")) {
+            TOCReceipt receipt;
+            try {
+                receipt = manager.finaliseTransaction();
+            }catch(CompletionException e) {
+                // Nothing was charged and the basket is kept so the terminal can try again
+                out.println("ERR The sale could not be recorded");
+                return true;
+            }
+            for(TOCBasketLine rejected : receipt.getRejected()) {
+                out.println("REJECTED " + rejected.getQuantity() + " x " + rejected.getName());
+            }
+            out.println("OK");
+        }else if(command.equals("BILL")) {
+            manager.getBill(null, null, BILL_PAGE_SIZE, new Consumer<TOCBillRow>() {
+                public void accept(TOCBillRow row) {
+                    out.println(row);
+                }
+            });
+            out.println("END");
+        }else if(command.equals("OWED")) {
+            out.println("OK " + TOCMoney.format(manager.getAmountOwed()));
+        }else {
+            out.println("ERR Unknown command");
+        }
+        return true;
+    }
+}
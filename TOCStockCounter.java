@@ -0,0 +1,128 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Keeps a count of the stock of every item that has been sold so checkouts can check and reserve stock in memory
+ * before they go to the database. The database is still the one that decides if a sale goes through, this only lets
+ * us turn away baskets that would obviously oversell without waiting for the database
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCStockCounter {
+    private final ConcurrentHashMap<String,AtomicInteger> counts;
+    // Stock that has been sold in the journal but not taken out of the database yet
+    private final ConcurrentHashMap<String,AtomicInteger> pending;
+
+    /**
+     * The constructor. Starts with no items counted
+     */
+    public TOCStockCounter() {
+        counts = new ConcurrentHashMap<String,AtomicInteger>();
+        pending = new ConcurrentHashMap<String,AtomicInteger>();
+    }
+
+    /**
+     * Checks if an item has been counted yet
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  a boolean representing if the item has a count
+     */
+    public boolean isCounted(String barcode) {
+        return counts.containsKey(barcode);
+    }
+
+    /**
+     * Sets the count of an item to the stock the database has recorded
+     *
+     * @param   barcode         the barcode of the item
+     * @param   stock           the stock recorded in the database
+     */
+    public void set(String barcode, int stock) {
+        AtomicInteger count = counts.putIfAbsent(barcode, new AtomicInteger(stock));
+        if(count != null) {
+            count.set(stock);
+        }
+    }
+
+    /**
+     * Takes stock of an item out of its count if there is enough of it
+     *
+     * @param   barcode         the barcode of the item
+     * @param   quantity        how many of the item to take
+     * @return                  how many were taken. This is the quantity asked for or whatever stock was left
+     */
+    public int reserve(String barcode, int quantity) {
+        AtomicInteger count = counts.get(barcode);
+        if(count == null) {
+            return 0;
+        }
+        while(true) {
+            int stock = count.get();
+            int taken = Math.min(stock, quantity);
+            if(taken <= 0) {
+                return 0;
+            }
+            if(count.compareAndSet(stock, stock - taken)) {
+                return taken;
+            }
+        }
+    }
+
+    /**
+     * Puts stock back into the count of an item. Used when a reservation did not make it into the database
+     *
+     * @param   barcode         the barcode of the item
+     * @param   quantity        how many of the item to put back
+     */
+    public void release(String barcode, int quantity) {
+        AtomicInteger count = counts.get(barcode);
+        if(count != null) {
+            count.addAndGet(quantity);
+        }
+    }
+
+    /**
+     * Changes how much of an item has been sold but not taken out of the database yet
+     *
+     * @param   barcode         the barcode of the item
+     * @param   quantity        how many to add (negative once they are in the database)
+     */
+    public void addPending(String barcode, int quantity) {
+        AtomicInteger count = pending.get(barcode);
+        if(count == null) {
+            pending.putIfAbsent(barcode, new AtomicInteger());
+            count = pending.get(barcode);
+        }
+        count.addAndGet(quantity);
+    }
+
+    /**
+     * Get how much of an item has been sold but not taken out of the database yet. Take this off the stock the
+     * database has recorded before setting the count
+     *
+     * @param   barcode         the barcode of the item
+     * @return                  how many are waiting to be taken out of the database
+     */
+    public int getPending(String barcode) {
+        AtomicInteger count = pending.get(barcode);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Forgets the count of an item so it is read from the database again next time it is sold
+     *
+     * @param   barcode         the barcode of the item
+     */
+    public void forget(String barcode) {
+        counts.remove(barcode);
+    }
+
+    /**
+     * Forgets the count of every item so they are all read from the database again. What is pending is kept as it is
+     * still waiting to be taken out of the database
+     */
+    public void forgetAll() {
+        counts.clear();
+    }
+}
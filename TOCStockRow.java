@@ -0,0 +1,106 @@
+/**
+ * One line of a stock report: an item's stock next to how fast it has been selling, so admins can see what is not
+ * moving and what needs ordering before it runs out
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCStockRow {
+    private final String barcode;
+    private final String name;
+    private final int stock;
+    private final int sold;
+    private final double perDay;
+
+    /**
+     * The constructor. Report rows do not change once they are read
+     *
+     * @param   rowBarcode      the barcode of the item
+     * @param   rowName         the name of the item
+     * @param   rowStock        how many are in stock now
+     * @param   rowSold         how many were sold during the days the report looked at
+     * @param   days            how many days the report looked at
+     */
+    public TOCStockRow(String rowBarcode, String rowName, int rowStock, int rowSold, int days) {
+        barcode = rowBarcode;
+        name = rowName;
+        stock = rowStock;
+        sold = rowSold;
+        perDay = days > 0 ? (double) rowSold / days : 0.0;
+    }
+
+    // ------------------------------------------------- Getters -------------------------------------------------
+    /**
+     * Get the barcode of the item
+     *
+     * @return                  the item's barcode
+     */
+    public String getBarcode() {
+        return barcode;
+    }
+
+    /**
+     * Get the name of the item
+     *
+     * @return                  the item's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get how many are in stock now
+     *
+     * @return                  the item's stock
+     */
+    public int getStock() {
+        return stock;
+    }
+
+    /**
+     * Get how many were sold during the days the report looked at
+     *
+     * @return                  the quantity sold
+     */
+    public int getSold() {
+        return sold;
+    }
+
+    /**
+     * Get how many sell on an average day
+     *
+     * @return                  the sales per day
+     */
+    public double getPerDay() {
+        return perDay;
+    }
+
+    /**
+     * Get how many days the stock will last if it keeps selling at the same speed
+     *
+     * @return                  the days of stock left (infinite if it has not been selling)
+     */
+    public double getDaysLeft() {
+        return perDay > 0 ? stock / perDay : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Get how many to order so the stock lasts a number of days at the same speed
+     *
+     * @param   days            how many days the stock should last
+     * @return                  how many to order (0 if there is already enough)
+     */
+    public int getReorder(int days) {
+        return Math.max(0, (int) Math.ceil(perDay * days) - stock);
+    }
+
+    /**
+     * Shows the row the way it is printed on a report
+     *
+     * @return                  the row as name - stock - sales per day
+     */
+    @Override
+    public String toString() {
+        return name + " - " + stock + " in stock - " + Math.round(perDay * 10) / 10.0 + " a day";
+    }
+}
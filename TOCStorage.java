@@ -0,0 +1,18 @@
+/**
+ * Everything the TOC stores. TOCDatabase keeps it in the SQLite database file and TOCMemoryStorage keeps it in memory
+ * with snapshots to disk
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public interface TOCStorage extends TOCMemberRepository, TOCItemRepository, TOCTransactionRepository, TOCReportRepository {
+    /**
+     * Sets up an empty store with the first admin
+     */
+    public void firstSetup();
+
+    /**
+     * Saves anything that has not been saved and lets go of the store. Call this when the TOC is shutting down
+     */
+    public void close();
+}
@@ -0,0 +1,115 @@
+import java.sql.*;
+
+/**
+ * The SQLite settings every connection to the database is opened with. The standard profile keeps a write ahead log
+ * so bill lookups and reports read from their own snapshot instead of waiting for a checkout to finish writing, and
+ * only syncs the disk when the log is checkpointed instead of on every commit
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCStorageProfile {
+    private final String journalMode;
+    private final String synchronous;
+    private final int cacheSizeKb;
+    private final long mmapSizeBytes;
+    private final int busyTimeoutMillis;
+
+    /**
+     * The constructor
+     *
+     * @param   journal         the journal mode (ie. WAL, DELETE)
+     * @param   sync            how often SQLite waits for the disk (OFF, NORMAL, FULL or EXTRA)
+     * @param   cacheKb         how much of the database each connection keeps in memory, in kilobytes
+     * @param   mmapBytes       how much of the database file is memory mapped (0 to not map it)
+     * @param   busyMillis      how long to wait for another connection's lock before giving up
+     */
+    public TOCStorageProfile(String journal, String sync, int cacheKb, long mmapBytes, int busyMillis) {
+        journalMode = journal;
+        synchronous = sync;
+        cacheSizeKb = cacheKb;
+        mmapSizeBytes = mmapBytes;
+        busyTimeoutMillis = busyMillis;
+    }
+
+    /**
+     * The settings the TOC uses unless it is told otherwise. With a write ahead log, NORMAL can lose the last few
+     * commits if the computer loses power but never corrupts the database
+     *
+     * @return                  the standard profile
+     */
+    public static TOCStorageProfile standard() {
+        return new TOCStorageProfile("WAL", "NORMAL", 16384, 268435456L, 10000);
+    }
+
+    /**
+     * The same as the standard profile but waits for the disk on every commit so no sale is lost on a power cut
+     *
+     * @return                  the durable profile
+     */
+    public static TOCStorageProfile durable() {
+        return new TOCStorageProfile("WAL", "FULL", 16384, 268435456L, 10000);
+    }
+
+    /**
+     * Applies the settings to a connection that has just been opened
+     *
+     * @param   conn            the new connection
+     */
+    public void apply(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement();
+        stmt.execute("PRAGMA journal_mode = " + journalMode);
+        stmt.execute("PRAGMA synchronous = " + synchronous);
+        // A negative cache size is in kilobytes instead of pages
+        stmt.execute("PRAGMA cache_size = -" + cacheSizeKb);
+        stmt.execute("PRAGMA mmap_size = " + mmapSizeBytes);
+        stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+        stmt.close();
+    }
+
+    // ------------------------------------------- Getters and Setters -------------------------------------------
+    /**
+     * Get the journal mode
+     *
+     * @return                  the journal mode (ie. WAL)
+     */
+    public String getJournalMode() {
+        return journalMode;
+    }
+
+    /**
+     * Get how often SQLite waits for the disk
+     *
+     * @return                  the synchronous level (ie. NORMAL)
+     */
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * Get how much of the database each connection keeps in memory
+     *
+     * @return                  the cache size in kilobytes
+     */
+    public int getCacheSizeKb() {
+        return cacheSizeKb;
+    }
+
+    /**
+     * Get how much of the database file is memory mapped
+     *
+     * @return                  the mmap size in bytes
+     */
+    public long getMmapSizeBytes() {
+        return mmapSizeBytes;
+    }
+
+    /**
+     * Get how long a connection waits for another connection's lock
+     *
+     * @return                  the busy timeout in milliseconds
+     */
+    public int getBusyTimeoutMillis() {
+        return busyTimeoutMillis;
+    }
+}
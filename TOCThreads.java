@@ -0,0 +1,58 @@
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+
+/**
+ * Makes the threads that serve the TOC's terminals. On a Java version with virtual threads every request gets its
+ * own virtual thread, so a terminal waiting on the database does not hold up an operating system thread. On older
+ * versions a normal cached thread pool is used instead
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCThreads {
+    /**
+     * The constructor. Use the static functions instead
+     */
+    private TOCThreads() {
+    }
+
+    /**
+     * Makes an executor that starts a new thread for every task it is given
+     *
+     * @param   name            the name given to the threads of a normal thread pool
+     * @return                  a virtual thread executor if this Java version has one, otherwise a cached thread pool
+     */
+    public static ExecutorService newRequestExecutor(final String name) {
+        // Looked up by name so the TOC still compiles and runs on Java 8
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }catch(Exception e) {
+            // This Java version has no virtual threads
+        }
+
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private int next = 1;
+
+            public synchronized Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, name + "-" + next++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Checks if the executor made by newRequestExecutor(String name) uses virtual threads
+     *
+     * @return                  a boolean representing if this Java version has virtual threads
+     */
+    public static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        }catch(NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
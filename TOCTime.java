@@ -0,0 +1,60 @@
+import java.time.*;
+
+/**
+ * Turns the times the TOC stores into dates and back. Purchase times are stored as the number of milliseconds since
+ * 1 January 1970 UTC, which sorts and compares as a plain number. Dates shown to members and the days and months the
+ * sales totals are kept by use the time zone of the computer the TOC runs on
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCTime {
+    /**
+     * Get the time now
+     *
+     * @return                  the milliseconds since 1970
+     */
+    public static long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Turns a date and time on this computer's clock into a stored time
+     *
+     * @param   dateTime        the date and time
+     * @return                  the milliseconds since 1970
+     */
+    public static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Turns a stored time into a date and time on this computer's clock
+     *
+     * @param   millis          the milliseconds since 1970
+     * @return                  the date and time
+     */
+    public static LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    /**
+     * Get the day a stored time falls on, the way the sales totals are kept
+     *
+     * @param   millis          the milliseconds since 1970
+     * @return                  the day as yyyy-MM-dd
+     */
+    public static String day(long millis) {
+        return "" + toDateTime(millis).toLocalDate();
+    }
+
+    /**
+     * Get the month a stored time falls in, the way the sales totals are kept
+     *
+     * @param   millis          the milliseconds since 1970
+     * @return                  the month as yyyy-MM
+     */
+    public static String month(long millis) {
+        return day(millis).substring(0, 7);
+    }
+}
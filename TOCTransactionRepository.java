@@ -0,0 +1,140 @@
+import java.time.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Where the TOC keeps what members bought and paid, and how much each of them owes
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public interface TOCTransactionRepository {
+    /**
+     * Records a member buying one of an item
+     *
+     * @param   pmkeys          the pmkeys of the member making the transaction
+     * @param   barcode         the barcode of the item
+     * @return                  a boolean indicating if the transaction was successful
+     */
+    public boolean addTransaction(int pmkeys, String barcode);
+
+    /**
+     * Records a member buying a basket. Lines are only sold while there is stock left
+     *
+     * @param   pmkeys          the pmkeys of the member making the transaction
+     * @param   basket          the items the member is buying
+     * @return                  how many of each line of the basket were sold, in the same order as the basket's lines
+     */
+    public int[] addTransactions(int pmkeys, TOCBasket basket);
+
+    /**
+     * Records several baskets at once
+     *
+     * @param   purchases       the baskets to record
+     * @return                  how many of each line of each basket were sold, in the same order as the purchases
+     */
+    public List<int[]> addTransactions(List<TOCPurchase> purchases);
+
+    /**
+     * Records a payment towards a member's tab
+     *
+     * @param   pmkeys          the pmkeys of the member paying
+     * @param   amount          how much the member paid in cents
+     */
+    public void settleBalance(int pmkeys, long amount);
+
+    /**
+     * Get how much a member owes
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @return                  what the member owes in cents (0 if they have never bought anything)
+     */
+    public long getBalance(int pmkeys);
+
+    /**
+     * Gets what every member owes
+     *
+     * @return                  every non zero balance in cents by pmkeys in pmkeys order
+     */
+    public Map<Integer,Long> getBalances();
+
+    /**
+     * Works every balance out again from the recorded purchases and payments
+     *
+     * @param   fix             a boolean representing if wrong balances should be corrected
+     * @return                  the pmkeys of every member whose stored balance was wrong
+     */
+    public List<Integer> verifyBalances(boolean fix);
+
+    /**
+     * Gets a member's whole bill as text
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @return                  a String with one line per entry
+     */
+    public String findTransactions(int pmkeys);
+
+    /**
+     * Hands every entry of a member's bill to the visitor in the order they were bought
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @param   from            the earliest purchase to include (null for no limit)
+     * @param   to              the purchase time to stop before (null for no limit)
+     * @param   pageSize        how many entries to read at a time
+     * @param   visitor         called with every entry of the bill
+     */
+    public void forEachTransaction(int pmkeys, LocalDateTime from, LocalDateTime to, int pageSize, Consumer<TOCBillRow> visitor);
+
+    /**
+     * Reads one page of a member's bill
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @param   from            the earliest purchase to include (null for no limit)
+     * @param   to              the purchase time to stop before (null for no limit)
+     * @param   after           the last entry of the previous page (null for the first page)
+     * @param   pageSize        the most entries to return
+     * @return                  the entries of the page in the order they were bought
+     */
+    public List<TOCBillRow> findTransactions(int pmkeys, LocalDateTime from, LocalDateTime to, TOCBillRow after, int pageSize);
+
+    /**
+     * Reads one page of a member's bill from the latest entry back, such as to show what they bought last
+     *
+     * @param   pmkeys          the pmkeys of the member
+     * @param   before          the last entry of the previous page (null for the first page, which ends with the
+     *                          latest entry)
+     * @param   pageSize        the most entries to return
+     * @return                  the entries of the page, newest first
+     */
+    public List<TOCBillRow> findLatestTransactions(int pmkeys, TOCBillRow before, int pageSize);
+
+    /**
+     * Hands every sale and payment made between two times to the visitor in the order they were made
+     *
+     * @param   from            the earliest entry to include (null for no limit)
+     * @param   to              the time to stop before (null for no limit)
+     * @param   pageSize        how many entries to read at a time
+     * @param   visitor         called with every entry
+     */
+    public void forEachSale(LocalDateTime from, LocalDateTime to, int pageSize, Consumer<TOCBillRow> visitor);
+
+    /**
+     * Reads one page of every sale and payment made between two times
+     *
+     * @param   from            the earliest entry to include (null for no limit)
+     * @param   to              the time to stop before (null for no limit)
+     * @param   after           the last entry of the previous page (null for the first page)
+     * @param   pageSize        the most entries to return
+     * @return                  the entries of the page in the order they were made
+     */
+    public List<TOCBillRow> findSales(LocalDateTime from, LocalDateTime to, TOCBillRow after, int pageSize);
+
+    /**
+     * Adds up what every member bought and paid between two times
+     *
+     * @param   from            the earliest entry to include
+     * @param   to              the time to stop before
+     * @return                  the total in cents of every member with entries in the period by pmkeys
+     */
+    public Map<Integer,Long> getBillTotals(LocalDateTime from, LocalDateTime to);
+}
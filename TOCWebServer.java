@@ -0,0 +1,597 @@
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Serves the kiosk page (main.html) and lets browsers and tablets use the TOC over HTTP. Every browser that logs in
+ * gets a session cookie that maps to its own TOCManager, so each counter has its own member and basket, and all of
+ * them share one TOCStorage. Requests are handled on their own thread (a virtual thread when Java supports it), and
+ * connections are kept open between requests. Finalised baskets go through a TOCCheckout the same way they do for the
+ * TOCServer
+ *
+ * Requests that change something must be POSTs and requests that only read must be GETs, anything else gets a 405.
+ * Replies are small JSON objects that always have "ok". Failed requests also have "error" and a 4xx status, or 500
+ * if something went wrong inside the TOC. Money is sent in cents. Parameters can be sent in the query string or as a
+ * form (application/x-www-form-urlencoded):
+ *      GET  /                  the kiosk page
+ *      POST /login             pmkeys=...      log a member in (ends the last member's session on this browser)
+ *      POST /logout                            end the session. The basket is dropped
+ *      POST /scan              barcode=...     add one of an item to the basket
+ *      POST /remove            barcode=...     take one of an item out of the basket
+ *      POST /void                              empty the basket
+ *      GET  /basket                            the lines of the basket, the number of items and the total
+ *      POST /checkout                          charge the basket to the member, list the items that ran out and
+ *                                              send what was charged
+ *      GET  /bill              after=...&time=...&limit=...&order=...
+ *                                              one page of the member's tab and what they owe. The next page starts
+ *                                              after the num and time of the last entry. order=newest starts from the
+ *                                              latest entry and goes back, otherwise the tab starts from the first
+ *
+ * Only the computer the TOC runs on can connect unless another address to listen on is given (eg. the address of
+ * the counter network, or 0.0.0.0 for every network). A browser that gets the pmkeys wrong too many times in a row is
+ * turned away from /login with a 429 for a while, so pmkeys can not be guessed by trying them one after the other
+ *
+ * Run with: java -cp .:sqlite-jdbc.jar TOCWebServer [port] [database file] [journal file] [page] [address]
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCWebServer {
+    // The port browsers connect to when none is given
+    private static final int DEFAULT_PORT = 8080;
+    // The address listened on when none is given. Only this computer can connect
+    private static final String DEFAULT_ADDRESS = "127.0.0.1";
+    // The name of the cookie that holds the session
+    private static final String COOKIE = "TOCSESSION";
+    // How long a session is kept without any requests before it has to log in again
+    private static final long SESSION_MILLIS = 15 * 60 * 1000;
+    // The most bill entries sent in one reply, and how many are sent when no limit is given
+    private static final int MAX_BILL_PAGE = 200;
+    private static final int DEFAULT_BILL_PAGE = 50;
+    // The longest form that is read. The TOC's forms only ever hold a pmkeys or a barcode
+    private static final int MAX_FORM_BYTES = 4096;
+    // The requests that only read, and the ones that change something. A change is never made by a GET, so a link or
+    // image on another site can not scan, check out or log out for a member
+    private static final Set<String> READS = new HashSet<String>(Arrays.asList("/basket", "/bill"));
+    private static final Set<String> CHANGES = new HashSet<String>(Arrays.asList("/login", "/logout", "/scan", "/remove",
+                                                                                 "/void", "/checkout"));
+
+    private final TOCStorage db;
+    private final TOCCheckout writes;
+    private final HttpServer server;
+    private final ExecutorService requests;
+    private final byte[] page;
+    private final ConcurrentHashMap<String,Session> sessions;
+    private final TOCLoginThrottle logins;
+    private final SecureRandom random;
+    private final TOCMetrics metrics;
+
+    /**
+     * A browser that has logged in
+     */
+    private static class Session {
+        private final TOCManager manager;
+        private volatile long lastUsed;
+
+        private Session(TOCManager sessionManager) {
+            manager = sessionManager;
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The reply to one request
+     */
+    private static class Reply {
+        private final int status;
+        private final String json;
+
+        private Reply(int replyStatus, String replyJson) {
+            status = replyStatus;
+            json = replyJson;
+        }
+    }
+
+    /**
+     * Starts the server and waits for browsers to connect
+     *
+     * @param   args            the port to listen on, the database file, the journal file, the kiosk page and the
+     *                          address to listen on (Default: 8080 tocDatabase.db tocJournal.log main.html 127.0.0.1)
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        TOCDatabase database = args.length > 1 ? new TOCDatabase(args[1]) : new TOCDatabase();
+        TOCJournal journal = new TOCJournal(database, args.length > 2 ? args[2] : "tocJournal.log");
+        String kiosk = args.length > 3 ? args[3] : "main.html";
+        String address = args.length > 4 ? args[4] : DEFAULT_ADDRESS;
+
+        final TOCWebServer toc = new TOCWebServer(database, journal, address, port, kiosk);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                toc.shutdown();
+            }
+        });
+        toc.start();
+        System.out.println("17 DIVISION TOC serving http://" + toc.getHost() + ":" + toc.getPort() + "/" +
+                           (TOCThreads.hasVirtualThreads() ? " (virtual threads)" : ""));
+    }
+
+    /**
+     * The constructor. Opens the port but does not answer requests until start() is called
+     *
+     * @param   database        the database every session shares
+     * @param   port            the port to listen on (0 for any free port)
+     * @param   kiosk           the path of the kiosk page
+     */
+    public TOCWebServer(TOCStorage database, int port, String kiosk) throws IOException {
+        this(database, new TOCWriteQueue(database), port, kiosk);
+    }
+
+    /**
+     * The constructor. Opens the port on this computer only but does not answer requests until start() is called
+     *
+     * @param   database        the database every session shares
+     * @param   checkout        where every session's finalised baskets are recorded (ie. a TOCJournal)
+     * @param   port            the port to listen on (0 for any free port)
+     * @param   kiosk           the path of the kiosk page
+     */
+    public TOCWebServer(TOCStorage database, TOCCheckout checkout, int port, String kiosk) throws IOException {
+        this(database, checkout, DEFAULT_ADDRESS, port, kiosk);
+    }
+
+    /**
+     * The constructor. Opens the port but does not answer requests until start() is called
+     *
+     * @param   database        the database every session shares
+     * @param   checkout        where every session's finalised baskets are recorded (ie. a TOCJournal)
+     * @param   address         the address to listen on (eg. 127.0.0.1 for this computer only, the address of the
+     *                          counter network, or 0.0.0.0 for every network)
+     * @param   port            the port to listen on (0 for any free port)
+     * @param   kiosk           the path of the kiosk page
+     */
+    public TOCWebServer(TOCStorage database, TOCCheckout checkout, String address, int port, String kiosk) throws IOException {
+        db = database;
+        writes = checkout;
+        // Read once, the page does not change while the TOC is running
+        page = Files.readAllBytes(Paths.get(kiosk));
+        sessions = new ConcurrentHashMap<String,Session>();
+        logins = new TOCLoginThrottle("web");
+        random = new SecureRandom();
+        metrics = TOCMetrics.getInstance();
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(address), port), 0);
+        requests = TOCThreads.newRequestExecutor("toc-web");
+        server.setExecutor(requests);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange(exchange);
+            }
+        });
+    }
+
+    /**
+     * Get the address the server is listening on
+     *
+     * @return                  the address as it would be typed into a browser
+     */
+    public String getHost() {
+        InetAddress address = server.getAddress().getAddress();
+        String host = address.isAnyLocalAddress() ? "localhost" : address.getHostAddress();
+        // An IPv6 address has to be in brackets in a URL
+        return host.indexOf(':') >= 0 ? "[" + host + "]" : host;
+    }
+
+    /**
+     * Get the port the server is listening on
+     *
+     * @return                  the port number
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Starts answering requests. Returns straight away, the requests are answered on the server's own threads
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops answering requests, giving the ones being answered a moment to finish, writes any baskets still waiting
+     * and closes the database
+     */
+    public void shutdown() {
+        server.stop(1);
+        requests.shutdown();
+        writes.shutdown();
+        db.close();
+    }
+
+    // ------------------------------------------------- Request Functions -------------------------------------------------
+    /**
+     * Answers one request. The request body is always read to the end and the reply always has a length, so the
+     * browser can send its next request on the same connection. A request that fails inside the TOC (eg. a checkout
+     * whose future completed with an error) is answered with a 500 instead of the connection being dropped
+     *
+     * @param   exchange        the request and its reply
+     */
+    private void exchange(HttpExchange exchange) throws IOException {
+        long timer = metrics.start();
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod().toUpperCase();
+            Map<String,String> params = readParams(exchange);
+
+            if(path.equals("/") || path.equals("/main.html")) {
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+                send(exchange, 200, page);
+                return;
+            }
+
+            Reply reply;
+            try {
+                String allowed = READS.contains(path) ? "GET" : CHANGES.contains(path) ? "POST" : null;
+                if(allowed != null && !method.equals(allowed)) {
+                    exchange.getResponseHeaders().set("Allow", allowed);
+                    reply = error(405, "Use " + allowed + " for " + path);
+                }else if(allowed == null) {
+                    reply = error(404, "Unknown request");
+                }else if(path.equals("/login")) {
+                    reply = login(exchange, params);
+                }else {
+                    Session session = findSession(exchange);
+                    if(session == null) {
+                        reply = error(401, "Not logged in");
+                    }else {
+                        reply = handle(exchange, session, path, params);
+                    }
+                }
+            }catch(RuntimeException e) {
+                // CompletionException from join() wraps what really went wrong
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                System.err.println(cause.getClass().getName() + ": " + cause.getMessage());
+                System.err.println("Error at TOCWebServer " + method + " " + path);
+                metrics.increment("web.errors");
+                reply = error(500, "Something went wrong, please contact one of the TOC's admins");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            send(exchange, reply.status, reply.json.getBytes("UTF-8"));
+        }finally {
+            exchange.close();
+            metrics.stop("web.request", timer);
+        }
+    }
+
+    /**
+     * Runs one request of a logged in browser
+     *
+     * @param   exchange        the request
+     * @param   session         the browser's session
+     * @param   path            what was asked for (eg. /scan)
+     * @param   params          the parameters of the request
+     * @return                  the reply
+     */
+    private Reply handle(HttpExchange exchange, Session session, String path, Map<String,String> params) {
+        TOCManager manager = session.manager;
+        String barcode = params.containsKey("barcode") ? params.get("barcode").trim() : "";
+
+        if(path.equals("/logout")) {
+            sessions.remove(cookie(exchange));
+            exchange.getResponseHeaders().add("Set-Cookie", COOKIE + "=; Path=/; Max-Age=0; HttpOnly; SameSite=Strict");
+            return new Reply(200, "{\"ok\":true}");
+        }else if(path.equals("/scan")) {
+            if(barcode.isEmpty()) {
+                return error(400, "No barcode");
+            }
+            // Goes through the manager's scan order so two scans sent at once from one browser can not mix up
+            TOCScan scan = manager.scanItemAsync(barcode).join();
+            if(!scan.isFound()) {
+                return error(404, "Item does not exist");
+            }
+            return new Reply(200, "{\"ok\":true,\"barcode\":" + quote(barcode) + ",\"name\":" + quote(scan.getItem().getName()) +
+                                  ",\"cost\":" + scan.getItem().getCost() + ",\"count\":" + scan.getCount() + ",\"total\":" + scan.getTotal() + "}");
+        }else if(path.equals("/remove")) {
+            if(!manager.removeItemFromTransaction(barcode)) {
+                return error(404, "Item is not in the basket");
+            }
+            return new Reply(200, "{\"ok\":true,\"count\":" + manager.getTransactionCount() + ",\"total\":" + manager.getTransactionTotal() + "}");
+        }else if(path.equals("/void")) {
+            manager.voidTransaction();
+            return new Reply(200, "{\"ok\":true,\"count\":0,\"total\":0}");
+        }else if(path.equals("/basket")) {
+            return new Reply(200, basket(manager));
+        }else if(path.equals("/checkout")) {
+            // What was charged comes from the same copy of the basket the sale was recorded from
+            TOCReceipt receipt = manager.finaliseTransactionAsync().join();
+            List<TOCBasketLine> rejected = receipt.getRejected();
+            StringBuilder json = new StringBuilder("{\"ok\":true,\"rejected\":[");
+            for(int i=0; i<rejected.size(); i++) {
+                TOCBasketLine line = rejected.get(i);
+                json.append(i == 0 ? "" : ",").append("{\"barcode\":").append(quote(line.getBarcode()))
+                    .append(",\"name\":").append(quote(line.getName())).append(",\"quantity\":").append(line.getQuantity()).append("}");
+            }
+            // The checkout may not be written yet, so what the member owes is left to /bill rather than sent stale
+            return new Reply(200, json.append("],\"charged\":").append(receipt.getCharged()).append("}").toString());
+        }else if(path.equals("/bill")) {
+            return bill(manager, params);
+        }
+        return error(404, "Unknown request");
+    }
+
+    /**
+     * Logs a member in. A browser that already has a session keeps it and changes member, otherwise a new session is
+     * made and its cookie is sent back. An address whose logins have failed too many times in a row is turned away
+     * until it has been quiet for a while
+     *
+     * @param   exchange        the request
+     * @param   params          the parameters of the request
+     * @return                  the reply
+     */
+    private Reply login(HttpExchange exchange, Map<String,String> params) {
+        String from = exchange.getRemoteAddress().getAddress().getHostAddress();
+        if(logins.isLockedOut(from)) {
+            exchange.getResponseHeaders().set("Retry-After", "" + TOCLoginThrottle.LOCKOUT_MILLIS / 1000);
+            return error(429, "Too many failed logins, wait a minute and try again");
+        }
+
+        int pmkeys;
+        try {
+            pmkeys = Integer.parseInt(params.containsKey("pmkeys") ? params.get("pmkeys").trim() : "");
+        }catch(NumberFormatException e) {
+            pmkeys = 0;
+        }
+
+        Session session = findSession(exchange);
+        TOCManager manager = session == null ? new TOCManager(db, writes) : session.manager;
+        // The basket is only dropped once the new member is found, so a mistyped pmkeys does not lose it
+        if(!manager.switchMember(pmkeys)) {
+            logins.failed(from);
+            return error(404, "Member does not exist");
+        }
+        logins.succeeded(from);
+
+        if(session == null) {
+            removeOldSessions();
+            String id = newSessionId();
+            sessions.put(id, new Session(manager));
+            metrics.increment("web.sessions");
+            exchange.getResponseHeaders().add("Set-Cookie", COOKIE + "=" + id + "; Path=/; HttpOnly; SameSite=Strict");
+        }
+        return new Reply(200, "{\"ok\":true,\"pmkeys\":" + manager.getMemberPmKeys() + ",\"name\":" + quote(manager.getMemberName()) +
+                              ",\"admin\":" + manager.getMemberAdmin() + ",\"owed\":" + manager.getAmountOwed() + "}");
+    }
+
+    /**
+     * Writes out the basket of a session
+     *
+     * @param   manager         the session's manager
+     * @return                  the basket as JSON
+     */
+    private String basket(TOCManager manager) {
+        StringBuilder json = new StringBuilder("{\"ok\":true,\"lines\":[");
+        long total = 0;
+        int count = 0;
+        List<TOCBasketLine> lines = manager.getTransactionLines();
+        for(int i=0; i<lines.size(); i++) {
+            TOCBasketLine line = lines.get(i);
+            json.append(i == 0 ? "" : ",").append("{\"barcode\":").append(quote(line.getBarcode()))
+                .append(",\"name\":").append(quote(line.getName())).append(",\"cost\":").append(line.getCost())
+                .append(",\"quantity\":").append(line.getQuantity()).append("}");
+            total = TOCMoney.add(total, line.getTotal());
+            count = count + line.getQuantity();
+        }
+        // Worked out from the same copy of the lines so a scan arriving at the same time can not make them disagree
+        return json.append("],\"count\":").append(count).append(",\"total\":").append(total).append("}").toString();
+    }
+
+    /**
+     * Writes out one page of the member's tab
+     *
+     * @param   manager         the session's manager
+     * @param   params          after and time of the last entry already sent (none for the first page), limit and
+     *                          order (newest to go back from the latest entry)
+     * @return                  the reply
+     */
+    private Reply bill(TOCManager manager, Map<String,String> params) {
+        TOCBillRow after = null;
+        int limit = DEFAULT_BILL_PAGE;
+        boolean newest = "newest".equals(params.get("order"));
+        try {
+            if(params.containsKey("after")) {
+                after = new TOCBillRow(Long.parseLong(params.get("after")), manager.getMemberPmKeys(), "", "", 0,
+                                       Long.parseLong(params.containsKey("time") ? params.get("time") : ""));
+            }
+            if(params.containsKey("limit")) {
+                limit = Math.max(1, Math.min(MAX_BILL_PAGE, Integer.parseInt(params.get("limit"))));
+            }
+        }catch(NumberFormatException e) {
+            return error(400, "after, time and limit must be numbers");
+        }
+
+        List<TOCBillRow> rows = newest ? manager.getLatestBillPage(after, limit) : manager.getBillPage(null, null, after, limit);
+        StringBuilder json = new StringBuilder("{\"ok\":true,\"entries\":[");
+        for(int i=0; i<rows.size(); i++) {
+            TOCBillRow row = rows.get(i);
+            json.append(i == 0 ? "" : ",").append("{\"num\":").append(row.getNum()).append(",\"time\":").append(row.getTime())
+                .append(",\"date\":").append(quote("" + row.getDate())).append(",\"name\":").append(quote(row.getName()))
+                .append(",\"cost\":").append(row.getCost()).append("}");
+        }
+        json.append("],\"more\":").append(rows.size() == limit).append(",\"owed\":").append(manager.getAmountOwed()).append("}");
+        return new Reply(200, json.toString());
+    }
+
+    // ------------------------------------------------- Session Functions -------------------------------------------------
+    /**
+     * Finds the session of the browser that sent a request
+     *
+     * @param   exchange        the request
+     * @return                  the session or null if the browser is not logged in or its session has run out
+     */
+    private Session findSession(HttpExchange exchange) {
+        String id = cookie(exchange);
+        Session session = id == null ? null : sessions.get(id);
+        if(session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if(now - session.lastUsed > SESSION_MILLIS) {
+            sessions.remove(id);
+            return null;
+        }
+        session.lastUsed = now;
+        return session;
+    }
+
+    /**
+     * Throws away every session that has not been used for a while. Called when a session is made so the sessions of
+     * browsers that never logged out do not build up
+     */
+    private void removeOldSessions() {
+        long now = System.currentTimeMillis();
+        Iterator<Session> open = sessions.values().iterator();
+        while(open.hasNext()) {
+            if(now - open.next().lastUsed > SESSION_MILLIS) {
+                open.remove();
+            }
+        }
+    }
+
+    /**
+     * Makes a session id that can not be guessed
+     *
+     * @return                  32 hex characters
+     */
+    private String newSessionId() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder id = new StringBuilder();
+        for(byte b : bytes) {
+            id.append(String.format("%02x", b & 0xff));
+        }
+        return id.toString();
+    }
+
+    /**
+     * Reads the session cookie of a request
+     *
+     * @param   exchange        the request
+     * @return                  the session id or null if there is none
+     */
+    private String cookie(HttpExchange exchange) {
+        List<String> headers = exchange.getRequestHeaders().get("Cookie");
+        if(headers == null) {
+            return null;
+        }
+        for(String header : headers) {
+            for(String cookie : header.split(";")) {
+                String[] parts = cookie.trim().split("=", 2);
+                if(parts.length == 2 && parts[0].equals(COOKIE)) {
+                    return parts[1];
+                }
+            }
+        }
+        return null;
+    }
+
+    // ------------------------------------------------- Helper Functions -------------------------------------------------
+    /**
+     * Reads the parameters of a request from its query string and, for a form, its body. The body is always read to
+     * the end so the connection can be used again
+     *
+     * @param   exchange        the request
+     * @return                  the parameters by name
+     */
+    private Map<String,String> readParams(HttpExchange exchange) throws IOException {
+        Map<String,String> params = new HashMap<String,String>();
+        addParams(exchange.getRequestURI().getRawQuery(), params);
+
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read = in.read(buffer);
+        while(read > 0) {
+            // Anything past the limit is read but not kept
+            if(body.size() < MAX_FORM_BYTES) {
+                body.write(buffer, 0, Math.min(read, MAX_FORM_BYTES - body.size()));
+            }
+            read = in.read(buffer);
+        }
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        if(type != null && type.startsWith("application/x-www-form-urlencoded")) {
+            addParams(body.toString("UTF-8"), params);
+        }
+        return params;
+    }
+
+    /**
+     * Adds the parameters of a query string or form to a map
+     *
+     * @param   encoded         the parameters as name=value pairs separated by &amp; (null for none)
+     * @param   params          where the parameters are added
+     */
+    private void addParams(String encoded, Map<String,String> params) throws UnsupportedEncodingException {
+        if(encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for(String pair : encoded.split("&")) {
+            String[] parts = pair.split("=", 2);
+            try {
+                params.put(URLDecoder.decode(parts[0], "UTF-8"), parts.length > 1 ? URLDecoder.decode(parts[1], "UTF-8") : "");
+            }catch(IllegalArgumentException e) {
+                // A badly encoded parameter is left out
+            }
+        }
+    }
+
+    /**
+     * Sends a reply with its length so the connection can be kept open
+     *
+     * @param   exchange        the request
+     * @param   status          the HTTP status
+     * @param   body            the reply
+     */
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * Makes the reply of a failed request
+     *
+     * @param   status          the HTTP status
+     * @param   message         what went wrong
+     * @return                  the reply
+     */
+    private Reply error(int status, String message) {
+        return new Reply(status, "{\"ok\":false,\"error\":" + quote(message) + "}");
+    }
+
+    /**
+     * Writes a string as a JSON string
+     *
+     * @param   text            the string
+     * @return                  the string in quotes with quotes, backslashes and control characters escaped
+     */
+    private static String quote(String text) {
+        StringBuilder json = new StringBuilder("\"");
+        for(int i=0; i<text.length(); i++) {
+            char c = text.charAt(i);
+            if(c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            }else if(c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            }else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+}
@@ -0,0 +1,176 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Sits in front of the TOCStorage and writes finalised baskets on one writer thread. Terminals put their basket on
+ * the queue and get a future back. The writer takes everything that is waiting (up to a limit) and records it with
+ * a single commit, so when many terminals check out at once they share one disk sync instead of paying for one each
+ *
+ * @author  agent
+ * @version 18 October 2026
+ */
+public class TOCWriteQueue implements TOCCheckout {
+    // The most baskets written in one commit when none is given
+    public static final int DEFAULT_MAX_BATCH = 64;
+    // How long the writer waits for more baskets to join a group when none is given
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 2;
+
+    private final TOCStorage db;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Pending> queue;
+    private final Thread writer;
+    private final TOCMetrics metrics;
+    private volatile boolean running = true;
+
+    /**
+     * A basket waiting to be written and the future its terminal is waiting on
+     */
+    private static class Pending {
+        private final TOCPurchase purchase;
+        private final CompletableFuture<int[]> result;
+        private final long queued;
+
+        private Pending(TOCPurchase waiting, long time) {
+            purchase = waiting;
+            result = new CompletableFuture<int[]>();
+            queued = time;
+        }
+    }
+
+    /**
+     * The constructor. Uses the default batch size and wait
+     *
+     * @param   database        the database the baskets are written to
+     */
+    public TOCWriteQueue(TOCStorage database) {
+        this(database, DEFAULT_MAX_BATCH, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * The constructor. Starts the writer thread
+     *
+     * @param   database        the database the baskets are written to
+     * @param   batchSize       the most baskets written in one commit
+     * @param   waitMillis      how long the writer waits for more baskets once it has one (0 to never wait)
+     */
+    public TOCWriteQueue(TOCStorage database, int batchSize, long waitMillis) {
+        db = database;
+        maxBatch = Math.max(1, batchSize);
+        maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, waitMillis));
+        queue = new LinkedBlockingQueue<Pending>();
+        metrics = TOCMetrics.getInstance();
+
+        writer = new Thread("toc-writer") {
+            public void run() {
+                write();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Puts a basket on the queue to be written
+     *
+     * @param   pmkeys          the pmkeys of the member buying the basket
+     * @param   basket          the items being bought. A copy is taken so the basket can be cleared straight away
+     * @return                  completes with how many of each line of the basket were sold
+     */
+    public CompletableFuture<int[]> submit(int pmkeys, TOCBasket basket) {
+        Pending pending = new Pending(new TOCPurchase(pmkeys, basket), metrics.start());
+        if(!running) {
+            pending.result.completeExceptionally(new IllegalStateException("The write queue has been shut down"));
+            return pending.result;
+        }
+        queue.add(pending);
+        return pending.result;
+    }
+
+    /**
+     * Writes everything already on the queue and stops the writer thread
+     */
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join();
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ------------------------------------------------- Writer Functions -------------------------------------------------
+    /**
+     * Run by the writer thread. Waits for a basket, gathers any others that arrive within the wait and writes them as
+     * one group
+     */
+    private void write() {
+        List<Pending> group = new ArrayList<Pending>();
+        while(running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null) {
+                    continue;
+                }
+                group.add(first);
+                gather(group);
+            }catch(InterruptedException e) {
+                // Woken up by shutdown(). Whatever is left is written before the thread stops
+                queue.drainTo(group, maxBatch - group.size());
+            }
+            if(!group.isEmpty()) {
+                commit(group);
+                group.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds baskets to the group until it is full or the wait runs out
+     *
+     * @param   group           the group being built. Already holds the first basket
+     */
+    private void gather(List<Pending> group) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        queue.drainTo(group, maxBatch - group.size());
+        while(group.size() < maxBatch) {
+            long left = deadline - System.nanoTime();
+            if(left <= 0) {
+                return;
+            }
+            Pending next = queue.poll(left, TimeUnit.NANOSECONDS);
+            if(next == null) {
+                return;
+            }
+            group.add(next);
+            queue.drainTo(group, maxBatch - group.size());
+        }
+    }
+
+    /**
+     * Writes a group of baskets with one commit and completes their futures
+     *
+     * @param   group           the baskets to write
+     */
+    private void commit(List<Pending> group) {
+        List<TOCPurchase> purchases = new ArrayList<TOCPurchase>();
+        for(Pending pending : group) {
+            purchases.add(pending.purchase);
+        }
+
+        try {
+            List<int[]> sold = db.addTransactions(purchases);
+            for(int i=0; i<group.size(); i++) {
+                group.get(i).result.complete(sold.get(i));
+                metrics.stop("writequeue.latency", group.get(i).queued);
+            }
+        }catch(RuntimeException e) {
+            for(Pending pending : group) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+        metrics.increment("writequeue.commits");
+        metrics.add("writequeue.purchases", group.size());
+    }
+}